@@ -0,0 +1,35 @@
+#version 300 es
+
+layout (location = 0) in vec3 position;
+layout (location = 1) in vec3 normal;
+layout (location = 2) in vec3 colour;
+// Per instance, takes locations 3 to 6, one column each
+layout (location = 3) in mat4 model;
+
+uniform mat4 SPVM;
+uniform mat4 PVM;
+uniform mat4 VM;
+uniform mat4 V;
+
+
+out vec3 Colour;
+out vec3 Normal;
+out vec3 LightDir;
+out vec4 FragPos;
+out vec4 ShadowCord;
+
+vec3 sun = normalize(vec3(0, 7, 24));
+
+
+void main()
+{
+    vec4 instancePosition = model * vec4(position,1.0f);
+    mat4 vm = VM * model;
+
+    gl_Position =  PVM * instancePosition;
+    Colour = colour;
+    Normal = mat3(transpose(inverse(vm))) * normal;
+    LightDir = mat3(transpose(inverse(V))) * sun;
+    FragPos = vm * vec4(position,1.0f);
+    ShadowCord = SPVM * instancePosition;
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+#version 300 es
+
+layout (location = 0) in vec3 position;
+// Per instance, takes locations 3 to 6, one column each
+layout (location = 3) in mat4 model;
+
+uniform mat4 PVM;
+
+
+void main()
+{
+    gl_Position =  PVM * model * vec4(position,1.0f);
+}
\ No newline at end of file
@@ -5,6 +5,7 @@ import android.opengl.GLES30;
 import android.opengl.Matrix;
 import android.util.Log;
 
+import com.example.chris.apexvr.apexGL.Frustum;
 import com.example.chris.apexvr.apexGL.GLError;
 import com.example.chris.apexvr.apexGL.mesh.ColouredInterleavedMesh;
 import com.example.chris.apexvr.apexGL.mesh.ColourizedMesh;
@@ -13,6 +14,7 @@ import com.example.chris.apexvr.apexGL.object.ColouredStaticObject;
 import com.example.chris.apexvr.apexGL.object.GLObject;
 import com.example.chris.apexvr.apexGL.object.MultiCSObject;
 import com.example.chris.apexvr.apexGL.object.Sky;
+import com.example.chris.apexvr.apexGL.object.TerrainObject;
 import com.example.chris.apexvr.apexGL.shader.GLProgram;
 import com.example.chris.apexvr.apexGL.shader.Shader;
 import com.example.chris.apexvr.apexGL.shader.Shadow;
@@ -32,6 +34,9 @@ public class ApexGraphics {
     private static final float[] LIGHT_DIR_IN_WORLD_SPACE = new float[] {0.0f, 7.f/25.f, 24.f/25.f};
     private static final String TAG = "Apex Graphics";
     private static final float Z_CENTER = 1.5f;
+    // 32 cells of ground a tile, 38.6m, down to every 8th vertex far away
+    private static final int GROUND_TILE_CELLS = 32;
+    private static final int GROUND_LEVELS = 4;
     private GLObject rightHand,leftHand;
     private ColourizedMesh moleMesh;
     private GLProgram colProgram;
@@ -41,6 +46,13 @@ public class ApexGraphics {
     private List<ColouredStaticObject> moles;
     private GLObject table;
 
+    // For drawing, which only runs on the GL thread
+    private final float[] pv = new float[16];
+    private final Frustum leftFrustum = new Frustum();
+    private final Frustum rightFrustum = new Frustum();
+    // What prepareEyes() found either eye can see, the sky aside
+    private final List<GLObject> visible = new ArrayList<>(32);
+
 
     public ApexGraphics(){
 
@@ -49,6 +61,15 @@ public class ApexGraphics {
 
     }
 
+    /**
+     * A scene of objects that are already built, without loading any assets.
+     */
+    ApexGraphics(List<GLObject> glObjects, Sky sky){
+        this();
+        this.glObjects.addAll(glObjects);
+        this.sky = sky;
+    }
+
 
     public void loadAssets(AssetManager assetManager){
 
@@ -57,6 +78,8 @@ public class ApexGraphics {
         colProgram = loadProgram(assetManager,"coloured.vert", "coloured.frag");
         GLProgram skyProgram = loadProgram(assetManager,"sky.vert", "sky.frag");
         GLProgram shadowProgram = loadProgram(assetManager,"shadow.vert", "shadow.frag");
+        GLProgram instancedProgram = loadProgram(assetManager,"coloured_instanced.vert", "coloured.frag");
+        GLProgram instancedShadowProgram = loadProgram(assetManager,"shadow_instanced.vert", "shadow.frag");
 
         //Materials
         MatLib matLib = new MatLib();
@@ -81,11 +104,11 @@ public class ApexGraphics {
         float groudAtZero = groundCreater.maxHight(1.5f,0.0f,Z_CENTER) + 0.5f;
 
 
-        Shadow shadows = new Shadow(shadowProgram,
+        Shadow shadows = new Shadow(shadowProgram,instancedShadowProgram,
                 LIGHT_DIR_IN_WORLD_SPACE,
                 10.0f,groudAtZero);
 
-        ColouredStaticObject ground = new ColouredStaticObject(colProgram,groundCreater.getMesh());
+        TerrainObject ground = new TerrainObject(colProgram,groundCreater.getTerrainMesh(GROUND_TILE_CELLS,GROUND_LEVELS));
         Matrix.translateM(ground.getOrientation(),0,0.0f,-groudAtZero,0.0f);
         ground.setCastingShadow(true);
         ground.addExtention(shadows);
@@ -135,7 +158,7 @@ public class ApexGraphics {
 
         try {
             ColouredInterleavedMesh colouredMesh = ColouredInterleavedMesh.importOBJInterleavedMesh(assetManager.open("meshes/tree.obj"),matLib);
-            MultiCSObject tree = new MultiCSObject(colProgram,colouredMesh);
+            MultiCSObject tree = new MultiCSObject(instancedProgram,colouredMesh);
             Matrix.translateM(tree.getOrientation(),0,0.0f,-groudAtZero,0.0f);
             tree.setCastingShadow(true);
             tree.addExtention(shadows);
@@ -187,7 +210,7 @@ public class ApexGraphics {
 
         try {
             ColouredInterleavedMesh colouredMesh = ColouredInterleavedMesh.importOBJInterleavedMesh(assetManager.open("meshes/grass.obj"),matLib);
-            MultiCSObject grass = new MultiCSObject(colProgram,colouredMesh);
+            MultiCSObject grass = new MultiCSObject(instancedProgram,colouredMesh);
             Matrix.translateM(grass.getOrientation(),0,0.0f,-groudAtZero,0.0f);
             grass.setCastingShadow(true);
             grass.addExtention(shadows);
@@ -308,7 +331,54 @@ public class ApexGraphics {
         return leftHand;
     }
 
+    /**
+     * Draw the scene for one eye on its own.
+     */
     public void drawEye(float[] perspective, float[] view){
+        prepareEyes(perspective,view,null,null);
+        drawPreparedEye(perspective,view);
+    }
+
+    /**
+     * Walk the scene once for both eyes of a frame: cull against each eye's
+     * frustum and keep what either can see, and let objects do their per
+     * frame work, like packing instances, before the eyes draw it with
+     * drawPreparedEye().
+     *
+     * @param rightPerspective null, along with rightView, for a single eye
+     */
+    public void prepareEyes(float[] leftPerspective, float[] leftView,
+                            float[] rightPerspective, float[] rightView){
+        Matrix.multiplyMM(pv,0,leftPerspective,0,leftView,0);
+        leftFrustum.set(pv);
+
+        Frustum right = null;
+        if(rightPerspective != null){
+            Matrix.multiplyMM(pv,0,rightPerspective,0,rightView,0);
+            rightFrustum.set(pv);
+            right = rightFrustum;
+        }
+
+        // Indexed, a for each would make an iterator per list per frame
+        visible.clear();
+        for(int i = 0; i < moles.size(); ++i){
+            if(moles.get(i).prepare(leftFrustum,right)){
+                visible.add(moles.get(i));
+            }
+        }
+
+        for(int i = 0; i < glObjects.size(); ++i){
+            if(glObjects.get(i).prepare(leftFrustum,right)){
+                visible.add(glObjects.get(i));
+            }
+        }
+    }
+
+    /**
+     * Draw one eye of what the last prepareEyes() kept, into the viewport
+     * already set for it.
+     */
+    public void drawPreparedEye(float[] perspective, float[] view){
         GLES30.glEnable(GLES30.GL_DEPTH_TEST);
         GLES30.glDepthFunc(GLES30.GL_LESS);
 
@@ -321,12 +391,8 @@ public class ApexGraphics {
         GLES30.glEnable(GLES30.GL_CULL_FACE);
         GLES30.glCullFace(GLES30.GL_BACK);
 
-        for(GLObject mole:moles){
-            mole.draw(perspective,view);
-        }
-
-        for(GLObject glObject : glObjects){
-            glObject.draw(perspective,view);
+        for(int i = 0; i < visible.size(); ++i){
+            visible.get(i).drawPrepared(perspective,view);
         }
 
         sky.draw(perspective,view);
@@ -2,6 +2,8 @@ package com.example.chris.apexvr;
 
 import android.opengl.Matrix;
 
+import com.example.chris.apexvr.filtering.KalmanFilter;
+
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.GameStatePacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotKinPosPacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotPosPacket;
@@ -14,6 +16,24 @@ public class MoleGame {
 
     private static final float TABLE_HIGHT = 1.043f;
     private static final String TAG = "MOLE_GAME";
+
+    // The table marker jitters even when nothing moves. Table motion noise in
+    // m^2/s^3, marker position noise in m^2 and yaw noise in rad^2
+    private static final double TABLE_MOTION_NOISE = 0.5;
+    private static final double TABLE_POSITION_NOISE = 0.0001;
+    private static final double TABLE_YAW_NOISE = 0.003;
+    // Start the filter over after a gap this long, in seconds
+    private static final double TABLE_MAX_GAP = 1.0;
+
+    // Table x, z and yaw
+    private final KalmanFilter tablePose = new KalmanFilter(new KalmanFilter.ConstantVelocity(3, TABLE_MOTION_NOISE), 3);
+    private final double[] tableMeasurement = new double[3];
+    private long tableCaptureNanos;
+    private boolean tableFiltering = false;
+    private final float[] tableRawRotation = new float[16];
+    private final float[] tableYawCorrection = new float[16];
+    private final float[] moleTransform = new float[16];
+    private final float[] moleDisplacement = new float[16];
     private float[] tableLocation;
     private float[] tableRotation;
     private boolean ready = false;
@@ -21,6 +41,7 @@ public class MoleGame {
 
     public MoleGame(ApexGraphics graphics){
         tableLocation = new float[16];
+        tableRotation = new float[16];
         Matrix.setIdentityM(tableLocation,0);
         this.graphics = graphics;
         graphics.createMole(MoleColours.Red.getColour());
@@ -33,12 +54,15 @@ public class MoleGame {
         if(robotPosPacket != null){
             ready = true;
 
-            tableRotation = robotPosPacket.rotMat;
+            // The packet goes back to its pool after this frame, keep a copy
+            System.arraycopy(robotPosPacket.rotMat,0,tableRawRotation,0,16);
 
             //Log.i(TAG, Arrays.toString(robotPosPacket.rotMat));
 
+            filterTablePose(robotPosPacket);
+
             Matrix.setIdentityM(tableLocation,0);
-            Matrix.translateM(tableLocation,0, robotPosPacket.X,0.0f,robotPosPacket.Z);
+            Matrix.translateM(tableLocation,0, (float) tablePose.get(0),0.0f,(float) tablePose.get(1));
             Matrix.multiplyMM(graphics.getTable().getOrientation(),0, tableLocation,0,tableRotation,0);
             Matrix.scaleM(graphics.getTable().getOrientation(),0,1.2f,1.0f,1.2f);
 
@@ -63,8 +87,6 @@ public class MoleGame {
 
                 graphics.getMole(0).setDraw(true);
 
-                float[] moleTransform = new float[16];
-                float[] moleDisplacement = new float[16];
                 Matrix.setIdentityM(moleDisplacement,0);
                 Matrix.translateM(moleDisplacement,0,robotKinPosPacket.getX(),TABLE_HIGHT,robotKinPosPacket.getZ());
                 Matrix.multiplyMM(moleTransform,0,moleDisplacement,0,tableRotation,0);
@@ -76,6 +98,35 @@ public class MoleGame {
 
 
 
+    }
+
+    /**
+     * Step the table pose filter with a marker sample, and turn the marker
+     * rotation by however far the filtered yaw is from the measured one.
+     */
+    private void filterTablePose(RobotPosPacket robotPosPacket) {
+        double yaw = Math.atan2(tableRawRotation[2], tableRawRotation[10]);
+        double dt = (robotPosPacket.captureNanos - tableCaptureNanos) / 1e9;
+        tableCaptureNanos = robotPosPacket.captureNanos;
+
+        tableMeasurement[0] = robotPosPacket.X;
+        tableMeasurement[1] = robotPosPacket.Z;
+        if (!tableFiltering || dt <= 0 || dt > TABLE_MAX_GAP) {
+            tableMeasurement[2] = yaw;
+            tablePose.reset(tableMeasurement, TABLE_POSITION_NOISE);
+            tablePose.setMeasurementNoise(TABLE_POSITION_NOISE);
+            tablePose.getMeasurementNoise().set(2, 2, TABLE_YAW_NOISE);
+            tableFiltering = true;
+        } else {
+            // Keep the yaw on the same turn as the filter
+            double filtered = tablePose.get(2);
+            tableMeasurement[2] = filtered + Math.IEEEremainder(yaw - filtered, 2 * Math.PI);
+            tablePose.predict(dt);
+            tablePose.update(tableMeasurement);
+        }
+
+        Matrix.setRotateM(tableYawCorrection, 0, (float) Math.toDegrees(yaw - tablePose.get(2)), 0.0f, 1.0f, 0.0f);
+        Matrix.multiplyMM(tableRotation, 0, tableYawCorrection, 0, tableRawRotation, 0);
     }
 
     public boolean isReady() {
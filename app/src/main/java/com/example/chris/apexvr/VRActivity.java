@@ -1,11 +1,13 @@
 package com.example.chris.apexvr;
 
+import android.opengl.GLES30;
 import android.opengl.Matrix;
 import android.os.Bundle;
 import android.util.Log;
 
 import com.example.chris.apexvr.apexGL.GLError;
 import com.example.chris.apexvr.filtering.ApexSensors;
+import com.example.chris.apexvr.filtering.TrackingThread;
 import com.google.vr.sdk.base.Eye;
 import com.google.vr.sdk.base.GvrActivity;
 import com.google.vr.sdk.base.GvrView;
@@ -16,13 +18,15 @@ import javax.microedition.khronos.egl.EGLConfig;
 
 import io.github.apexhaptics.apexhapticsdisplay.BluetoothService;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.GameStatePacket;
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotKinPosPacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotPosPacket;
 
 
-public class VRActivity extends GvrActivity implements GvrView.StereoRenderer{
+/**
+ * Renders both eyes from one callback so the scene is walked and culled once
+ * a frame, GvrView.Renderer rather than StereoRenderer's call per eye.
+ */
+public class VRActivity extends GvrActivity implements GvrView.Renderer{
 
     private static final String TAG = "ApexVR_VRA";
 
@@ -35,6 +39,13 @@ public class VRActivity extends GvrActivity implements GvrView.StereoRenderer{
     private BluetoothService bluetoothService;
 
     private ApexSensors apexSensors;
+    // Started and stopped on the UI thread, read by the GL thread
+    private volatile TrackingThread trackingThread;
+    private final float[] headView = new float[16];
+    // Scratch for onDrawFrame()
+    private final float[] leftView = new float[16];
+    private final float[] rightView = new float[16];
+    private final float[] eyeTran = new float[16];
     private MoleGame moleGame;
 
 
@@ -89,61 +100,91 @@ public class VRActivity extends GvrActivity implements GvrView.StereoRenderer{
 
 
     @Override
-    public void onNewFrame(HeadTransform headTransform) {
+    public void onDrawFrame(HeadTransform headTransform, Eye leftEye, Eye rightEye) {
 
-        float[] tranformation = new float[16];
+        newFrame(headTransform);
 
-        headTransform.getHeadView(tranformation,0);
+        if(!(apexSensors.isReady() && moleGame.isReady())){
+            return;
+        }
 
+        float[] camera = apexSensors.getHeadTransform();
+        float[] leftPerspective = leftEye.getPerspective(Z_NEAR, Z_FAR);
+        eyeView(leftEye,camera,leftView);
 
-        apexSensors.step(tranformation,
-                (HeadPacket) bluetoothService.getPacket(HeadPacket.packetString),
-                (JointPacket) bluetoothService.getPacket(JointPacket.packetString));
+        // Out of VR mode there is only the one eye
+        if(rightEye == null){
+            graphics.prepareEyes(leftPerspective,leftView,null,null);
+            drawEye(leftEye,leftPerspective,leftView);
+            return;
+        }
 
-        graphics.getLeftHand().setDraw(apexSensors.isLeftHandAboveGround());
-        graphics.getRightHand().setDraw(apexSensors.isRightHandAboveGround());
+        float[] rightPerspective = rightEye.getPerspective(Z_NEAR, Z_FAR);
+        eyeView(rightEye,camera,rightView);
 
-        graphics.getLeftHand().setOrientation(apexSensors.getLeftHand());
-        graphics.getRightHand().setOrientation(apexSensors.getRigthHand());
+        graphics.prepareEyes(leftPerspective,leftView,rightPerspective,rightView);
+        drawEye(leftEye,leftPerspective,leftView);
+        drawEye(rightEye,rightPerspective,rightView);
+    }
 
-        moleGame.upadte(
-                (RobotPosPacket)bluetoothService.getPacket(RobotPosPacket.packetString),
-                (GameStatePacket)bluetoothService.getPacket(GameStatePacket.packetString),
-                (RobotKinPosPacket)bluetoothService.getPacket(RobotKinPosPacket.packetString));
+    private void newFrame(HeadTransform headTransform) {
 
-        Matrix.setIdentityM(graphics.getLeftHand().getOrientation(),0);
-        Matrix.setIdentityM(graphics.getRightHand().getOrientation(),0);
+        headTransform.getHeadView(headView,0);
 
-        Matrix.translateM(graphics.getLeftHand().getOrientation(),0,-0.15f,1.6f,-0.6f);
-        Matrix.translateM(graphics.getRightHand().getOrientation(),0,0.15f,1.6f,-0.6f);
+        // The filters run on the tracking thread, this only places the latest poses
+        TrackingThread tracker = trackingThread;
+        if (tracker != null) {
+            tracker.setHeadView(headView);
+        }
+        apexSensors.frame(headView);
 
-    }
+        graphics.getLeftHand().setDraw(apexSensors.isLeftHandVisible());
+        graphics.getRightHand().setDraw(apexSensors.isRightHandVisible());
 
-    @Override
-    public void onDrawEye(Eye eye) {
+        graphics.getLeftHand().setOrientation(apexSensors.getLeftHand());
+        graphics.getRightHand().setOrientation(apexSensors.getRigthHand());
 
-        if(!(apexSensors.isReady() && moleGame.isReady())){
-            return;
-        }
+        RobotPosPacket robotPosPacket = bluetoothService.getRobotPosPackets().take();
+        GameStatePacket gameStatePacket = bluetoothService.getGameStatePackets().take();
+        RobotKinPosPacket robotKinPosPacket = bluetoothService.getRobotKinPosPackets().take();
 
+        moleGame.upadte(robotPosPacket, gameStatePacket, robotKinPosPacket);
 
+        bluetoothService.releasePacket(robotPosPacket);
+        bluetoothService.releasePacket(gameStatePacket);
+        bluetoothService.releasePacket(robotKinPosPacket);
 
-        float[] view = new float[16];
-        float[] eyeTran = new float[16];
+    }
 
-        float[] camera = apexSensors.getHeadTransform();
-        float[] perspective = eye.getPerspective(Z_NEAR, Z_FAR);
+    /**
+     * The view for one eye, the head's camera moved sideways half the
+     * distance between the eyes.
+     */
+    private void eyeView(Eye eye, float[] camera, float[] view){
+        float offset = 0.0f;
+        if(eye.getType() == Eye.Type.LEFT){
+            offset = -0.03f;
+        } else if(eye.getType() == Eye.Type.RIGHT){
+            offset = 0.03f;
+        }
 
         Matrix.setIdentityM(eyeTran,0);
-        Matrix.translateM(eyeTran,0,(eye.getType() == Eye.Type.LEFT)?-0.03f:0.03f,0.0f,0.0f);
+        Matrix.translateM(eyeTran,0,offset,0.0f,0.0f);
         Matrix.multiplyMM(view,0,eyeTran,0,camera,0);
+    }
 
+    /**
+     * Draw what prepareEyes() kept into the eye's part of the frame.
+     */
+    private void drawEye(Eye eye, float[] perspective, float[] view){
+        GLES30.glEnable(GLES30.GL_SCISSOR_TEST);
+        eye.getViewport().setGLViewport();
+        eye.getViewport().setGLScissor();
 
-        graphics.drawEye(perspective,view);
-
-        GLError.checkGLError(TAG,"Drawing cube");
-
+        graphics.drawPreparedEye(perspective,view);
 
+        GLES30.glDisable(GLES30.GL_SCISSOR_TEST);
+        GLError.checkGLError(TAG,"Drawing eye");
     }
 
 
@@ -161,11 +202,28 @@ public class VRActivity extends GvrActivity implements GvrView.StereoRenderer{
     @Override
     public void onPause(){
 //        gvrAudioEngine.pause();
+        // Stop drawing before the tracker goes away under it
         super.onPause();
+
+        TrackingThread tracker = trackingThread;
+        trackingThread = null;
+        if (tracker != null) {
+            tracker.shutdown();
+            try {
+                tracker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
     public void onResume() {
+        // The tracker has to be running before the GL thread draws with it
+        TrackingThread tracker = new TrackingThread(apexSensors, bluetoothService.getIngest());
+        tracker.start();
+        trackingThread = tracker;
+
         super.onResume();
 //        gvrAudioEngine.resume();
     }
@@ -0,0 +1,95 @@
+package com.example.chris.apexvr.apexGL;
+
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
+
+/**
+ * The six planes of a view frustum, pulled straight out of a projection
+ * times view matrix (Gribb and Hartmann), for throwing away what cannot be
+ * seen before any GL calls are made for it.
+ *
+ * The tests are conservative: anything touching the frustum is kept, and
+ * so are a few things near its corners that miss it.
+ */
+public class Frustum {
+
+    // a, b, c, d for left, right, bottom, top, near, far, normals pointing in
+    private final float[] planes = new float[24];
+    private final float[] eye = new float[3];
+
+    /**
+     * @param pv projection times view, OpenGL style column major
+     */
+    public void set(float[] pv){
+        for(int i = 0; i < 6; ++i){
+            // Each plane is the w row plus or minus the x, y or z row
+            int row = i / 2;
+            float sign = (i % 2 == 0) ? 1.0f : -1.0f;
+            float a = pv[3] + sign * pv[row];
+            float b = pv[7] + sign * pv[4 + row];
+            float c = pv[11] + sign * pv[8 + row];
+            float d = pv[15] + sign * pv[12 + row];
+
+            float length = (float) Math.sqrt(a * a + b * b + c * c);
+            planes[i * 4] = a / length;
+            planes[i * 4 + 1] = b / length;
+            planes[i * 4 + 2] = c / length;
+            planes[i * 4 + 3] = d / length;
+        }
+
+        // The eye is the one point the x, y and w rows all take to 0, where
+        // the left, right, bottom and top planes meet
+        float x0 = pv[0], y0 = pv[4], z0 = pv[8];
+        float x1 = pv[1], y1 = pv[5], z1 = pv[9];
+        float x3 = pv[3], y3 = pv[7], z3 = pv[11];
+        float ax = y1 * z3 - z1 * y3, ay = z1 * x3 - x1 * z3, az = x1 * y3 - y1 * x3;
+        float bx = y3 * z0 - z3 * y0, by = z3 * x0 - x3 * z0, bz = x3 * y0 - y3 * x0;
+        float cx = y0 * z1 - z0 * y1, cy = z0 * x1 - x0 * z1, cz = x0 * y1 - y0 * x1;
+        float det = x0 * ax + y0 * ay + z0 * az;
+        float d0 = -pv[12] / det, d1 = -pv[13] / det, d3 = -pv[15] / det;
+        eye[0] = d0 * ax + d1 * bx + d3 * cx;
+        eye[1] = d0 * ay + d1 * by + d3 * cy;
+        eye[2] = d0 * az + d1 * bz + d3 * cz;
+    }
+
+    /**
+     * Where the eye is in the world, x, y and z. Only meaningful for a
+     * perspective projection, an orthographic one has no eye.
+     */
+    public float[] getEye(){
+        return eye;
+    }
+
+    public boolean intersectsSphere(float x, float y, float z, float radius){
+        for(int i = 0; i < 24; i += 4){
+            if(planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether bounds' box, placed by model matrix m, touches the frustum. The
+     * box is grown to line up with the world axes first.
+     */
+    public boolean intersectsBox(float[] m, Bounds bounds){
+        float[] c = bounds.center;
+        float[] e = bounds.extent;
+
+        float x = m[0] * c[0] + m[4] * c[1] + m[8] * c[2] + m[12];
+        float y = m[1] * c[0] + m[5] * c[1] + m[9] * c[2] + m[13];
+        float z = m[2] * c[0] + m[6] * c[1] + m[10] * c[2] + m[14];
+        float ex = Math.abs(m[0]) * e[0] + Math.abs(m[4]) * e[1] + Math.abs(m[8]) * e[2];
+        float ey = Math.abs(m[1]) * e[0] + Math.abs(m[5]) * e[1] + Math.abs(m[9]) * e[2];
+        float ez = Math.abs(m[2]) * e[0] + Math.abs(m[6]) * e[1] + Math.abs(m[10]) * e[2];
+
+        for(int i = 0; i < 24; i += 4){
+            float distance = planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+            float reach = Math.abs(planes[i]) * ex + Math.abs(planes[i + 1]) * ey + Math.abs(planes[i + 2]) * ez;
+            if(distance < -reach){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.chris.apexvr.apexGL.mesh;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Axis aligned box and bounding sphere of a mesh's positions, in the mesh's
+ * own space. The sphere is centred on the box, not the tightest there is,
+ * but it is cheap and only has to be conservative.
+ */
+public class Bounds {
+
+    public final float[] min = new float[3];
+    public final float[] max = new float[3];
+    // Centre of the box and the sphere
+    public final float[] center = new float[3];
+    // Half the box's size along each axis
+    public final float[] extent = new float[3];
+    public float radius;
+
+    /**
+     * Bounds of interleaved vertices with the position first in each.
+     *
+     * @param stride floats per vertex
+     */
+    public static Bounds of(FloatBuffer vertices, int stride){
+        Bounds bounds = new Bounds();
+        int count = vertices.limit() / stride;
+        if(count == 0){
+            return bounds;
+        }
+
+        for(int j = 0; j < 3; ++j){
+            bounds.min[j] = Float.POSITIVE_INFINITY;
+            bounds.max[j] = Float.NEGATIVE_INFINITY;
+        }
+        for(int i = 0; i < count; ++i){
+            for(int j = 0; j < 3; ++j){
+                float x = vertices.get(i * stride + j);
+                bounds.min[j] = Math.min(bounds.min[j], x);
+                bounds.max[j] = Math.max(bounds.max[j], x);
+            }
+        }
+
+        for(int j = 0; j < 3; ++j){
+            bounds.center[j] = 0.5f * (bounds.min[j] + bounds.max[j]);
+            bounds.extent[j] = 0.5f * (bounds.max[j] - bounds.min[j]);
+        }
+
+        float radius2 = 0.0f;
+        for(int i = 0; i < count; ++i){
+            float dx = vertices.get(i * stride) - bounds.center[0];
+            float dy = vertices.get(i * stride + 1) - bounds.center[1];
+            float dz = vertices.get(i * stride + 2) - bounds.center[2];
+            radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+        }
+        bounds.radius = (float) Math.sqrt(radius2);
+
+        return bounds;
+    }
+
+    /**
+     * Work out the centre, extent and radius again after min and max have
+     * been changed by hand. The sphere is the one around the box.
+     */
+    public void update(){
+        float radius2 = 0.0f;
+        for(int j = 0; j < 3; ++j){
+            center[j] = 0.5f * (min[j] + max[j]);
+            extent[j] = 0.5f * (max[j] - min[j]);
+            radius2 += extent[j] * extent[j];
+        }
+        radius = (float) Math.sqrt(radius2);
+    }
+
+    /**
+     * The most the 4x4 matrix at m[offset] stretches any direction, what a
+     * sphere's radius has to be multiplied by to still hold what it held.
+     */
+    public static float scale(float[] m, int offset){
+        float scale2 = 0.0f;
+        for(int c = 0; c < 3; ++c){
+            float x = m[offset + c * 4];
+            float y = m[offset + c * 4 + 1];
+            float z = m[offset + c * 4 + 2];
+            scale2 = Math.max(scale2, x * x + y * y + z * z);
+        }
+        return (float) Math.sqrt(scale2);
+    }
+}
@@ -19,6 +19,7 @@ public class ColouredInterleavedMesh extends Mesh {
     public ColouredInterleavedMesh(FloatBuffer vertices, IntBuffer indexes){
         this.indexes = indexes;
         this.vertices = vertices;
+        bounds = Bounds.of(vertices, FLOAT_STRIDE);
     }
 
     protected ColouredInterleavedMesh(MeshConstructionData meshData){
@@ -30,6 +31,7 @@ public class ColouredInterleavedMesh extends Mesh {
 
         indexes = IntBuffer.wrap(meshData.indices);
         this.vertices = FloatBuffer.wrap(vertices);
+        bounds = Bounds.of(this.vertices, FLOAT_STRIDE);
 
     }
 
@@ -27,6 +27,7 @@ public class InterleavedMesh extends Mesh {
 
         indexes = IntBuffer.wrap(meshData.indices);
         this.vertices = FloatBuffer.wrap(vertices);
+        bounds = Bounds.of(this.vertices, FLOAT_STRIDE);
 
     }
 
@@ -13,6 +13,15 @@ import java.util.List;
 
 public abstract class Mesh {
 
+    protected Bounds bounds = new Bounds();
+
+    /**
+     * Where the mesh's positions lie, worked out when it was built.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
     protected static MeshConstructionData importOBJ(InputStream inputStream, MatLib matlib, ImportOptions options) throws IOException {
 
         List<float[]> vertices = null, uvs = null, normals = null;
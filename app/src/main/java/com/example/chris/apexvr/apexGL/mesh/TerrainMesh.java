@@ -0,0 +1,56 @@
+package com.example.chris.apexvr.apexGL.mesh;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A coloured mesh cut into tiles that are culled and drawn on their own,
+ * each at any of a number of levels of detail. The index buffer holds a
+ * range for every level of every tile, all over the one set of vertices,
+ * with the ranges of a level next to each other tile after tile.
+ */
+public class TerrainMesh extends ColouredInterleavedMesh {
+
+    private final Bounds[] tileBounds;
+    private final int levels;
+    // Indexed by level * tiles + tile
+    private final int[] firstIndexes;
+    private final int[] indexCounts;
+
+    public TerrainMesh(FloatBuffer vertices, IntBuffer indexes, Bounds[] tileBounds, int levels,
+                       int[] firstIndexes, int[] indexCounts){
+        super(vertices, indexes);
+
+        if(firstIndexes.length != tileBounds.length * levels || indexCounts.length != firstIndexes.length){
+            throw new RuntimeException("need an index range for every level of every tile");
+        }
+
+        this.tileBounds = tileBounds;
+        this.levels = levels;
+        this.firstIndexes = firstIndexes;
+        this.indexCounts = indexCounts;
+    }
+
+    public int getTileCount(){
+        return tileBounds.length;
+    }
+
+    public int getLevels(){
+        return levels;
+    }
+
+    /**
+     * In the mesh's space, skirt included.
+     */
+    public Bounds getTileBounds(int tile){
+        return tileBounds[tile];
+    }
+
+    public int getFirstIndex(int tile, int level){
+        return firstIndexes[level * tileBounds.length + tile];
+    }
+
+    public int getIndexCount(int tile, int level){
+        return indexCounts[level * tileBounds.length + tile];
+    }
+}
@@ -26,6 +26,7 @@ public class TexturedInterleavedMesh extends Mesh {
 
         indexes = IntBuffer.wrap(meshData.indices);
         this.vertices = FloatBuffer.wrap(vertices);
+        bounds = Bounds.of(this.vertices, 8);
 
     }
 
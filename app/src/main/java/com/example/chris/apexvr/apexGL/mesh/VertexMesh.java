@@ -24,6 +24,7 @@ public class VertexMesh extends Mesh {
 
         indexes = IntBuffer.wrap(meshData.indices);
         this.vertices = FloatBuffer.wrap(vertices);
+        bounds = Bounds.of(this.vertices, FLOAT_STRIDE);
 
     }
 
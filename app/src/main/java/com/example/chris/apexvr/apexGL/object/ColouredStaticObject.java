@@ -43,6 +43,7 @@ public class ColouredStaticObject extends GLObject {
 
 
         nIndexes = mesh.indexes.limit();
+        bounds = mesh.getBounds();
 
 
         try {
@@ -107,7 +108,7 @@ public class ColouredStaticObject extends GLObject {
         GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER,glBuffers[1]);
 
 
-        GLES30.glDrawElements(GLES30.GL_TRIANGLES,nIndexes,GLES30.GL_UNSIGNED_INT,0);
+        drawElements(nIndexes);
 
 
         GLES30.glDisableVertexAttribArray(vetexAtribID);
@@ -121,6 +122,14 @@ public class ColouredStaticObject extends GLObject {
         GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER,glBuffers[0]);
         GLES30.glVertexAttribPointer(shadow.getVetexAtribID(),3,GLES30.GL_FLOAT,false,ColouredInterleavedMesh.FLOAT_STRIDE*Float.SIZE / 8,0);
         GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER,glBuffers[1]);
+        drawElements(nIndexes);
+    }
+
+    /**
+     * Draw the bound mesh, once here, as many times as there are instances in
+     * subclasses that instance it.
+     */
+    protected void drawElements(int nIndexes){
         GLES30.glDrawElements(GLES30.GL_TRIANGLES,nIndexes,GLES30.GL_UNSIGNED_INT,0);
     }
 }
@@ -3,6 +3,8 @@ package com.example.chris.apexvr.apexGL.object;
 import android.opengl.GLES30;
 import android.opengl.Matrix;
 
+import com.example.chris.apexvr.apexGL.Frustum;
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
 import com.example.chris.apexvr.apexGL.shader.GLProgram;
 import com.example.chris.apexvr.apexGL.shader.LightingExtention;
 import com.example.chris.apexvr.apexGL.shader.Shadow;
@@ -19,8 +21,13 @@ public abstract class GLObject {
     protected float[] orientation;
     protected boolean castingShadow = false;
     protected boolean draw = true;
+    // In the object's own space, null for objects that are never culled
+    protected Bounds bounds;
     List<LightingExtention> extentions;
 
+    // Scratch for draw() and drawShadow(), which only run on the GL thread
+    private final float[] vm = new float[16];
+    private final float[] pvm = new float[16];
 
     public GLObject(GLProgram program){
         this.program = program;
@@ -40,37 +47,82 @@ public abstract class GLObject {
     }
 
     public void draw(float[] p, float[] v){
-        if(!draw){
-            return;
+        draw(p,v,null);
+    }
+
+    /**
+     * Draw, unless the object lies entirely outside frustum.
+     *
+     * @param frustum of p times v, or null to draw without culling
+     */
+    public void draw(float[] p, float[] v, Frustum frustum){
+        if(prepare(frustum,null)){
+            drawPrepared(p,v);
         }
+    }
 
-        program.use();
+    /**
+     * Cull once for every eye of a frame: whether the object is to be drawn
+     * and can be seen from either frustum. Anything else an object does per
+     * frame rather than per eye belongs here too.
+     *
+     * @param left null to draw without culling
+     * @param right null for a single eye
+     * @return whether to call drawPrepared() for the eyes
+     */
+    public boolean prepare(Frustum left, Frustum right){
+        return draw && (isVisible(left) || (right != null && isVisible(right)));
+    }
 
-        float[] vm = new float[16];
-        float[] pvm = new float[16];
+    /**
+     * Draw for one eye after prepare() said to.
+     */
+    public void drawPrepared(float[] p, float[] v){
+        program.use();
 
         Matrix.multiplyMM(vm,0,v,0,orientation,0);
         Matrix.multiplyMM(pvm,0,p,0,vm,0);
 
-        for(LightingExtention extention: extentions){
-            extention.bind(p,v,orientation);
-        }
+        bindExtentions(p,v,orientation);
 
         onDraw(pvm,vm,v);
 
     }
 
     public void drawShadow(Shadow shadow){
-        if(!castingShadow)
+        // Hidden objects, like a hand that has lost tracking, cast nothing either
+        if(!castingShadow || !draw)
             return;
 
-        float[] pvm = new float[16];
         Matrix.multiplyMM(pvm,0,shadow.getPV(),0,orientation,0);
         GLES30.glUniformMatrix4fv(shadow.getPvmUniformID(),1,false,pvm,0);
 
         onDrawShadow(shadow);
     }
 
+    /**
+     * Bind every extention for a draw with model matrix m. Indexed rather
+     * than a for each, which would make an iterator per object per eye.
+     */
+    protected void bindExtentions(float[] p, float[] v, float[] m){
+        for(int i = 0; i < extentions.size(); ++i){
+            extentions.get(i).bind(program,p,v,m);
+        }
+    }
+
+    /**
+     * Whether any of the object could be inside frustum. The world bounds are
+     * worked out here rather than kept, the orientation is often moved in
+     * place by whoever holds it.
+     */
+    public boolean isVisible(Frustum frustum){
+        return frustum == null || bounds == null || frustum.intersectsBox(orientation,bounds);
+    }
+
+    public Bounds getBounds() {
+        return bounds;
+    }
+
     public void addExtention(LightingExtention extention){
         extention.link(program);
         extentions.add(extention);
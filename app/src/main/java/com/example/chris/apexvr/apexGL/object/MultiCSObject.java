@@ -2,25 +2,75 @@ package com.example.chris.apexvr.apexGL.object;
 
 import android.opengl.GLES30;
 import android.opengl.Matrix;
+import android.util.Log;
 
+import com.example.chris.apexvr.apexGL.Frustum;
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
 import com.example.chris.apexvr.apexGL.mesh.ColouredInterleavedMesh;
 import com.example.chris.apexvr.apexGL.shader.GLProgram;
-import com.example.chris.apexvr.apexGL.shader.LightingExtention;
 import com.example.chris.apexvr.apexGL.shader.Shadow;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by Chris on 2/23/2017.
+ *
+ * One mesh drawn many times, each sub object placed by its own model matrix
+ * under the object's orientation. Every frame the sub objects in view of
+ * either eye are packed into an instance buffer, which both eyes then draw
+ * in one instanced call each, so the program has to take a per instance
+ * mat4 "model", as coloured_instanced.vert does.
  */
 
 public class MultiCSObject extends ColouredStaticObject {
+    private static final String TAG = "MultiCSObject";
+    private static final int MATRIX_BYTES = 16 * Float.SIZE / 8;
+    // Instance buffers: the sub objects in view this frame, and all of them for the shadow
+    private static final int FRAME = 0;
+    private static final int ALL = 1;
+
     private List<float[]> subOriens = new ArrayList<>(50);
-    private float exclustion  = 5.0f;
+
+    private final int[] instanceBuffer;
+    private final int modelAtribID;
+    private boolean instancesChanged = false;
+    // Where the model matrix goes in the program drawing right now, and which instances it draws
+    private int instanceAtribID;
+    private int drawing = FRAME;
+
+    private final Bounds meshBounds;
+    // Bounding sphere of each sub object in the object's space, x, y, z, radius
+    private float[] instanceSpheres = new float[0];
+    // Matrices of the sub objects being drawn, packed, and GL's view of them
+    private float[] instanceModels = new float[0];
+    private FloatBuffer instanceData = FloatBuffer.wrap(instanceModels);
+    private int instanceCount;
+    // Whether the packed matrices are in the instance buffer yet
+    private boolean instancesUploaded;
+    // Every sub object's matrix, packed apart so the shadow leaves the frame's be
+    private float[] allModels = new float[0];
+    private FloatBuffer allData = FloatBuffer.wrap(allModels);
+
+    // Scratch for drawShadow(), which only runs on the GL thread
+    private final float[] pvm = new float[16];
 
     public MultiCSObject(GLProgram program, ColouredInterleavedMesh mesh) {
         super(program, mesh);
+
+        meshBounds = bounds;
+        bounds = new Bounds();
+
+        instanceBuffer = new int[2];
+        GLES30.glGenBuffers(2,instanceBuffer,0);
+
+        try {
+            modelAtribID = program.getAtttributeID("model");
+        } catch (Exception e) {
+            Log.e(TAG,"Could not link buffers: " + e.toString());
+            throw new RuntimeException("Could not link buffers: " + e.toString());
+        }
     }
 
     public void addSubObject(float[] orientation){
@@ -29,58 +79,158 @@ public class MultiCSObject extends ColouredStaticObject {
         }
 
         subOriens.add(orientation);
+        instancesChanged = true;
+    }
+
+    public int getNumberOfSubObjects(){
+        return subOriens.size();
     }
 
     @Override
-    public void draw(float[] p, float[] v){
-        if(!draw){
-            return;
+    public boolean prepare(Frustum left, Frustum right){
+        // The bounds of the whole set come from the sub objects
+        if(instancesChanged){
+            updateInstances();
+        }
+        if(!super.prepare(left,right)){
+            return false;
         }
-        program.use();
-
 
-        for(float[] subOrien : subOriens){
-            float[] pvms = new float[16];
-            float[] vms = new float[16];
-            float[] ms = new float[16];
+        cullInstances(left,right);
+        return instanceCount > 0;
+    }
 
-            Matrix.multiplyMM(ms,0,orientation,0,subOrien,0);
-            Matrix.multiplyMM(vms,0,v,0,ms,0);
-            Matrix.multiplyMM(pvms,0,p,0,vms,0);
+    @Override
+    public void onDraw(float[] pvm, float[] vm, float[] v) {
+        instanceAtribID = modelAtribID;
+        drawing = FRAME;
+        super.onDraw(pvm,vm,v);
+    }
 
-            if(vms[14] > exclustion){
-                continue;
-            }
+    @Override
+    public void drawShadow(Shadow shadow){
+        if(!castingShadow || !draw)
+            return;
 
+        // Into its own buffer, this can come between prepare() and the eyes
+        if(instancesChanged){
+            updateInstances();
+        }
+        for(int i = 0; i < subOriens.size(); ++i){
+            System.arraycopy(subOriens.get(i),0,allModels,i * 16,16);
+        }
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER,instanceBuffer[ALL]);
+        GLES30.glBufferSubData(GLES30.GL_ARRAY_BUFFER,0,subOriens.size() * MATRIX_BYTES,allData);
 
-            for(LightingExtention extention: extentions){
-                extention.bind(p,v,ms);
-            }
+        int pvmUniformID = shadow.beginInstanced();
 
-            onDraw(pvms,vms,v);
-        }
+        Matrix.multiplyMM(pvm,0,shadow.getPV(),0,orientation,0);
+        GLES30.glUniformMatrix4fv(pvmUniformID,1,false,pvm,0);
+        instanceAtribID = shadow.getInstancedModelAtribID();
+        drawing = ALL;
+        onDrawShadow(shadow);
 
+        shadow.endInstanced();
     }
 
     @Override
-    public void drawShadow(Shadow shadow){
-        if(!castingShadow)
+    protected void drawElements(int nIndexes) {
+        int count = drawing == ALL ? subOriens.size() : instanceCount;
+        if(count == 0){
             return;
+        }
 
-        float[] pvm = new float[16];
-        Matrix.multiplyMM(pvm,0,shadow.getPV(),0,orientation,0);
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER,instanceBuffer[drawing]);
+        if(drawing == FRAME && !instancesUploaded){
+            GLES30.glBufferSubData(GLES30.GL_ARRAY_BUFFER,0,instanceCount * MATRIX_BYTES,instanceData);
+            instancesUploaded = true;
+        }
+
+        // A mat4 attribute is four vec4 columns in consecutive locations
+        for(int i = 0; i < 4; ++i){
+            GLES30.glEnableVertexAttribArray(instanceAtribID + i);
+            GLES30.glVertexAttribPointer(instanceAtribID + i,4,GLES30.GL_FLOAT,false,MATRIX_BYTES,i * 4 * Float.SIZE / 8);
+            GLES30.glVertexAttribDivisor(instanceAtribID + i,1);
+        }
+
+        GLES30.glDrawElementsInstanced(GLES30.GL_TRIANGLES,nIndexes,GLES30.GL_UNSIGNED_INT,0,count);
+
+        // The divisor stays with the location, not the program
+        for(int i = 0; i < 4; ++i){
+            GLES30.glVertexAttribDivisor(instanceAtribID + i,0);
+            GLES30.glDisableVertexAttribArray(instanceAtribID + i);
+        }
+    }
+
+    /**
+     * Pack the matrices of the sub objects that touch either frustum, or all
+     * of them for a null left, ready for drawElements().
+     */
+    private void cullInstances(Frustum left, Frustum right){
+        float[] m = orientation;
+        float scale = Bounds.scale(m,0);
+        instanceCount = 0;
+        instancesUploaded = false;
+        for(int i = 0; i < subOriens.size(); ++i){
+            if(left != null){
+                float x = instanceSpheres[i * 4];
+                float y = instanceSpheres[i * 4 + 1];
+                float z = instanceSpheres[i * 4 + 2];
+                float wx = m[0] * x + m[4] * y + m[8] * z + m[12];
+                float wy = m[1] * x + m[5] * y + m[9] * z + m[13];
+                float wz = m[2] * x + m[6] * y + m[10] * z + m[14];
+                float radius = instanceSpheres[i * 4 + 3] * scale;
+                if(!left.intersectsSphere(wx,wy,wz,radius)
+                        && (right == null || !right.intersectsSphere(wx,wy,wz,radius))){
+                    continue;
+                }
+            }
+
+            System.arraycopy(subOriens.get(i),0,instanceModels,instanceCount * 16,16);
+            ++instanceCount;
+        }
+    }
 
-        for(float[] subOrien : subOriens) {
-            float[] pvms = new float[16];
+    /**
+     * Size everything for the sub objects there are now and work out their
+     * spheres and the bounds of them all. Only when they have changed, which
+     * after loading is never.
+     */
+    private void updateInstances(){
+        int n = subOriens.size();
+        instanceSpheres = new float[n * 4];
+        instanceModels = new float[n * 16];
+        instanceData = FloatBuffer.wrap(instanceModels);
+        allModels = new float[n * 16];
+        allData = FloatBuffer.wrap(allModels);
+
+        float[] c = meshBounds.center;
+        for(int j = 0; j < 3; ++j){
+            bounds.min[j] = n > 0 ? Float.POSITIVE_INFINITY : 0.0f;
+            bounds.max[j] = n > 0 ? Float.NEGATIVE_INFINITY : 0.0f;
+        }
+        for(int i = 0; i < n; ++i){
+            float[] s = subOriens.get(i);
+            float radius = meshBounds.radius * Bounds.scale(s,0);
+            for(int j = 0; j < 3; ++j){
+                float x = s[j] * c[0] + s[4 + j] * c[1] + s[8 + j] * c[2] + s[12 + j];
+                instanceSpheres[i * 4 + j] = x;
+                bounds.min[j] = Math.min(bounds.min[j], x - radius);
+                bounds.max[j] = Math.max(bounds.max[j], x + radius);
+            }
+            instanceSpheres[i * 4 + 3] = radius;
+        }
+        bounds.update();
 
-            Matrix.multiplyMM(pvms,0,pvm,0,subOrien,0);
-            GLES30.glUniformMatrix4fv(shadow.getPvmUniformID(),1,false,pvms,0);
-            onDrawShadow(shadow);
+        for(int buffer : instanceBuffer){
+            GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER,buffer);
+            GLES30.glBufferData(GLES30.GL_ARRAY_BUFFER,n * MATRIX_BYTES,null,GLES30.GL_DYNAMIC_DRAW);
         }
 
+        instancesChanged = false;
     }
 
-    public void setExclustion(float exclustion) {
-        this.exclustion = exclustion;
+    int getInstanceCount(){
+        return instanceCount;
     }
 }
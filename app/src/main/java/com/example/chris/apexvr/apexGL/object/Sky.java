@@ -5,11 +5,9 @@ import android.opengl.Matrix;
 import android.util.Log;
 
 import com.example.chris.apexvr.apexGL.shader.GLProgram;
-import com.example.chris.apexvr.apexGL.shader.LightingExtention;
 import com.example.chris.apexvr.apexGL.shader.Shadow;
 
 import java.nio.FloatBuffer;
-import java.util.Arrays;
 
 /**
  * Created by Chris on 3/14/2017.
@@ -21,6 +19,11 @@ public class Sky extends GLObject {
     private final int[] glBuffers;
     private final int vetexAtribID,prUniformID;
 
+    // Scratch for draw(), which only runs on the GL thread
+    private final float[] pr = new float[16];
+    private final float[] pri = new float[16];
+    private final float[] r = new float[16];
+
     public Sky(GLProgram program) {
         super(program);
 
@@ -59,19 +62,12 @@ public class Sky extends GLObject {
     }
 
     @Override
-    public void draw(float[] p, float[] v){
-        if(!draw){
-            return;
-        }
+    public void drawPrepared(float[] p, float[] v){
         program.use();
 
-        for(LightingExtention extention: extentions){
-            extention.bind(p,v,orientation);
-        }
+        bindExtentions(p,v,orientation);
 
-        float[] pr = new float[16];
-        float[] pri = new float[16];
-        float[] r = Arrays.copyOf(v,16);
+        System.arraycopy(v,0,r,0,16);
         for(int i = 12; i < 15; ++i){
             r[i] = 0.0f;
         }
@@ -0,0 +1,182 @@
+package com.example.chris.apexvr.apexGL.object;
+
+import android.opengl.GLES30;
+
+import com.example.chris.apexvr.apexGL.Frustum;
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
+import com.example.chris.apexvr.apexGL.mesh.TerrainMesh;
+import com.example.chris.apexvr.apexGL.shader.GLProgram;
+import com.example.chris.apexvr.apexGL.shader.Shadow;
+
+import java.util.Arrays;
+
+/**
+ * Ground drawn a tile at a time. Once a frame, tiles out of view of both
+ * eyes are culled and the rest given the level of detail their distance
+ * from the point between the eyes calls for: the finest within lodDistance,
+ * one coarser each time the distance doubles after that. Both eyes draw the
+ * same levels, so the ground does not differ between them.
+ */
+
+public class TerrainObject extends ColouredStaticObject {
+    private static final int INDEX_BYTES = Integer.SIZE / 8;
+
+    private final Bounds[] tileBounds;
+    private final int levels;
+    // Indexed by level * tiles + tile, as in the mesh
+    private final int[] firstIndexes;
+    private final int[] indexCounts;
+
+    private final boolean[] tileVisible;
+    private final int[] tileLevels;
+    private float lodDistance = 20.0f;
+    // Between the eyes, for the levels
+    private final float[] centreEye = new float[3];
+
+    // Scratch for drawShadow(), which only runs on the GL thread
+    private final Frustum shadowFrustum = new Frustum();
+
+    public TerrainObject(GLProgram program, TerrainMesh mesh) {
+        super(program, mesh);
+
+        int tiles = mesh.getTileCount();
+        levels = mesh.getLevels();
+        tileBounds = new Bounds[tiles];
+        firstIndexes = new int[levels * tiles];
+        indexCounts = new int[levels * tiles];
+        for(int t = 0; t < tiles; ++t){
+            tileBounds[t] = mesh.getTileBounds(t);
+            for(int level = 0; level < levels; ++level){
+                firstIndexes[level * tiles + t] = mesh.getFirstIndex(t,level);
+                indexCounts[level * tiles + t] = mesh.getIndexCount(t,level);
+            }
+        }
+
+        tileVisible = new boolean[tiles];
+        tileLevels = new int[tiles];
+    }
+
+    public float getLodDistance() {
+        return lodDistance;
+    }
+
+    public void setLodDistance(float lodDistance) {
+        this.lodDistance = lodDistance;
+    }
+
+    /**
+     * Cull the tiles and pick their levels for both eyes. Without a left
+     * frustum there is no eye to measure from, and every tile is drawn at
+     * full detail.
+     */
+    @Override
+    public boolean prepare(Frustum left, Frustum right){
+        if(!super.prepare(left,right) || cullTiles(left,right) == 0){
+            return false;
+        }
+
+        if(left == null){
+            Arrays.fill(tileLevels,0);
+            return true;
+        }
+
+        float[] eye = left.getEye();
+        for(int i = 0; i < 3; ++i){
+            centreEye[i] = right == null ? eye[i] : 0.5f * (eye[i] + right.getEye()[i]);
+        }
+        selectLevels(centreEye);
+        return true;
+    }
+
+    @Override
+    public void drawShadow(Shadow shadow){
+        // All the light sees, at full detail, the map is only made once
+        shadowFrustum.set(shadow.getPV());
+        cullTiles(shadowFrustum,null);
+        Arrays.fill(tileLevels,0);
+
+        super.drawShadow(shadow);
+    }
+
+    @Override
+    protected void drawElements(int nIndexes) {
+        // A level's tiles follow each other in the index buffer, so a run of
+        // neighbours at the same level goes in one call
+        int first = 0;
+        int count = 0;
+        for(int t = 0; t < tileVisible.length; ++t){
+            if(!tileVisible[t]){
+                continue;
+            }
+
+            int range = tileLevels[t] * tileVisible.length + t;
+            if(count > 0 && firstIndexes[range] == first + count){
+                count += indexCounts[range];
+                continue;
+            }
+
+            if(count > 0){
+                GLES30.glDrawElements(GLES30.GL_TRIANGLES,count,GLES30.GL_UNSIGNED_INT,first * INDEX_BYTES);
+            }
+            first = firstIndexes[range];
+            count = indexCounts[range];
+        }
+
+        if(count > 0){
+            GLES30.glDrawElements(GLES30.GL_TRIANGLES,count,GLES30.GL_UNSIGNED_INT,first * INDEX_BYTES);
+        }
+    }
+
+    /**
+     * Mark the tiles that touch either frustum, or all of them for a null
+     * left.
+     *
+     * @return how many were marked
+     */
+    private int cullTiles(Frustum left, Frustum right){
+        int visible = 0;
+        for(int t = 0; t < tileBounds.length; ++t){
+            tileVisible[t] = left == null || left.intersectsBox(orientation,tileBounds[t])
+                    || (right != null && right.intersectsBox(orientation,tileBounds[t]));
+            if(tileVisible[t]){
+                ++visible;
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Pick every tile's level by how far eye is from the tile's sphere.
+     */
+    private void selectLevels(float[] eye){
+        float ex = eye[0];
+        float ey = eye[1];
+        float ez = eye[2];
+
+        float[] m = orientation;
+        float scale = Bounds.scale(m,0);
+        for(int t = 0; t < tileBounds.length; ++t){
+            float[] c = tileBounds[t].center;
+            float dx = m[0] * c[0] + m[4] * c[1] + m[8] * c[2] + m[12] - ex;
+            float dy = m[1] * c[0] + m[5] * c[1] + m[9] * c[2] + m[13] - ey;
+            float dz = m[2] * c[0] + m[6] * c[1] + m[10] * c[2] + m[14] - ez;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - tileBounds[t].radius * scale;
+
+            int level = 0;
+            float reach = lodDistance;
+            while(level + 1 < levels && distance > reach){
+                ++level;
+                reach *= 2.0f;
+            }
+            tileLevels[t] = level;
+        }
+    }
+
+    boolean isTileVisible(int tile){
+        return tileVisible[tile];
+    }
+
+    int getTileLevel(int tile){
+        return tileLevels[tile];
+    }
+}
@@ -48,6 +48,7 @@ public class TexturedStaticObject extends GLObject {
 
 
         nIndexes = mesh.indexes.limit();
+        bounds = mesh.getBounds();
 
 
         try {
@@ -42,6 +42,7 @@ public class VertexObject extends GLObject {
 
 
         nIndexes = mesh.indexes.limit();
+        bounds = mesh.getBounds();
 
 
         try {
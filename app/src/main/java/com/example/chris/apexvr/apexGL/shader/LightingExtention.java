@@ -6,5 +6,9 @@ package com.example.chris.apexvr.apexGL.shader;
 
 public interface LightingExtention {
     abstract void link(GLProgram program);
-    abstract void bind(float[] p, float[] v, float[] m);
+    /**
+     * Set up for a draw with program, already linked and in use, and model
+     * matrix m.
+     */
+    abstract void bind(GLProgram program, float[] p, float[] v, float[] m);
 }
@@ -7,7 +7,9 @@ import android.util.Log;
 import com.example.chris.apexvr.apexGL.GLError;
 import com.example.chris.apexvr.apexGL.object.GLObject;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Chris on 2/26/2017.
@@ -27,14 +29,24 @@ public class Shadow implements LightingExtention {
 
     private float[] pv;
     private float[] spv;
+    // Scratch for bind(), which only runs on the GL thread
+    private final float[] spvm = new float[16];
 
     private final int[] textures;
     private final int[] buffers;
     private GLProgram program;
-    private int vetexAtribID, pvmUniformID,shadowPVMUniformID, texUniformID;
+    private GLProgram instancedProgram;
+    private int vetexAtribID, pvmUniformID;
+    // SPVM and depthMap uniforms of every program linked, they need not match
+    private final Map<GLProgram, int[]> linked = new HashMap<>();
+    private int instancedModelAtribID, instancedPvmUniformID;
 
 
-    public Shadow(GLProgram shadowProgram, float[] lightDir, float width, float hight){
+    /**
+     * @param instancedShadowProgram for casters that draw all their copies in
+     *                               one call, takes a per instance mat4 "model"
+     */
+    public Shadow(GLProgram shadowProgram, GLProgram instancedShadowProgram, float[] lightDir, float width, float hight){
 
 
        if(!GLES30.glGetString(GLES30.GL_EXTENSIONS).contains("OES_depth_texture")){
@@ -42,6 +54,7 @@ public class Shadow implements LightingExtention {
            throw new RuntimeException("OES_depth_texture not sported");
        }
         program = shadowProgram;
+        instancedProgram = instancedShadowProgram;
 
         pv = new float[16];
         spv = new float[16];
@@ -134,6 +147,20 @@ public class Shadow implements LightingExtention {
             throw new RuntimeException("Could not link uniform: " + e.toString());
         }
 
+        try {
+            instancedModelAtribID = instancedProgram.getAtttributeID("model");
+        } catch (Exception e) {
+            Log.e(TAG,"Could not link buffers: " + e.toString());
+            throw new RuntimeException("Could not link buffers: " + e.toString());
+        }
+
+        try {
+            instancedPvmUniformID = instancedProgram.getUniformID("PVM");
+        } catch (Exception e) {
+            Log.e(TAG,"Could not link uniform: " + e.toString());
+            throw new RuntimeException("Could not link uniform: " + e.toString());
+        }
+
 
     }
 
@@ -185,8 +212,32 @@ public class Shadow implements LightingExtention {
         return pvmUniformID;
     }
 
+    /**
+     * Switch to the instanced shadow program for one caster, until
+     * endInstanced(). Positions stay at the same attribute.
+     *
+     * @return the PVM uniform of the instanced program
+     */
+    public int beginInstanced() {
+        instancedProgram.use();
+        return instancedPvmUniformID;
+    }
+
+    public void endInstanced() {
+        program.use();
+    }
+
+    public int getInstancedModelAtribID() {
+        return instancedModelAtribID;
+    }
+
     @Override
     public void link(GLProgram program) {
+        if(linked.containsKey(program)){
+            return;
+        }
+
+        int shadowPVMUniformID, texUniformID;
         try {
             shadowPVMUniformID = program.getUniformID("SPVM");
         } catch (Exception e) {
@@ -200,11 +251,16 @@ public class Shadow implements LightingExtention {
             Log.e(TAG,"Could not link uniform: " + e.toString());
             throw new RuntimeException("Could not link uniform: " + e.toString());
         }
+
+        linked.put(program, new int[]{shadowPVMUniformID, texUniformID});
     }
 
     @Override
-    public void bind(float[] p, float[] v, float[] m) {
-        float[] spvm = new float[16];
+    public void bind(GLProgram program, float[] p, float[] v, float[] m) {
+        int[] uniforms = linked.get(program);
+        int shadowPVMUniformID = uniforms[0];
+        int texUniformID = uniforms[1];
+
         Matrix.multiplyMM(spvm,0,spv,0,m,0);
         GLES30.glUniformMatrix4fv(shadowPVMUniformID, 1,false, spvm,0);
 
@@ -220,14 +276,4 @@ public class Shadow implements LightingExtention {
         GLError.checkGLError(TAG,"shadow bind");
 
     }
-
-    public static class BoundingBox{
-        private final float[] center;
-        private final float[] size;
-
-        public BoundingBox(float[] center, float[] size){
-            this.center = center;
-            this.size = size;
-        }
-    }
 }
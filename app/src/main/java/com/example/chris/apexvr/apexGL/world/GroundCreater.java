@@ -1,6 +1,8 @@
 package com.example.chris.apexvr.apexGL.world;
 
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
 import com.example.chris.apexvr.apexGL.mesh.ColouredInterleavedMesh;
+import com.example.chris.apexvr.apexGL.mesh.TerrainMesh;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
@@ -34,20 +36,9 @@ public class GroundCreater {
         FloatBuffer vertexes = FloatBuffer.allocate(9*width*width);
         IntBuffer indexes = IntBuffer.allocate(2 * 3 * lastIndex * lastIndex);
 
-        float half = size/2.0f;
-
         for(int x = 0; x < width; ++x) {
             for (int y = 0; y < width; ++y) {
-                vertexes.put(x * edge - half);
-                vertexes.put(grid[x][y]);
-                vertexes.put(y * edge - half);
-                vertexes.put(normal(x,y));
-                //vertexes.put(normal(x,y));
-                if(gradient(x,y) > 0.5f){
-                    vertexes.put(STONE_COLOUR);
-                }else{
-                    vertexes.put(GRASS_COLOUR);
-                }
+                putVertex(vertexes,x,y,0.0f);
             }
         }
 
@@ -70,6 +61,190 @@ public class GroundCreater {
         return new ColouredInterleavedMesh(vertexes, indexes);
     }
 
+    /**
+     * The same ground as getMesh(), cut into square tiles tileCells cells a
+     * side, the last row and column taking what is left over. Each tile gets
+     * levels index ranges over the one set of vertices, every level using
+     * every other vertex of the one before along each side, and always the
+     * tile's edges.
+     *
+     * Tiles drawn at different levels no longer meet along their shared
+     * edge, so every tile hangs a skirt straight down from its edges, deep
+     * enough to fill any gap the coarsest level can leave.
+     */
+    public TerrainMesh getTerrainMesh(int tileCells, int levels){
+        int tilesPerSide = (lastIndex + tileCells - 1) / tileCells;
+        int tiles = tilesPerSide * tilesPerSide;
+
+        // Skirts go after the grid, a vertex under each one on a tile's edge
+        int nVertices = width * width;
+        for(int tx = 0; tx < tilesPerSide; ++tx){
+            for(int ty = 0; ty < tilesPerSide; ++ty){
+                nVertices += 2 * (tileEnd(tx,tileCells) - tx * tileCells + tileEnd(ty,tileCells) - ty * tileCells);
+            }
+        }
+
+        int[] firstIndexes = new int[levels * tiles];
+        int[] indexCounts = new int[levels * tiles];
+        int nIndexes = 0;
+        for(int level = 0; level < levels; ++level){
+            int step = 1 << level;
+            for(int t = 0; t < tiles; ++t){
+                int tx = t / tilesPerSide;
+                int ty = t % tilesPerSide;
+                int nx = samples(tx * tileCells, tileEnd(tx,tileCells), step) - 1;
+                int ny = samples(ty * tileCells, tileEnd(ty,tileCells), step) - 1;
+
+                // Two triangles a cell, and a skirt seen from both sides
+                firstIndexes[level * tiles + t] = nIndexes;
+                indexCounts[level * tiles + t] = 6 * nx * ny + 12 * 2 * (nx + ny);
+                nIndexes += indexCounts[level * tiles + t];
+            }
+        }
+
+        FloatBuffer vertexes = FloatBuffer.allocate(ColouredInterleavedMesh.FLOAT_STRIDE * nVertices);
+        IntBuffer indexes = IntBuffer.allocate(nIndexes);
+        Bounds[] tileBounds = new Bounds[tiles];
+
+        for(int x = 0; x < width; ++x) {
+            for (int y = 0; y < width; ++y) {
+                putVertex(vertexes,x,y,0.0f);
+            }
+        }
+
+        // Which vertex hangs under each grid vertex, for the tile being built
+        int[] skirts = new int[width * width];
+        int nextSkirt = width * width;
+        float half = size / 2.0f;
+
+        for(int t = 0; t < tiles; ++t){
+            int x0 = (t / tilesPerSide) * tileCells;
+            int y0 = (t % tilesPerSide) * tileCells;
+            int x1 = tileEnd(t / tilesPerSide,tileCells);
+            int y1 = tileEnd(t % tilesPerSide,tileCells);
+
+            float low = Float.POSITIVE_INFINITY;
+            float high = Float.NEGATIVE_INFINITY;
+            for(int x = x0; x <= x1; ++x){
+                for(int y = y0; y <= y1; ++y){
+                    low = Math.min(low, grid[x][y]);
+                    high = Math.max(high, grid[x][y]);
+                }
+            }
+            // No edge of a coarser level is further from the ground than this
+            float drop = high - low + edge;
+
+            for(int x = x0; x <= x1; ++x){
+                for(int y = y0; y <= y1; y += (x == x0 || x == x1) ? 1 : y1 - y0){
+                    putVertex(vertexes,x,y,drop);
+                    skirts[x * width + y] = nextSkirt++;
+                }
+            }
+
+            Bounds bounds = new Bounds();
+            bounds.min[0] = x0 * edge - half;
+            bounds.min[1] = low - drop;
+            bounds.min[2] = y0 * edge - half;
+            bounds.max[0] = x1 * edge - half;
+            bounds.max[1] = high;
+            bounds.max[2] = y1 * edge - half;
+            bounds.update();
+            tileBounds[t] = bounds;
+
+            for(int level = 0; level < levels; ++level){
+                int step = 1 << level;
+                int nx = samples(x0,x1,step);
+                int ny = samples(y0,y1,step);
+                indexes.position(firstIndexes[level * tiles + t]);
+
+                for(int i = 0; i + 1 < nx; ++i){
+                    int xa = sample(x0,x1,step,i);
+                    int xb = sample(x0,x1,step,i + 1);
+
+                    for(int j = 0; j + 1 < ny; ++j){
+                        int ya = sample(y0,y1,step,j);
+                        int yb = sample(y0,y1,step,j + 1);
+                        putQuad(indexes, xa * width + ya, xa * width + yb, xb * width + yb, xb * width + ya);
+                    }
+
+                    putSkirt(indexes, skirts, xa * width + y0, xb * width + y0);
+                    putSkirt(indexes, skirts, xa * width + y1, xb * width + y1);
+                }
+
+                for(int j = 0; j + 1 < ny; ++j){
+                    int ya = sample(y0,y1,step,j);
+                    int yb = sample(y0,y1,step,j + 1);
+
+                    putSkirt(indexes, skirts, x0 * width + ya, x0 * width + yb);
+                    putSkirt(indexes, skirts, x1 * width + ya, x1 * width + yb);
+                }
+            }
+        }
+
+        vertexes.rewind();
+        indexes.rewind();
+
+        return new TerrainMesh(vertexes, indexes, tileBounds, levels, firstIndexes, indexCounts);
+    }
+
+    /**
+     * Grid vertex x, y, dropped down by drop, as interleaved position,
+     * normal and colour.
+     */
+    private void putVertex(FloatBuffer vertexes, int x, int y, float drop){
+        float half = size/2.0f;
+
+        vertexes.put(x * edge - half);
+        vertexes.put(grid[x][y] - drop);
+        vertexes.put(y * edge - half);
+        vertexes.put(normal(x,y));
+        if(gradient(x,y) > 0.5f){
+            vertexes.put(STONE_COLOUR);
+        }else{
+            vertexes.put(GRASS_COLOUR);
+        }
+    }
+
+    /**
+     * Two triangles, wound the way getMesh() winds a cell.
+     */
+    private static void putQuad(IntBuffer indexes, int a, int b, int c, int d){
+        indexes.put(a);
+        indexes.put(b);
+        indexes.put(c);
+
+        indexes.put(c);
+        indexes.put(d);
+        indexes.put(a);
+    }
+
+    /**
+     * The piece of skirt under the edge from grid vertex a to b, wound both
+     * ways as the gap it fills can be looked through from either tile.
+     */
+    private static void putSkirt(IntBuffer indexes, int[] skirts, int a, int b){
+        putQuad(indexes, a, b, skirts[b], skirts[a]);
+        putQuad(indexes, a, skirts[a], skirts[b], b);
+    }
+
+    /**
+     * The grid index tile number tile of tileCells cells ends at.
+     */
+    private int tileEnd(int tile, int tileCells){
+        return Math.min((tile + 1) * tileCells, lastIndex);
+    }
+
+    /**
+     * How many vertices from start to end, both included, stepping by step.
+     */
+    private static int samples(int start, int end, int step){
+        return (end - start + step - 1) / step + 1;
+    }
+
+    private static int sample(int start, int end, int step, int i){
+        return Math.min(start + i * step, end);
+    }
+
 
     public float interpolate(float x, float y){
         float xCLose = (x / size + 0.5f) * lastIndex;
@@ -1,13 +1,10 @@
 package com.example.chris.apexvr.filtering;
 
 import android.opengl.Matrix;
-import android.os.SystemClock;
 
-import org.ejml.simple.SimpleMatrix;
-
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
+import io.github.apexhaptics.apexhapticsdisplay.JointHistory;
+import io.github.apexhaptics.apexhapticsdisplay.MarkerHistory;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
 
 /**
  * Created by Chris on 3/7/2017.
@@ -17,366 +14,430 @@ public class ApexSensors {
 
     private static final String TAG = "Apex_Kalman";
 
-    boolean leftHandAboveGround = false;
-    boolean rightHandAboveGround = false;
+    // Joints further below the sensor than this are not real positions
+    private static final float MIN_JOINT_Y = -10.0f;
+    // Hands are dropped when the skeleton stream goes quiet for this long
+    private static final long SKELETON_TIMEOUT_NANOS = 500000000L;
 
     float[] translation = new float[16];
     float[] rotation = new float[16];
+    private final float[] camera = new float[16];
     float[] leftHand = new float[16];
     float[] rigthHand = new float[16];
 
-    float[] skeletonPos = new float[3];
-    float[] stickerPos = new float[3];
+    final float[] skeletonPos = new float[3];
+    final float[] stickerPos = new float[3];
+    private final float[] dSkeletonPos = new float[3];
+
+    // Scratch for building the yaw and hand matrices
+    private final float[] yawMatrix = new float[16];
+    private final float[] handTranslation = new float[16];
 
-    float imuYaw = 0;
-    float stickerYaw = 0;
+    // Drift correction of the phone's orientation against the head marker
+    private final OrientationFusion orientationFusion = new OrientationFusion();
+    // Sender capture time of the last marker rotation used
+    private long markerCaptureNanos;
 
-    OneEuro[] leftHandEuro,rigthHandEuro, headPosEuro;
+    // Newest head marker with a rotation while waiting to start, it can come in an earlier batch than the skeleton
+    private final float[] startMarkerPosition = new float[3];
+    private final float[] startMarkerRotation = new float[16];
+    private long startMarkerNanos;
+    private boolean haveStartMarker = false;
 
-//    private KinectCorrectionData kinectCorrectionData;
+    HandTracker leftHandTracker, rightHandTracker;
+    OneEuroBatch headPosEuro;
+    private final float[] headEstimate = new float[3];
 
-    private SimpleMatrix A;
-    private SimpleMatrix C;
-    private SimpleMatrix Ryaw;
-    private SimpleMatrix Qyaw;
-    private SimpleMatrix Rlin;
-    private SimpleMatrix Qlin;
+    // The whole skeleton smoothed in one pass, absent joints hold their last position
+    private final OneEuroBatch skeletonEuro;
+    private final float[] skeleton = new float[JointHistory.JOINTS * 3];
 
-    private SimpleMatrix xYaw;
-    private SimpleMatrix Pyaw;
+    // Measurement noise of the head position filters, on the sticker and the skeleton's movement
+    private static final double R_STICKER = 0.1;
+    private static final double R_SKELETON = 0.3;
+    // An inferred head is a guess, trust its movement less
+    private static final double R_SKELETON_INFERRED = 1.2;
 
-    private SimpleMatrix[] xPos;
-    private SimpleMatrix[] PPos;
+    private final Kalman2[] posKalman;
 
-    private Long frameTime;
+    // Sender capture time of the last skeleton sample, the filters step on real sample intervals
+    private long jointCaptureNanos;
 
     private boolean ready = false;
 
     public ApexSensors(){
 
-        A = new SimpleMatrix(2,2);
-        A.set(0,0,1);
-        A.set(0,1,1);
-        A.set(1,1,1);
-
-        C = new SimpleMatrix(2,2);
-        C.set(0,0,1);
-        C.set(1,1,1);
-
-        Ryaw = new SimpleMatrix(2,2);
-        Ryaw.set(0,0,4);
-        Ryaw.set(1,1,.01);
-
-        Qyaw = new SimpleMatrix(2,2);
-        Qyaw.set(0,0,0);
-        Qyaw.set(1,1,1.5708);
-
-        Rlin = new SimpleMatrix(2,2);
-        Rlin.set(0,0,0.1);
-        Rlin.set(1,1,0.3);
-
-        Qlin = new SimpleMatrix(2,2);
-        Qlin.set(0,0,0);
-        Qlin.set(1,1,1.5);
-
-
-        leftHandEuro = new OneEuro[3];
-        rigthHandEuro = new OneEuro[3];
-
-        leftHandEuro[0] = new OneEuro(15.0f,0.5f,2.5f);
-        rigthHandEuro[0] = new OneEuro(15.0f,0.5f,2.5f);
+        posKalman = new Kalman2[3];
+        for(int i = 0; i < 3; ++i){
+            posKalman[i] = new Kalman2(0, 1.5, R_STICKER, R_SKELETON);
+        }
 
-        leftHandEuro[1] = new OneEuro(15.0f,0.5f,2.5f);
-        rigthHandEuro[1] = new OneEuro(15.0f,0.5f,2.5f);
 
-        leftHandEuro[2] = new OneEuro(15.0f,0.5f,2.5f);
-        rigthHandEuro[2] = new OneEuro(15.0f,0.5f,2.5f);
+        leftHandTracker = new HandTracker();
+        rightHandTracker = new HandTracker();
 
-        headPosEuro = new OneEuro[3];
-        headPosEuro[0] = new OneEuro(15.0f,0.2f,3.0f);
-        headPosEuro[1] = new OneEuro(15.0f,0.2f,3.0f);
-        headPosEuro[2] = new OneEuro(15.0f,0.2f,3.0f);
+        headPosEuro = new OneEuroBatch(3, 15.0f, 0.2f, 3.0f);
+        skeletonEuro = new OneEuroBatch(JointHistory.JOINTS * 3, 30.0f, 1.0f, 1.0f);
 
 
         Matrix.setIdentityM(rotation,0);
         Matrix.setIdentityM(translation,0);
         Matrix.setIdentityM(leftHand,0);
         Matrix.setIdentityM(rigthHand,0);
-        Matrix.translateM(translation,0,0,-1.8f,0);
 
-//        kinectCorrectionData = new KinectCorrectionData();
 
 
     }
     float[] pos = new float[3];
 
-    public void step(float[] orientation, HeadPacket headPacket, JointPacket jointPacket) {
+    // Filtered poses from track() to frame(), and the render thread's current one
+    private final TripleBuffer<PoseSnapshot> poses =
+            new TripleBuffer<>(new PoseSnapshot(), new PoseSnapshot(), new PoseSnapshot());
+    private PoseSnapshot pose = poses.getFront();
+
+    // Poses extrapolated to when the frame is displayed
+    private final PosePredictor predictor = new PosePredictor();
+    private final float[] predictedHead = new float[3];
+    private final float[] predictedLeftHand = new float[3];
+    private final float[] predictedRightHand = new float[3];
+    // Average skeleton sample interval, the head filter's velocity is per sample
+    private float jointInterval = 1.0f / 30.0f;
+
+    // Newest head marker position not yet paired with a skeleton sample, in the world and as sent
+    private final float[] newSticker = new float[3];
+    private final float[] rawSticker = new float[3];
+    private boolean haveNewSticker = false;
+
+    // Kinect space to world, solved as samples come in
+    private final KinectCalibration calibration = new KinectCalibration();
+    private final float[] markerRotation = new float[16];
+    private final float[] worldSkeleton = new float[JointHistory.JOINTS * 3];
+    private final float[] rawSkeletonHead = new float[3];
+
+    /**
+     * Filter, then place everything for this frame, on one thread.
+     */
+    public void step(float[] orientation, MarkerHistory heads, JointHistory joints) {
+        track(orientation, heads, joints);
+        frame(orientation);
+    }
+
+    /**
+     * Run the filters over every sample that arrived since the last call and
+     * publish the result for frame(). Can run on its own thread, see
+     * TrackingThread, but only ever on one.
+     *
+     * @param orientation the phone's latest head view
+     */
+    public void track(float[] orientation, MarkerHistory heads, JointHistory joints) {
 
+        long now = System.nanoTime();
 
+        int headCount = heads.drain();
+        int jointCount = joints.drain();
+
+        if (calibration.update()) {
+            // Keep the skeleton's movement continuous across the change
+            KinectCalibration.transformPoints(calibration.getSkeletonToWorld(), rawSkeletonHead, 0, skeletonPos, 0, 1);
+        }
 
         if (!ready) {
-            ready = !(headPacket == null || jointPacket == null || headPacket.rotMat == null);
+            int rotated = heads.newestWithRotation(headCount);
+            if (rotated >= 0) {
+                int slot = heads.slot(rotated);
+                System.arraycopy(heads.getPositions(), MarkerHistory.positionIndex(slot), startMarkerPosition, 0, 3);
+                System.arraycopy(heads.getRotations(), MarkerHistory.rotationIndex(slot), startMarkerRotation, 0, 16);
+                startMarkerNanos = heads.getCaptureNanos(slot);
+                haveStartMarker = true;
+            }
+
+            ready = haveStartMarker && jointCount > 0
+                    && joints.isPresent(joints.slot(jointCount - 1), Joint.JointType.Head);
 
             if (ready) {
-                startKalman(orientation, headPacket, jointPacket);
+                startKalman(orientation, joints, joints.slot(jointCount - 1));
+                publish();
             }
 
             return;
         }
 
 
-        //float newImuYaw = unroll(-extractYaw(orientation), (float) xYaw.get(0));
-        float dImuYaw = unroll((-extractYaw(orientation)) - imuYaw, 0);
-        imuYaw = imuYaw + dImuYaw;
-
-        long time = SystemClock.currentThreadTimeMillis();
-        float dt = (time - frameTime) / 1000.0f;
-        frameTime = time;
-
-//        Log.i(TAG,"Frame Rate: " + 1/dt);
-
-        {
-            SimpleMatrix xk = A.mult(xYaw);
-            Pyaw.set(A.mult(Pyaw.mult(A.transpose())).plus(Qyaw));
-
-            if (headPacket == null || headPacket.rotMat == null) {
-                stickerYaw = stickerYaw + (float) xYaw.get(1);
-            } else {
-                float[] upVector = upVector(orientation);
+        // The phone carries the orientation, the newest marker rotation pulls out its drift
+        int rotated = heads.newestWithRotation(headCount);
+        if (rotated >= 0) {
+            int sticker = heads.slot(rotated);
+            long capture = heads.getCaptureNanos(sticker);
+            calibration.addUp(orientation, 0, heads.getRotations(), MarkerHistory.rotationIndex(sticker));
+            orientationFusion.correct(orientation, 0,
+                    worldMarkerRotation(heads.getRotations(), MarkerHistory.rotationIndex(sticker)), 0,
+                    (capture - markerCaptureNanos) / 1e9f);
+            markerCaptureNanos = capture;
+        }
 
-                //Log.i(TAG, Float.toString(extractYaw(headPacket.rotMat)));
 
-                float[] sticker = headPacket.rotMat;
+        // Step the position filters through every skeleton sample at its capture time,
+        // pairing each with the head marker samples captured before it
+        int nextHead = 0;
+        int lastJoint = -1;
+        for (int i = 0; i < jointCount; ++i) {
+            int slot = joints.slot(i);
+            long capture = joints.getCaptureNanos(slot);
 
+            for (; nextHead < headCount && heads.getCaptureNanos(heads.slot(nextHead)) <= capture; ++nextHead) {
+                takeSticker(heads, heads.slot(nextHead));
+            }
 
-                //stickerYaw = extractYaw(sticker);
-                stickerYaw = unroll(extractYaw(sticker), stickerYaw);
-                //stickerYaw = unroll(extractYaw(headPacket.rotMat), stickerYaw);
+            if (!joints.isPresent(slot, Joint.JointType.Head)) {
+                continue;
             }
 
-            SimpleMatrix z = new SimpleMatrix(2, 1, false, stickerYaw, dImuYaw);
-            SimpleMatrix yk = z.minus(C.mult(xk));
-            SimpleMatrix s = C.mult(Pyaw.mult(C.transpose())).plus(Ryaw);
-            SimpleMatrix k = Pyaw.mult(C.transpose()).mult(s.invert());
+            float dt = (capture - jointCaptureNanos) / 1e9f;
+            jointCaptureNanos = capture;
 
-            xYaw.set(xk.plus(k.mult(yk)));
-            Pyaw.set(SimpleMatrix.identity(2).minus(k.mult(C)).mult(Pyaw));
+            stepJoints(joints, slot, dt);
+            lastJoint = slot;
         }
 
+        // Markers newer than the newest skeleton wait for the next one
+        for (; nextHead < headCount; ++nextHead) {
+            takeSticker(heads, heads.slot(nextHead));
+        }
 
-//            stickerYaw = unroll(extractYaw(headPacket.rotMat),stickerYaw);
-//            Matrix.setIdentityM(rotation,0);
-//            Matrix.rotateM(rotation,0,
-//                    (float) Math.toDegrees(xYaw.get(0)),0.0f,1.0f,0.0f);
-
-
-        //Matrix.rotateM(rotation,0,orientation,0,
-        //        (float) Math.toDegrees(imuYaw),0.0f,1.0f,0.0f);
-
-
-
-//        rotation = orientation;
-//        Matrix.rotateM(rotation,0,
-//                (float) Math.toDegrees(xYaw.get(0) - imuYaw),0.0f,1.0f,0.0f);
-
-        float[] yawMatrix = yawRotation((float)(xYaw.get(0) + Math.PI) - imuYaw);
-        Matrix.multiplyMM(rotation,0,orientation,0,yawMatrix,0);
-
-
-
-        if(jointPacket != null){
-            Joint headJoint = jointPacket.getJoint(Joint.JointType.Head);
-            Joint leftHandJoint = jointPacket.getJoint(Joint.JointType.HandLeft);
-            Joint rightHandJoint = jointPacket.getJoint(Joint.JointType.HandRight);
-
-            float[] headPos = new float[]{headJoint.X,headJoint.Y,headJoint.Z,1.0f};
-            float[] lhPos = new float[]{leftHandJoint.X,leftHandJoint.Y,leftHandJoint.Z,1.0f};
-            float[] rhPos = new float[]{rightHandJoint.X,rightHandJoint.Y,rightHandJoint.Z,1.0f};
-
-
-            leftHandAboveGround = lhPos[1] > -10.f;
-            rightHandAboveGround = rhPos[1] > -10.f;
-
-
-            float[] lhrp = new float[3];
-            float[] rhrp = new float[3];
-
-            for(int i = 0; i < 3; ++i){
-
-                float relative = (float) xPos[i].get(0) - headPos[i];
-
-                lhrp[i] = leftHandEuro[i].filter(lhPos[i]  + relative,dt);
-                rhrp[i] = rigthHandEuro[i].filter(rhPos[i] + relative,dt);
+        if (lastJoint < 0 && now - jointCaptureNanos > SKELETON_TIMEOUT_NANOS) {
+            leftHandTracker.lose();
+            rightHandTracker.lose();
+        }
 
-//                lhrp[i] = leftHandEuro[i].filter(lhPos[i],dt);
-//                rhrp[i] = rigthHandEuro[i].filter(rhPos[i],dt);
-            }
+        publish();
+    }
 
-            float[] translation = new float[16];
+    /**
+     * Hand the filtered poses to the render thread.
+     */
+    private void publish() {
+        PoseSnapshot snapshot = poses.getBack();
+        snapshot.ready = ready;
+        orientationFusion.getCorrection(snapshot.orientationCorrection, 0);
+
+        for (int i = 0; i < 3; ++i) {
+            snapshot.head[i] = pos[i];
+            snapshot.headVelocity[i] = (float) posKalman[i].getVelocity() / jointInterval;
+        }
+        System.arraycopy(leftHandTracker.getPosition(), 0, snapshot.leftHand, 0, 3);
+        System.arraycopy(leftHandTracker.getVelocity(), 0, snapshot.leftHandVelocity, 0, 3);
+        System.arraycopy(rightHandTracker.getPosition(), 0, snapshot.rightHand, 0, 3);
+        System.arraycopy(rightHandTracker.getVelocity(), 0, snapshot.rightHandVelocity, 0, 3);
+        snapshot.leftHandStatus = leftHandTracker.getStatus();
+        snapshot.rightHandStatus = rightHandTracker.getStatus();
+        System.arraycopy(skeleton, 0, snapshot.skeleton, 0, skeleton.length);
+        snapshot.captureNanos = jointCaptureNanos;
+
+        poses.publish();
+    }
 
-            Matrix.setIdentityM(translation,0);
-            Matrix.translateM(translation,0,lhrp[0],lhrp[1],lhrp[2]);
-            Matrix.multiplyMM(leftHand,0,translation,0,yawRotation(
-                    (float)(Math.PI + Math.atan2(lhPos[0]-headPos[0],lhPos[2]-headPos[2]))),0);
-            Matrix.translateM(translation,0,0.0f,0.0f,-0.06f);
+    /**
+     * Place the head and hands for a new frame from the latest published
+     * poses. Render thread only.
+     *
+     * @param headView the phone's head view for this frame
+     */
+    public void frame(float[] headView) {
+        poses.update();
+        pose = poses.getFront();
+        predictor.onFrame(System.nanoTime());
+
+        if (!pose.ready) {
+            return;
+        }
 
-            Matrix.setIdentityM(translation,0);
-            Matrix.translateM(translation,0,rhrp[0],rhrp[1],rhrp[2]);
-            Matrix.multiplyMM(rigthHand,0,translation,0,yawRotation(0.0f),0);
-            Matrix.multiplyMM(rigthHand,0,translation,0,yawRotation(
-                    (float)(Math.PI + Math.atan2(rhPos[0]-headPos[0],rhPos[2]-headPos[2]))),0);
-            Matrix.translateM(translation,0,0.0f,0.0f,-0.06f);
+        Matrix.multiplyMM(rotation,0,headView,0,pose.orientationCorrection,0);
+        predictPoses();
+        updateHands();
+    }
 
-//            Log.i(TAG,Arrays.toString(lhPos));
-//
-//            Matrix.setIdentityM(leftHand,0);
-//            Matrix.translateM(leftHand,0,lhPos[0],lhPos[1],lhPos[2]);
-//            Matrix.multiplyMM(leftHand,0,translation,0,yawRotation(
-//                    (float)(Math.PI + Math.atan2(lhPos[0]-headPos[0],lhPos[2]-headPos[2]))),0);
+    /**
+     * Carry the filtered head and hands forward from the newest skeleton
+     * sample to when this frame will be displayed.
+     */
+    private void predictPoses() {
+        long capture = pose.captureNanos;
+        PosePredictor.extrapolate(pose.head, pose.headVelocity,
+                predictor.getHorizon(PosePredictor.HEAD, capture), predictedHead);
+        PosePredictor.extrapolate(pose.leftHand, pose.leftHandVelocity,
+                predictor.getHorizon(PosePredictor.LEFT_HAND, capture), predictedLeftHand);
+        PosePredictor.extrapolate(pose.rightHand, pose.rightHandVelocity,
+                predictor.getHorizon(PosePredictor.RIGHT_HAND, capture), predictedRightHand);
+    }
 
-//            Matrix.setIdentityM(rigthHand,0);
-//            Matrix.translateM(rigthHand,0,rhPos[0],rhPos[1],rhPos[2]);
-//            Matrix.multiplyMM(rigthHand,0,translation,0,yawRotation(
-//                    (float)(Math.PI + Math.atan2(rhPos[0]-headPos[0],rhPos[2]-headPos[2]))),0);
+    /**
+     * A head marker's rotation taken into the world.
+     */
+    private float[] worldMarkerRotation(float[] rotations, int offset) {
+        Matrix.multiplyMM(markerRotation,0,calibration.getKinectToWorld(),0,rotations,offset);
+        return markerRotation;
+    }
 
-//            rotateTo(leftHand,lhVec);
-//            rotateTo(rigthHand,rhVec);
+    /**
+     * Remember a head marker sample for the next skeleton sample.
+     */
+    private void takeSticker(MarkerHistory heads, int slot) {
+        System.arraycopy(heads.getPositions(), MarkerHistory.positionIndex(slot), rawSticker, 0, 3);
+        KinectCalibration.transformPoints(calibration.getKinectToWorld(), rawSticker, 0, newSticker, 0, 1);
+        haveNewSticker = true;
+        //Log.i(TAG, Arrays.toString(newSticker));
+    }
 
+    /**
+     * Filter the hands and the head position with one skeleton sample.
+     */
+    private void stepJoints(JointHistory joints, int slot, float dt) {
+        int rawHead = JointHistory.positionIndex(slot, Joint.JointType.Head);
+        float[] positions = worldSkeleton;
+        int head = Joint.JointType.Head.ordinal() * 3;
+        KinectCalibration.transformPoints(calibration.getSkeletonToWorld(), joints.getPositions(),
+                JointHistory.skeletonIndex(slot), worldSkeleton, 0, JointHistory.JOINTS);
+        System.arraycopy(joints.getPositions(), rawHead, rawSkeletonHead, 0, 3);
+
+        if (dt > 0 && dt < 0.5f) {
+            jointInterval += 0.05f * (dt - jointInterval);
         }
 
-        if (headPacket != null){
-            stickerPos = new float[]{headPacket.X,headPacket.Y,headPacket.Z,1.0f};
-            //Log.i(TAG, Arrays.toString(stickerPos));
-        }
+        // Hands are placed relative to the filtered head rather than the skeleton's
+        stepHand(leftHandTracker, joints, slot, Joint.JointType.HandLeft, head, dt);
+        stepHand(rightHandTracker, joints, slot, Joint.JointType.HandRight, head, dt);
 
-        if(jointPacket != null){
-            Joint head = jointPacket.getJoint(Joint.JointType.Head);
+        for(int i = 0; i < 3; ++i){
+            dSkeletonPos[i] = (positions[head + i] - skeletonPos[i]);
+            skeletonPos[i] = positions[head + i];
+        }
 
-            float[] newSkeletonPos = new float[]{head.X,head.Y,head.Z,1.0f};
-            float[] dSkeletonPos = new float[3];
+        if(!haveNewSticker){
             for(int i = 0; i < 3; ++i){
-                dSkeletonPos[i] = (newSkeletonPos[i] - skeletonPos[i]);
+                stickerPos[i] += dSkeletonPos[i];
             }
-            skeletonPos = newSkeletonPos;
-
-            if(headPacket == null){
-                for(int i = 0; i < 3; ++i){
-                    stickerPos[i] += dSkeletonPos[i];
-                }
-            } else {
-                stickerPos = new float[]{headPacket.X,headPacket.Y,headPacket.Z,1.0f};
-            }
-
-            for(int i = 0; i < 3; ++i){
-                SimpleMatrix xkp = A.mult(xPos[i]);
-                PPos[i].set(A.mult(PPos[i].mult(A.transpose())).plus(Qlin));
-
-                SimpleMatrix z = new SimpleMatrix(2,1,false, stickerPos[i], dSkeletonPos[i]);
-                SimpleMatrix yk = z.minus(C.mult(xkp));
-                SimpleMatrix s = C.mult(PPos[i].mult(C.transpose())).plus(Rlin);
-                SimpleMatrix k = PPos[i].mult(C.transpose()).mult(s.invert());
+        } else {
+            System.arraycopy(newSticker, 0, stickerPos, 0, 3);
+            haveNewSticker = false;
+            calibration.addHeadPair(joints.getPositions(), rawHead, rawSticker, 0);
+        }
 
-                xPos[i].set(xkp.plus(k.mult(yk)));
-                PPos[i].set(SimpleMatrix.identity(2).minus(k.mult(C)).mult(PPos[i]));
+        skeletonEuro.filter(worldSkeleton, 0, skeleton, 0, dt);
 
-                pos[i] = headPosEuro[i].filter((float) xPos[i].get(0),dt);
-            }
+        double rSkeleton = joints.getState(slot, Joint.JointType.Head) == Joint.JointTrackingState.Tracked
+                ? R_SKELETON : R_SKELETON_INFERRED;
+        for(int i = 0; i < 3; ++i){
+            posKalman[i].setMeasurementNoise(R_STICKER, rSkeleton);
+            posKalman[i].step(stickerPos[i], dSkeletonPos[i]);
+            headEstimate[i] = (float) posKalman[i].getValue();
         }
+        headPosEuro.filter(headEstimate, pos, dt);
     }
 
-    public void startKalman(float[] orientation, HeadPacket headPacket, JointPacket jointPacket){
-        frameTime = SystemClock.currentThreadTimeMillis();
+    private void stepHand(HandTracker tracker, JointHistory joints, int slot, Joint.JointType type, int head, float dt) {
+        float[] positions = worldSkeleton;
+        int hand = type.ordinal() * 3;
+        Joint.JointTrackingState state = joints.getState(slot, type);
+        if (state != null && joints.getPositions()[JointHistory.positionIndex(slot, type) + 1] < MIN_JOINT_Y) {
+            state = Joint.JointTrackingState.NotTracked;
+        }
 
-        float[] sticker = headPacket.rotMat;
+        tracker.update(state,
+                positions[hand] + (float) posKalman[0].getValue() - positions[head],
+                positions[hand + 1] + (float) posKalman[1].getValue() - positions[head + 1],
+                positions[hand + 2] + (float) posKalman[2].getValue() - positions[head + 2],
+                dt);
+    }
 
-        xYaw = new SimpleMatrix(2,1);
-        imuYaw = -extractYaw(orientation);
-        stickerYaw = extractYaw(sticker);
-        xYaw.set(0, stickerYaw);
+    /**
+     * Place the hand models at the predicted positions, facing away from the
+     * predicted head.
+     */
+    private void updateHands() {
+        float[] lhrp = predictedLeftHand;
+        float[] rhrp = predictedRightHand;
+        float headX = predictedHead[0];
+        float headZ = predictedHead[2];
+
+        Matrix.setIdentityM(handTranslation,0);
+        Matrix.translateM(handTranslation,0,lhrp[0],lhrp[1],lhrp[2]);
+        yawRotation(yawMatrix, (float)(Math.PI + Math.atan2(lhrp[0]-headX,lhrp[2]-headZ)));
+        Matrix.multiplyMM(leftHand,0,handTranslation,0,yawMatrix,0);
+
+        Matrix.setIdentityM(handTranslation,0);
+        Matrix.translateM(handTranslation,0,rhrp[0],rhrp[1],rhrp[2]);
+        yawRotation(yawMatrix, (float)(Math.PI + Math.atan2(rhrp[0]-headX,rhrp[2]-headZ)));
+        Matrix.multiplyMM(rigthHand,0,handTranslation,0,yawMatrix,0);
 
-        Pyaw = new SimpleMatrix(2,2);
-        Pyaw.set(0,0,3.1416);
-        Pyaw.set(1,1,0.01);
+//            rotateTo(leftHand,lhVec);
+//            rotateTo(rigthHand,rhVec);
+    }
 
-        Joint head = jointPacket.getJoint(Joint.JointType.Head);
+    private void startKalman(float[] orientation, JointHistory joints, int jointSlot){
+        jointCaptureNanos = joints.getCaptureNanos(jointSlot);
 
-        stickerPos = new float[]{headPacket.X,headPacket.Y,headPacket.Z,1.0f};
+        markerCaptureNanos = startMarkerNanos;
+        orientationFusion.reset();
+        orientationFusion.correct(orientation, 0, worldMarkerRotation(startMarkerRotation, 0), 0, 0);
 
-        skeletonPos = new float[]{head.X,head.Y,head.Z,1.0f};
+        KinectCalibration.transformPoints(calibration.getKinectToWorld(), startMarkerPosition, 0, stickerPos, 0, 1);
+        System.arraycopy(joints.getPositions(), JointHistory.positionIndex(jointSlot, Joint.JointType.Head),
+                rawSkeletonHead, 0, 3);
+        KinectCalibration.transformPoints(calibration.getSkeletonToWorld(), rawSkeletonHead, 0, skeletonPos, 0, 1);
 
-        xPos = new SimpleMatrix[3];
-        PPos = new SimpleMatrix[3];
         for(int i = 0; i < 3; ++i){
-            xPos[i] = new SimpleMatrix(2,1);
-            xPos[i].set(0,stickerPos[i]);
-
-            PPos[i] = new SimpleMatrix(2,2);
-            PPos[i].set(0,0,1);
-            PPos[i].set(1,1,1);
+            posKalman[i].reset(stickerPos[i], 0, 1, 1);
         }
     }
 
 
+    /**
+     * The view matrix for the predicted head. Render thread only, the array
+     * is reused by the next call.
+     */
     public float[] getHeadTransform(){
 
-        float[] camera = new float[16];
         Matrix.setIdentityM(translation,0);
-        Matrix.translateM(translation,0,-pos[0],-pos[1],-pos[2]);
+        Matrix.translateM(translation,0,-predictedHead[0],-predictedHead[1],-predictedHead[2]);
 
         Matrix.multiplyMM(camera,0, rotation,0,translation,0);
 
         return camera;
     }
 
-    public boolean isLeftHandAboveGround() {
-        return leftHandAboveGround;
+    /**
+     * Whether the left hand has a tracked, inferred or extrapolated position
+     * worth drawing.
+     */
+    public boolean isLeftHandVisible() {
+        return pose.leftHandStatus != HandTracker.Status.Lost;
     }
 
-    public boolean isRightHandAboveGround() {
-        return rightHandAboveGround;
+    public boolean isRightHandVisible() {
+        return pose.rightHandStatus != HandTracker.Status.Lost;
     }
 
-    public float[] getLeftHand(){
-        return leftHand;
+    public HandTracker.Status getLeftHandStatus() {
+        return pose.leftHandStatus;
     }
 
-    public float[] getRigthHand(){
-        return rigthHand;
+    public HandTracker.Status getRightHandStatus() {
+        return pose.rightHandStatus;
     }
 
-    private float unroll(float v,float roll) {
-//        float vmod = roll % (float)(2*Math.PI);
-//        if (roll < 0){
-//            vmod += 2*Math.PI;
-//        }
-//        if (vmod > Math.PI) {
-//            vmod -= 2*Math.PI;
-//        }
-
-        //float diff = vmod - v;
-        float diff = (v - roll) % (float)(2*Math.PI);
-
-        if (diff < 0) {
-            diff += 2*Math.PI;
-        }
-        if (diff > Math.PI) {
-            diff -= 2*Math.PI;
-        }
-
-        roll += diff;
-
-//        if(Math.abs(diff) < Math.PI){
-//            roll -= diff;
-//        }else{
-//            if(diff > 0){
-//                roll += (float)(diff - Math.PI);
-//            }else{
-//                roll += (float)(diff + Math.PI);
-//            }
-//        }
+    /**
+     * Smoothed skeleton in the world, x, y, z per joint in JointType order.
+     */
+    public float[] getSkeleton() {
+        return pose.skeleton;
+    }
 
-        return roll;
+    public float[] getLeftHand(){
+        return leftHand;
+    }
 
+    public float[] getRigthHand(){
+        return rigthHand;
     }
 
     private float[] upVector(float[] transform){
@@ -388,23 +449,15 @@ public class ApexSensors {
         return up;
     }
 
-    private float extractYaw(float[] transform){
-
-        return (float) Math.atan2(transform[openGlMatrixIndex(0,2)],transform[openGlMatrixIndex(2,2)]);
-
-    }
-
-    private float[] yawRotation(float yaw){
+    private static void yawRotation(float[] matrix, float yaw){
 
         float cyaw = (float) Math.cos(yaw);
         float syaw = (float) Math.sin(yaw);
 
-       return new float[]{
-               cyaw,0,-syaw,0,
-               0,1,0,0,
-               syaw,0,cyaw,0,
-               0,0,0,1
-       };
+        matrix[0] = cyaw; matrix[1] = 0; matrix[2] = -syaw; matrix[3] = 0;
+        matrix[4] = 0; matrix[5] = 1; matrix[6] = 0; matrix[7] = 0;
+        matrix[8] = syaw; matrix[9] = 0; matrix[10] = cyaw; matrix[11] = 0;
+        matrix[12] = 0; matrix[13] = 0; matrix[14] = 0; matrix[15] = 1;
     }
 
     private float[] crossProduct(float[] a, float[] b){
@@ -437,78 +490,20 @@ public class ApexSensors {
         return m * 4 + n;
     }
 
-    public boolean isReady() {
-        return ready;
+    /**
+     * Prediction settings, for tuning the horizon of each stream.
+     */
+    public PosePredictor getPredictor() {
+        return predictor;
     }
 
-    private float[] quat2Mat(float[] quaternion){
-
-        float qx = quaternion[0];
-        float qy = quaternion[1];
-        float qz = quaternion[2];
-        float qw = -quaternion[3];
-
-        return  new float[]{
-                1 - 2*qy*qy - 2*qz*qz,
-                2*qx*qy + 2*qz*qw,
-                2*qx*qz - 2*qy*qw,
-                0.0f,
-
-                2*qx*qy - 2*qz*qw,
-                1 - 2*qx*qx - 2*qz*qz,
-                2*qy*qz + 2*qx*qw,
-                0.0f,
-
-                2*qx*qz + 2*qy*qw,
-                2*qy*qz - 2*qx*qw,
-                1 - 2*qx*qx - 2*qy*qy,
-                0.0f,
-
-                0.0f,
-                0.0f,
-                0.0f,
-                1.0f
-        };
+    /**
+     * Whether the poses of the current frame are usable. Render thread only.
+     */
+    public boolean isReady() {
+        return pose.ready;
     }
 
-//    private static class KinectCorrectionData {
-//        float roll = 0;
-//        float pitch = 0;
-//        int averages = 0;
-//        float[] correction_premultiplier_matrix = new float[16];
-//    }
-//
-//    private void calculateKinectCorrectionsStep(float[] kinect_space_transform, float[] up_vector){
-//        // cumulative averaging
-//        kinectCorrectionData.averages = Math.min(kinectCorrectionData.averages+1, 100);
-//        float f = 1.f / kinectCorrectionData.averages;
-//        float[] up_vector_kinect = new float[4];
-//        Matrix.multiplyMV(up_vector_kinect, 0, kinect_space_transform, 0, up_vector, 0);
-//        //kinectCorrectionData.roll = (float)Math.atan2(up_vector_kinect[0], up_vector_kinect[1])*f + kinectCorrectionData.roll*(1.f - f);
-//        kinectCorrectionData.roll = (float)Math.PI;
-//        float[] kinect_roll_corrector = new float[16];
-//        Matrix.setRotateM(kinect_roll_corrector, 0, (float)Math.toDegrees(kinectCorrectionData.roll), 0, 0, 1);
-//        float[] up_vector_kinect_corrected = new float[4];
-//        Matrix.multiplyMV(up_vector_kinect_corrected, 0, kinect_roll_corrector, 0, up_vector_kinect, 0);
-//        kinectCorrectionData.pitch = (float)Math.atan2(-up_vector_kinect_corrected[2], up_vector_kinect_corrected[1])*f + kinectCorrectionData.pitch*(1.f - f);
-//        kinectCorrectionData.pitch = 0;
-//        float[] kinect_pitch_corrector = new float[16];
-//        Matrix.setRotateM(kinect_pitch_corrector, 0, (float)Math.toDegrees(kinectCorrectionData.pitch), 1, 0, 0);
-//        Matrix.multiplyMM(kinectCorrectionData.correction_premultiplier_matrix, 0, kinect_pitch_corrector, 0, kinect_roll_corrector, 0);
-//    }
-//
-//    private float[] correctKinectVector(float[] vector){
-//        float[] correctedVector = new float[4];
-//        Matrix.multiplyMV(correctedVector, 0, kinectCorrectionData.correction_premultiplier_matrix, 0, vector, 0);
-//        return correctedVector;
-//    }
-//
-//    private float[] correctKinectMatrix(float[] matrix){
-//        float[] correctedMatrix = new float[16];
-//        Matrix.multiplyMM(correctedMatrix, 0, kinectCorrectionData.correction_premultiplier_matrix, 0, matrix, 0);
-//        return correctedMatrix;
-//    }
-
 
 
     //        if(headPacket != null){
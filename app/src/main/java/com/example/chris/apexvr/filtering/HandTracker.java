@@ -0,0 +1,190 @@
+package com.example.chris.apexvr.filtering;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+
+/**
+ * Constant velocity Kalman filter for a single skeleton joint that pays
+ * attention to the Kinect tracking state.
+ *
+ * Tracked samples are filtered as they are, Inferred ones get more
+ * measurement noise since the Kinect is guessing. When the joint is
+ * NotTracked or missing the last velocity is extrapolated, slowing to a stop,
+ * for up to COAST_SECONDS before the joint is reported Lost. Samples further from the prediction
+ * than a hand can move are rejected as outliers, unless they keep coming, in
+ * which case the hand really is there and the filter jumps to it.
+ */
+public class HandTracker {
+
+    public enum Status {
+        Tracked,
+        Inferred,
+        Coasting,   // No usable sample, extrapolating from the last ones
+        Lost        // Nothing to show
+    }
+
+    // How long to extrapolate before giving up on the joint
+    private static final float COAST_SECONDS = 0.25f;
+    // Rate the extrapolated velocity dies off at, 1/s
+    private static final float COAST_DAMPING = 8.0f;
+
+    // Fastest believable hand, m/s, plus an allowance for skeleton jitter, m
+    private static final float MAX_SPEED = 6.0f;
+    private static final float GATE_SLACK = 0.15f;
+    // Inferred positions have to be closer to the prediction to be believed
+    private static final float INFERRED_GATE_SCALE = 0.5f;
+    // Outliers in a row before they are taken as the new position
+    private static final int RELOCK_SAMPLES = 3;
+
+    // Hand acceleration noise, m^2/s^3, and Kinect position noise, m^2
+    private static final double ACCELERATION_NOISE = 20.0;
+    private static final double TRACKED_NOISE = 0.0004;
+    // Inferred joints are a few centimetres worse
+    private static final double INFERRED_NOISE = 0.0025;
+    // Position variance when starting at a sample, velocity starts unknown
+    private static final double LOCK_VARIANCE = 0.01;
+    private static final double VELOCITY_VARIANCE = 4.0;
+
+    private final KalmanFilter filter = new KalmanFilter(new KalmanFilter.ConstantVelocity(3, ACCELERATION_NOISE), 3);
+    private final double[] measurement = new double[3];
+
+    private final float[] position = new float[3];
+    private final float[] velocity = new float[3];
+
+    private Status status = Status.Lost;
+    private float coastSeconds;
+    private int rejected;
+
+    public HandTracker() {
+        filter.setMeasurementNoise(TRACKED_NOISE);
+    }
+
+    /**
+     * Step the filter with one skeleton sample.
+     *
+     * @param state tracking state of the joint, null if the sample did not include it
+     * @param dt seconds since the previous sample
+     * @return the status after the sample
+     */
+    public Status update(Joint.JointTrackingState state, float x, float y, float z, float dt) {
+        boolean usable = (state == Joint.JointTrackingState.Tracked || state == Joint.JointTrackingState.Inferred)
+                && !Float.isNaN(x + y + z) && !Float.isInfinite(x + y + z);
+        if (!usable) {
+            coast(dt);
+            return status;
+        }
+
+        boolean inferred = state == Joint.JointTrackingState.Inferred;
+        if (status == Status.Lost) {
+            lock(x, y, z, inferred);
+            return status;
+        }
+
+        float gate = (GATE_SLACK + MAX_SPEED * Math.max(dt, 0.0f)) * (inferred ? INFERRED_GATE_SCALE : 1.0f);
+        float dx = x - (position[0] + (float) filter.get(3) * dt);
+        float dy = y - (position[1] + (float) filter.get(4) * dt);
+        float dz = z - (position[2] + (float) filter.get(5) * dt);
+        if (dx * dx + dy * dy + dz * dz > gate * gate) {
+            if (++rejected >= RELOCK_SAMPLES) {
+                lock(x, y, z, inferred);
+            } else {
+                coast(dt);
+            }
+            return status;
+        }
+        rejected = 0;
+
+        filter.predict(Math.max(dt, 0.0f));
+        filter.setMeasurementNoise(inferred ? INFERRED_NOISE : TRACKED_NOISE);
+        measurement[0] = x;
+        measurement[1] = y;
+        measurement[2] = z;
+        filter.update(measurement);
+        readPosition();
+
+        coastSeconds = 0;
+        status = inferred ? Status.Inferred : Status.Tracked;
+        return status;
+    }
+
+    private void readPosition() {
+        position[0] = (float) filter.get(0);
+        position[1] = (float) filter.get(1);
+        position[2] = (float) filter.get(2);
+        velocity[0] = (float) filter.get(3);
+        velocity[1] = (float) filter.get(4);
+        velocity[2] = (float) filter.get(5);
+    }
+
+    /**
+     * Extrapolate through a sample with nothing usable in it.
+     */
+    private void coast(float dt) {
+        if (status == Status.Lost) {
+            return;
+        }
+        coastSeconds += dt;
+        if (coastSeconds > COAST_SECONDS) {
+            lose();
+            return;
+        }
+
+        double decay = Math.exp(-COAST_DAMPING * dt);
+        for (int i = 3; i < 6; ++i) {
+            filter.set(i, filter.get(i) * decay);
+        }
+        filter.predict(dt);
+        readPosition();
+        status = Status.Coasting;
+    }
+
+    /**
+     * Start over at a measured position.
+     */
+    private void lock(float x, float y, float z, boolean inferred) {
+        measurement[0] = x;
+        measurement[1] = y;
+        measurement[2] = z;
+        filter.reset(measurement, LOCK_VARIANCE);
+        for (int i = 3; i < 6; ++i) {
+            filter.getCovariance().set(i, i, VELOCITY_VARIANCE);
+        }
+        readPosition();
+        rejected = 0;
+        coastSeconds = 0;
+        status = inferred ? Status.Inferred : Status.Tracked;
+    }
+
+    /**
+     * Drop the joint, for when the skeleton stream itself has stopped.
+     */
+    public void lose() {
+        status = Status.Lost;
+        coastSeconds = 0;
+        rejected = 0;
+    }
+
+    /**
+     * Filtered or extrapolated position, the last one if Lost.
+     */
+    public float[] getPosition() {
+        return position;
+    }
+
+    /**
+     * Estimated velocity in m/s, slowing while Coasting.
+     */
+    public float[] getVelocity() {
+        return velocity;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Whether there is anything worth drawing.
+     */
+    public boolean isVisible() {
+        return status != Status.Lost;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.chris.apexvr.filtering;
+
+/**
+ * Two state constant velocity Kalman filter, written out by hand.
+ *
+ * The state is a value and its change per step, both measured directly:
+ * <pre>
+ * A = | 1 1 |   C = | 1 0 |   Q = | q0  0 |   R = | r0  0 |
+ *     | 0 1 |       | 0 1 |       |  0 q1 |       |  0 r1 |
+ * </pre>
+ * This is the filter ApexSensors used to run through SimpleMatrix, with the
+ * products expanded and the 2x2 innovation covariance inverted in closed
+ * form, so a step is a few dozen flops on fields and allocates nothing.
+ */
+public class Kalman2 {
+
+    // State
+    private double x0, x1;
+
+    // Covariance, kept in full so it matches the matrix version exactly
+    private double p00, p01, p10, p11;
+
+    // Process and measurement noise, diagonal
+    private double q0, q1;
+    private double r0, r1;
+
+    public Kalman2(double q0, double q1, double r0, double r1) {
+        setProcessNoise(q0, q1);
+        setMeasurementNoise(r0, r1);
+    }
+
+    /**
+     * Start over at a state with a diagonal covariance.
+     */
+    public void reset(double value, double velocity, double valueVariance, double velocityVariance) {
+        x0 = value;
+        x1 = velocity;
+        p00 = valueVariance;
+        p01 = 0;
+        p10 = 0;
+        p11 = velocityVariance;
+    }
+
+    public void setProcessNoise(double q0, double q1) {
+        this.q0 = q0;
+        this.q1 = q1;
+    }
+
+    public void setMeasurementNoise(double r0, double r1) {
+        this.r0 = r0;
+        this.r1 = r1;
+    }
+
+    /**
+     * Predict one step ahead and correct with a measurement of the value and
+     * of its change since the last step.
+     */
+    public void step(double value, double change) {
+        // Predict, x = A x, P = A P A' + Q
+        double xk0 = x0 + x1;
+        double xk1 = x1;
+
+        double m00 = p00 + p10 + p01 + p11 + q0;
+        double m01 = p01 + p11;
+        double m10 = p10 + p11;
+        double m11 = p11 + q1;
+
+        // S = C P C' + R, inverted directly
+        double s00 = m00 + r0;
+        double s01 = m01;
+        double s10 = m10;
+        double s11 = m11 + r1;
+        double invDet = 1.0 / (s00 * s11 - s01 * s10);
+        double i00 = s11 * invDet;
+        double i01 = -s01 * invDet;
+        double i10 = -s10 * invDet;
+        double i11 = s00 * invDet;
+
+        // K = P C' S^-1
+        double k00 = m00 * i00 + m01 * i10;
+        double k01 = m00 * i01 + m01 * i11;
+        double k10 = m10 * i00 + m11 * i10;
+        double k11 = m10 * i01 + m11 * i11;
+
+        // x = x + K (z - C x)
+        double y0 = value - xk0;
+        double y1 = change - xk1;
+        x0 = xk0 + k00 * y0 + k01 * y1;
+        x1 = xk1 + k10 * y0 + k11 * y1;
+
+        // P = (I - K C) P
+        double n00 = 1.0 - k00;
+        double n11 = 1.0 - k11;
+        p00 = n00 * m00 - k01 * m10;
+        p01 = n00 * m01 - k01 * m11;
+        p10 = -k10 * m00 + n11 * m10;
+        p11 = -k10 * m01 + n11 * m11;
+    }
+
+    public double getValue() {
+        return x0;
+    }
+
+    public double getVelocity() {
+        return x1;
+    }
+
+    /**
+     * Covariance entry, row major.
+     */
+    public double getCovariance(int row, int column) {
+        if (row == 0) {
+            return column == 0 ? p00 : p01;
+        }
+        return column == 0 ? p10 : p11;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.chris.apexvr.filtering;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.ops.CommonOps;
+
+/**
+ * Kalman filter over any number of states, for tracking things that move.
+ *
+ * The motion model fills in the transition and process noise for each time
+ * step, see ConstantVelocity and ConstantAcceleration. The measurement matrix
+ * starts out picking the first states, the positions, and can be replaced
+ * through getMeasurementMatrix(). For an extended filter set it to the
+ * Jacobian each step and pass the predicted measurement to update().
+ *
+ * Every matrix is allocated up front and the innovation covariance is
+ * inverted with a reused Cholesky solver, so predict() and update() do not
+ * allocate. Not thread safe.
+ */
+public class KalmanFilter {
+
+    /**
+     * How the state moves over a time step.
+     */
+    public interface Model {
+        int getStateSize();
+
+        /**
+         * Fill in the transition matrix and process noise for a step of dt seconds.
+         */
+        void transition(double dt, DenseMatrix64F F, DenseMatrix64F Q);
+    }
+
+    /**
+     * Positions then velocities for each axis, driven by white noise
+     * acceleration with spectral density q, units^2/s^3.
+     */
+    public static class ConstantVelocity implements Model {
+        private final int axes;
+        private final double q;
+
+        public ConstantVelocity(int axes, double q) {
+            this.axes = axes;
+            this.q = q;
+        }
+
+        @Override
+        public int getStateSize() {
+            return axes * 2;
+        }
+
+        @Override
+        public void transition(double dt, DenseMatrix64F F, DenseMatrix64F Q) {
+            double dt2 = dt * dt;
+            double dt3 = dt2 * dt;
+
+            CommonOps.setIdentity(F);
+            Q.zero();
+            for (int i = 0; i < axes; ++i) {
+                int p = i;
+                int v = i + axes;
+                F.unsafe_set(p, v, dt);
+
+                Q.unsafe_set(p, p, q * dt3 / 3.0);
+                Q.unsafe_set(p, v, q * dt2 / 2.0);
+                Q.unsafe_set(v, p, q * dt2 / 2.0);
+                Q.unsafe_set(v, v, q * dt);
+            }
+        }
+    }
+
+    /**
+     * Positions, velocities then accelerations for each axis, driven by white
+     * noise jerk with spectral density q, units^2/s^5.
+     */
+    public static class ConstantAcceleration implements Model {
+        private final int axes;
+        private final double q;
+
+        public ConstantAcceleration(int axes, double q) {
+            this.axes = axes;
+            this.q = q;
+        }
+
+        @Override
+        public int getStateSize() {
+            return axes * 3;
+        }
+
+        @Override
+        public void transition(double dt, DenseMatrix64F F, DenseMatrix64F Q) {
+            double dt2 = dt * dt;
+            double dt3 = dt2 * dt;
+            double dt4 = dt3 * dt;
+            double dt5 = dt4 * dt;
+
+            CommonOps.setIdentity(F);
+            Q.zero();
+            for (int i = 0; i < axes; ++i) {
+                int p = i;
+                int v = i + axes;
+                int a = i + axes * 2;
+                F.unsafe_set(p, v, dt);
+                F.unsafe_set(p, a, dt2 / 2.0);
+                F.unsafe_set(v, a, dt);
+
+                Q.unsafe_set(p, p, q * dt5 / 20.0);
+                Q.unsafe_set(p, v, q * dt4 / 8.0);
+                Q.unsafe_set(p, a, q * dt3 / 6.0);
+                Q.unsafe_set(v, v, q * dt3 / 3.0);
+                Q.unsafe_set(v, a, q * dt2 / 2.0);
+                Q.unsafe_set(a, a, q * dt);
+                Q.unsafe_set(v, p, Q.unsafe_get(p, v));
+                Q.unsafe_set(a, p, Q.unsafe_get(p, a));
+                Q.unsafe_set(a, v, Q.unsafe_get(v, a));
+            }
+        }
+    }
+
+    private final Model model;
+    private final int n;
+    private final int m;
+
+    private final DenseMatrix64F x;
+    private final DenseMatrix64F P;
+    private final DenseMatrix64F F;
+    private final DenseMatrix64F Q;
+    private final DenseMatrix64F H;
+    private final DenseMatrix64F R;
+
+    // Workspaces
+    private final DenseMatrix64F xTemp;
+    private final DenseMatrix64F FP;
+    private final DenseMatrix64F y;
+    private final DenseMatrix64F HP;
+    private final DenseMatrix64F S;
+    private final DenseMatrix64F SInv;
+    private final DenseMatrix64F K;
+    private final DenseMatrix64F KHP;
+    private final LinearSolver<DenseMatrix64F> solver;
+
+    public KalmanFilter(Model model, int measurementSize) {
+        this.model = model;
+        n = model.getStateSize();
+        m = measurementSize;
+
+        x = new DenseMatrix64F(n, 1);
+        P = new DenseMatrix64F(n, n);
+        F = new DenseMatrix64F(n, n);
+        Q = new DenseMatrix64F(n, n);
+        H = new DenseMatrix64F(m, n);
+        R = new DenseMatrix64F(m, m);
+
+        xTemp = new DenseMatrix64F(n, 1);
+        FP = new DenseMatrix64F(n, n);
+        y = new DenseMatrix64F(m, 1);
+        HP = new DenseMatrix64F(m, n);
+        S = new DenseMatrix64F(m, m);
+        SInv = new DenseMatrix64F(m, m);
+        K = new DenseMatrix64F(n, m);
+        KHP = new DenseMatrix64F(n, n);
+        solver = LinearSolverFactory.chol(m);
+
+        for (int i = 0; i < Math.min(n, m); ++i) {
+            H.unsafe_set(i, i, 1);
+        }
+        CommonOps.setIdentity(P);
+    }
+
+    /**
+     * Start over with the first states set and the rest zero, each with the
+     * given variance.
+     */
+    public void reset(double[] values, double variance) {
+        x.zero();
+        for (int i = 0; i < values.length; ++i) {
+            x.unsafe_set(i, 0, values[i]);
+        }
+        P.zero();
+        for (int i = 0; i < n; ++i) {
+            P.unsafe_set(i, i, variance);
+        }
+    }
+
+    /**
+     * Same variance on every measurement, uncorrelated.
+     */
+    public void setMeasurementNoise(double variance) {
+        R.zero();
+        for (int i = 0; i < m; ++i) {
+            R.unsafe_set(i, i, variance);
+        }
+    }
+
+    /**
+     * Move the state dt seconds ahead.
+     */
+    public void predict(double dt) {
+        model.transition(dt, F, Q);
+
+        CommonOps.mult(F, x, xTemp);
+        x.set(xTemp);
+
+        CommonOps.mult(F, P, FP);
+        CommonOps.multTransB(FP, F, P);
+        CommonOps.addEquals(P, Q);
+    }
+
+    /**
+     * Correct with a measurement, predicted as H x.
+     *
+     * @return false if the innovation covariance could not be inverted and the
+     * measurement was ignored
+     */
+    public boolean update(double[] z) {
+        CommonOps.mult(H, x, y);
+        return correct(z);
+    }
+
+    /**
+     * Correct with a measurement and the measurement predicted from the state
+     * by the caller's own, possibly nonlinear, function. H should be its
+     * Jacobian at the current state.
+     */
+    public boolean update(double[] z, double[] predicted) {
+        for (int i = 0; i < m; ++i) {
+            y.unsafe_set(i, 0, predicted[i]);
+        }
+        return correct(z);
+    }
+
+    /**
+     * Kalman update with y holding the predicted measurement.
+     */
+    private boolean correct(double[] z) {
+        for (int i = 0; i < m; ++i) {
+            y.unsafe_set(i, 0, z[i] - y.unsafe_get(i, 0));
+        }
+
+        // S = H P H' + R
+        CommonOps.mult(H, P, HP);
+        CommonOps.multTransB(HP, H, S);
+        CommonOps.addEquals(S, R);
+        if (!solver.setA(S)) {
+            return false;
+        }
+        solver.invert(SInv);
+
+        // K = P H' S^-1, P is symmetric so P H' = (H P)'
+        CommonOps.multTransA(HP, SInv, K);
+
+        CommonOps.mult(K, y, xTemp);
+        CommonOps.addEquals(x, xTemp);
+
+        // P = P - K H P
+        CommonOps.mult(K, HP, KHP);
+        CommonOps.subtractEquals(P, KHP);
+        return true;
+    }
+
+    public double get(int state) {
+        return x.unsafe_get(state, 0);
+    }
+
+    public void set(int state, double value) {
+        x.unsafe_set(state, 0, value);
+    }
+
+    public int getStateSize() {
+        return n;
+    }
+
+    public DenseMatrix64F getState() {
+        return x;
+    }
+
+    public DenseMatrix64F getCovariance() {
+        return P;
+    }
+
+    /**
+     * The measurement matrix, for changing what is measured.
+     */
+    public DenseMatrix64F getMeasurementMatrix() {
+        return H;
+    }
+
+    /**
+     * The measurement noise, for noise that is not the same on every measurement.
+     */
+    public DenseMatrix64F getMeasurementNoise() {
+        return R;
+    }
+}
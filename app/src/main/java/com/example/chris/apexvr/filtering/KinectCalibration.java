@@ -0,0 +1,342 @@
+package com.example.chris.apexvr.filtering;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.DecompositionFactory;
+import org.ejml.interfaces.decomposition.SingularValueDecomposition;
+import org.ejml.ops.CommonOps;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Online calibration of the Kinect against the world, from what the sensors
+ * already report instead of measured offsets.
+ *
+ * Two kinds of paired samples are gathered as the player moves:
+ * <ul>
+ * <li>the head marker and the skeleton's head, the rigid transform between
+ * them (Kabsch, through an SVD of their cross covariance) takes the skeleton
+ * onto the marker;</li>
+ * <li>the phone's gravity aligned up seen through the head marker rotation,
+ * which is the world's up in Kinect space and gives the Kinect's tilt.</li>
+ * </ul>
+ *
+ * Samples only update running sums with a forgetting factor, so adding one is
+ * cheap and the calibration follows the Kinect if it is knocked. Every so
+ * often the sums are handed to a background thread that solves them and
+ * publishes two matrices, Kinect to world for the marker and skeleton to
+ * world for the joints, so applying the calibration is one multiply each.
+ *
+ * Matrices are OpenGL style, column major 4x4.
+ */
+public class KinectCalibration {
+
+    // Samples the sums remember, about half a minute at the Kinect rate
+    private static final double WINDOW = 900.0;
+    private static final double FORGET = 1.0 - 1.0 / WINDOW;
+    // Samples between solves
+    private static final int SOLVE_EVERY = 30;
+    // Effective samples before the pairs are trusted at all
+    private static final double MIN_PAIRS = 60.0;
+    // Second largest spread of the pairs, m^2, below it the rotation is not observable
+    private static final double MIN_SPREAD = 0.005;
+    // Shortest averaged up, from 0 to 1, below it the up samples disagree too much
+    private static final double MIN_UP_AGREEMENT = 0.9;
+
+    private static final ExecutorService SOLVER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "KinectCalibration");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Running sums, exponentially weighted.
+     */
+    private static class Sums {
+        double pairs;
+        final double[] skeleton = new double[3];
+        final double[] marker = new double[3];
+        // sum of marker * skeleton^T, row major
+        final double[] cross = new double[9];
+
+        double ups;
+        final double[] up = new double[3];
+
+        void set(Sums sums) {
+            pairs = sums.pairs;
+            System.arraycopy(sums.skeleton, 0, skeleton, 0, 3);
+            System.arraycopy(sums.marker, 0, marker, 0, 3);
+            System.arraycopy(sums.cross, 0, cross, 0, 9);
+            ups = sums.ups;
+            System.arraycopy(sums.up, 0, up, 0, 3);
+        }
+    }
+
+    private static class Result {
+        final float[] kinectToWorld = new float[16];
+        final float[] skeletonToWorld = new float[16];
+
+        Result() {
+            setIdentity(kinectToWorld);
+            setIdentity(skeletonToWorld);
+        }
+    }
+
+    private final Executor executor;
+
+    // Tracking thread
+    private final Sums sums = new Sums();
+    private int sinceSolve;
+
+    // Solver thread, only touched while solving is set
+    private final AtomicBoolean solving = new AtomicBoolean(false);
+    private final Sums pending = new Sums();
+    private final Runnable solve = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                solve();
+            } finally {
+                solving.set(false);
+            }
+        }
+    };
+    private final DenseMatrix64F covariance = new DenseMatrix64F(3, 3);
+    private final DenseMatrix64F u = new DenseMatrix64F(3, 3);
+    private final DenseMatrix64F v = new DenseMatrix64F(3, 3);
+    private final DenseMatrix64F rotation = CommonOps.identity(3);
+    private final double[] translation = new double[3];
+    private final SingularValueDecomposition<DenseMatrix64F> svd =
+            DecompositionFactory.svd(3, 3, true, true, false);
+    private final Quaternion tilt = new Quaternion();
+    private final float[] skeletonToMarker = new float[16];
+
+    private final TripleBuffer<Result> results = new TripleBuffer<>(new Result(), new Result(), new Result());
+
+    public KinectCalibration() {
+        this(SOLVER);
+    }
+
+    /**
+     * @param executor runs the solves, one at a time
+     */
+    public KinectCalibration(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Pair the skeleton's head with a head marker sample captured with it,
+     * both in raw Kinect space. Tracking thread only.
+     */
+    public void addHeadPair(float[] skeleton, int skeletonOffset, float[] marker, int markerOffset) {
+        for (int i = 0; i < 3; ++i) {
+            if (Float.isNaN(skeleton[skeletonOffset + i]) || Float.isNaN(marker[markerOffset + i])) {
+                return;
+            }
+        }
+
+        sums.pairs = sums.pairs * FORGET + 1.0;
+        for (int r = 0; r < 3; ++r) {
+            double m = marker[markerOffset + r];
+            sums.skeleton[r] = sums.skeleton[r] * FORGET + skeleton[skeletonOffset + r];
+            sums.marker[r] = sums.marker[r] * FORGET + m;
+            for (int c = 0; c < 3; ++c) {
+                sums.cross[r * 3 + c] = sums.cross[r * 3 + c] * FORGET + m * skeleton[skeletonOffset + c];
+            }
+        }
+        sampled();
+    }
+
+    /**
+     * Add the world's up as the phone and a head marker rotation see it.
+     * Tracking thread only.
+     *
+     * @param headView the phone's head view, not drift corrected
+     * @param marker head marker rotation in raw Kinect space
+     */
+    public void addUp(float[] headView, int viewOffset, float[] marker, int markerOffset) {
+        // Up in head space is the head view's second column, the marker faces
+        // back from the head, a half turn about y
+        float hx = -headView[viewOffset + 4];
+        float hy = headView[viewOffset + 5];
+        float hz = -headView[viewOffset + 6];
+
+        sums.ups = sums.ups * FORGET + 1.0;
+        for (int r = 0; r < 3; ++r) {
+            double up = marker[markerOffset + r] * hx
+                    + marker[markerOffset + 4 + r] * hy
+                    + marker[markerOffset + 8 + r] * hz;
+            sums.up[r] = sums.up[r] * FORGET + up;
+        }
+        sampled();
+    }
+
+    private void sampled() {
+        if (++sinceSolve < SOLVE_EVERY || !solving.compareAndSet(false, true)) {
+            return;
+        }
+        sinceSolve = 0;
+        pending.set(sums);
+        executor.execute(solve);
+    }
+
+    /**
+     * Take the newest solution, if there is one. Tracking thread only.
+     *
+     * @return whether the matrices changed
+     */
+    public boolean update() {
+        return results.update();
+    }
+
+    /**
+     * Takes head marker positions and rotations into the world, as of the
+     * last update().
+     */
+    public float[] getKinectToWorld() {
+        return results.getFront().kinectToWorld;
+    }
+
+    /**
+     * Takes skeleton joint positions into the world, as of the last update().
+     */
+    public float[] getSkeletonToWorld() {
+        return results.getFront().skeletonToWorld;
+    }
+
+    private void solve() {
+        Result result = results.getBack();
+
+        solveTilt();
+        tilt.toMatrix(result.kinectToWorld, 0);
+
+        solvePairs();
+        setIdentity(skeletonToMarker);
+        for (int r = 0; r < 3; ++r) {
+            for (int c = 0; c < 3; ++c) {
+                skeletonToMarker[c * 4 + r] = (float) rotation.get(r, c);
+            }
+            skeletonToMarker[12 + r] = (float) translation[r];
+        }
+        multiply(result.kinectToWorld, skeletonToMarker, result.skeletonToWorld);
+
+        results.publish();
+    }
+
+    /**
+     * Shortest rotation taking the averaged up onto +y.
+     */
+    private void solveTilt() {
+        if (pending.ups < 1.0) {
+            return;
+        }
+        double x = pending.up[0] / pending.ups;
+        double y = pending.up[1] / pending.ups;
+        double z = pending.up[2] / pending.ups;
+        double length = Math.sqrt(x * x + y * y + z * z);
+        if (length < MIN_UP_AGREEMENT) {
+            return;
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+
+        // Half way between up and +y, axis up x +y
+        tilt.set((float) -z, 0, (float) x, (float) (1.0 + y)).normalize();
+    }
+
+    /**
+     * Kabsch: the rotation and translation taking the skeleton onto the
+     * markers in the least squares sense. Keeps the last rotation while the
+     * pairs do not spread out enough to pin it down.
+     */
+    private void solvePairs() {
+        double n = pending.pairs;
+        if (n < MIN_PAIRS) {
+            return;
+        }
+
+        for (int r = 0; r < 3; ++r) {
+            for (int c = 0; c < 3; ++c) {
+                covariance.set(r, c, pending.cross[r * 3 + c] / n
+                        - pending.marker[r] / n * pending.skeleton[c] / n);
+            }
+        }
+
+        if (svd.decompose(covariance)) {
+            double[] spread = svd.getSingularValues();
+            if (sortedSecond(spread) > MIN_SPREAD) {
+                svd.getU(u, false);
+                svd.getV(v, false);
+
+                // R = U diag(1, 1, det(U V^T)) V^T, never a reflection
+                CommonOps.multTransB(u, v, rotation);
+                if (CommonOps.det(rotation) < 0) {
+                    int smallest = smallestIndex(spread);
+                    for (int r = 0; r < 3; ++r) {
+                        u.set(r, smallest, -u.get(r, smallest));
+                    }
+                    CommonOps.multTransB(u, v, rotation);
+                }
+            }
+        }
+
+        for (int r = 0; r < 3; ++r) {
+            translation[r] = pending.marker[r] / n;
+            for (int c = 0; c < 3; ++c) {
+                translation[r] -= rotation.get(r, c) * pending.skeleton[c] / n;
+            }
+        }
+    }
+
+    private static double sortedSecond(double[] values) {
+        double a = values[0], b = values[1], c = values[2];
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static int smallestIndex(double[] values) {
+        int smallest = 0;
+        for (int i = 1; i < 3; ++i) {
+            if (values[i] < values[smallest]) {
+                smallest = i;
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * out = m * (x, y, z, 1) for count points packed x, y, z. out may be in.
+     */
+    public static void transformPoints(float[] m, float[] in, int inOffset, float[] out, int outOffset, int count) {
+        for (int p = 0; p < count; ++p) {
+            int i = inOffset + p * 3;
+            int o = outOffset + p * 3;
+            float x = in[i], y = in[i + 1], z = in[i + 2];
+            out[o] = m[0] * x + m[4] * y + m[8] * z + m[12];
+            out[o + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+            out[o + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+        }
+    }
+
+    private static void multiply(float[] a, float[] b, float[] out) {
+        for (int c = 0; c < 4; ++c) {
+            for (int r = 0; r < 4; ++r) {
+                out[c * 4 + r] = a[r] * b[c * 4] + a[4 + r] * b[c * 4 + 1]
+                        + a[8 + r] * b[c * 4 + 2] + a[12 + r] * b[c * 4 + 3];
+            }
+        }
+    }
+
+    private static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; ++i) {
+            m[i] = i % 5 == 0 ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.chris.apexvr.filtering;
+
+/**
+ * The OneEuro filter over many channels sampled together, such as every
+ * coordinate of a skeleton.
+ *
+ * Channels live in flat arrays and are filtered in one call. The derivative
+ * smoothing factor depends only on dt, so it is worked out once per call,
+ * leaving one division per channel for its own cutoff. A NaN or infinite
+ * input holds that channel's filtered value, so absent joints can be passed
+ * straight through.
+ *
+ * Nothing is allocated after construction.
+ */
+public class OneEuroBatch {
+
+    private static final float TWO_PI = (float) (2.0 * Math.PI);
+
+    private final int channels;
+    private float minCutoff;
+    private float beta;
+    private float dCutoff;
+
+    // Seconds between samples, kept when a call has no dt
+    private float dt;
+
+    private final float[] value;
+    private final float[] derivative;
+    private final float[] last;
+    private final boolean[] ready;
+
+    public OneEuroBatch(int channels, float freq, float mincutoff, float beta) {
+        this(channels, freq, mincutoff, beta, 1.0f);
+    }
+
+    public OneEuroBatch(int channels, float freq, float mincutoff, float beta, float dcutoff) {
+        this.channels = channels;
+        this.dt = 1.0f / freq;
+        this.minCutoff = mincutoff;
+        this.beta = beta;
+        this.dCutoff = dcutoff;
+
+        value = new float[channels];
+        derivative = new float[channels];
+        last = new float[channels];
+        ready = new boolean[channels];
+    }
+
+    /**
+     * Filter every channel.
+     *
+     * @param in channel values starting at inOffset
+     * @param out filtered values starting at outOffset, may be in
+     * @param dt seconds since the last call, 0 to keep the last interval
+     */
+    public void filter(float[] in, int inOffset, float[] out, int outOffset, float dt) {
+        if (dt > 0) {
+            this.dt = dt;
+        }
+        float rate = 1.0f / this.dt;
+
+        // alpha = 1 / (1 + tau / te) = k * cutoff / (k * cutoff + 1)
+        float k = TWO_PI * this.dt;
+        float kd = k * dCutoff;
+        float dAlpha = kd / (kd + 1.0f);
+        float kBeta = k * beta;
+        float kMin = k * minCutoff;
+
+        for (int i = 0; i < channels; ++i) {
+            float v = in[inOffset + i];
+
+            if (Float.isNaN(v) || Float.isInfinite(v)) {
+                out[outOffset + i] = value[i];
+                continue;
+            }
+
+            if (!ready[i]) {
+                ready[i] = true;
+                last[i] = v;
+                derivative[i] = 0.0f;
+                out[outOffset + i] = value[i] = v;
+                continue;
+            }
+
+            float d = derivative[i] += dAlpha * ((v - last[i]) * rate - derivative[i]);
+            last[i] = v;
+
+            float kc = kMin + kBeta * Math.abs(d);
+            out[outOffset + i] = value[i] += kc / (kc + 1.0f) * (v - value[i]);
+        }
+    }
+
+    public void filter(float[] in, float[] out, float dt) {
+        filter(in, 0, out, 0, dt);
+    }
+
+    /**
+     * Forget the history, the next sample of each channel is taken as is.
+     */
+    public void reset() {
+        for (int i = 0; i < channels; ++i) {
+            ready[i] = false;
+        }
+    }
+
+    public void setMinCutoff(float minCutoff) {
+        this.minCutoff = minCutoff;
+    }
+
+    public void setBeta(float beta) {
+        this.beta = beta;
+    }
+
+    public void setDerivativeCutoff(float dCutoff) {
+        this.dCutoff = dCutoff;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.chris.apexvr.filtering;
+
+/**
+ * Complementary filter between the phone's head orientation and the head
+ * marker's.
+ *
+ * The phone's orientation is smooth and immediate but drifts, the marker's
+ * is noisy and late but anchored to the Kinect. The filter keeps a
+ * correction rotation applied on the world side of the phone's head view,
+ * and pulls it towards what the marker says a little with each marker
+ * sample. Drift about the vertical is pulled in quickly; tilt much more
+ * slowly, since the phone already levels itself against gravity and the
+ * marker's tilt is its noisiest part.
+ *
+ * Nothing is allocated after construction.
+ */
+public class OrientationFusion {
+
+    // Time constants of the pull towards the marker, seconds
+    private static final float YAW_TIME = 0.5f;
+    private static final float TILT_TIME = 5.0f;
+    // Longest marker interval to integrate over, longer gaps do not snap
+    private static final float MAX_DT = 0.25f;
+
+    // How the marker sits on the headset, facing back towards the Kinect
+    private final Quaternion markerToHead = new Quaternion().setAxisAngle(0, 1, 0, (float) Math.PI);
+
+    private final Quaternion correction = new Quaternion();
+    private final Quaternion measured = new Quaternion();
+    private final Quaternion scratch = new Quaternion();
+    private final Quaternion twist = new Quaternion();
+
+    private boolean started = false;
+
+    /**
+     * Pull the correction towards the marker.
+     *
+     * @param headView the phone's head view matrix at about the time of the marker sample
+     * @param marker marker rotation matrix
+     * @param dt seconds since the last marker sample
+     */
+    public void correct(float[] headView, int viewOffset, float[] marker, int markerOffset, float dt) {
+        // The head view the marker implies, and the world side correction taking the phone's to it
+        measured.setFromMatrix(marker, markerOffset).conjugate();
+        measured.multiply(markerToHead, measured);
+        scratch.setFromMatrix(headView, viewOffset).conjugate();
+        measured.multiply(scratch, measured);
+
+        if (!started) {
+            // Heading straight away, tilt left to the phone until it has been averaged
+            correction.setTwistY(measured);
+            started = true;
+            return;
+        }
+
+        dt = Math.max(0.0f, Math.min(dt, MAX_DT));
+
+        // measured = correction * delta, delta = swing * twist about the vertical
+        scratch.set(correction).conjugate();
+        scratch.multiply(scratch, measured);
+        twist.setTwistY(scratch);
+        measured.set(twist).conjugate();
+        scratch.multiply(scratch, measured);
+
+        scratch.scaleAngle(1.0f - (float) Math.exp(-dt / TILT_TIME));
+        twist.scaleAngle(1.0f - (float) Math.exp(-dt / YAW_TIME));
+
+        correction.multiply(correction, scratch);
+        correction.multiply(correction, twist).normalize();
+    }
+
+    /**
+     * The correction as a matrix, to multiply on the right of the head view.
+     */
+    public void getCorrection(float[] matrix, int offset) {
+        correction.toMatrix(matrix, offset);
+    }
+
+    public Quaternion getCorrection() {
+        return correction;
+    }
+
+    /**
+     * Whether a marker sample has been seen since the last reset.
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    public void reset() {
+        correction.setIdentity();
+        started = false;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.chris.apexvr.filtering;
+
+/**
+ * Works out how far ahead to extrapolate each tracked stream so it is drawn
+ * where it will be when the frame reaches the display, not where it was when
+ * it was sampled.
+ *
+ * The horizon of a stream is the age of its newest sample at the start of
+ * the frame, measured from its capture time, plus the time from the start of
+ * the frame to the display, estimated as a number of frame intervals. Each
+ * stream can add its own offset and has its own cap, a cap of 0 turns
+ * prediction off for it. Everything is in seconds except the nanoTime stamps.
+ */
+public class PosePredictor {
+
+    public static final int HEAD = 0;
+    public static final int LEFT_HAND = 1;
+    public static final int RIGHT_HAND = 2;
+    public static final int STREAMS = 3;
+
+    // Frames from the start of a frame until it is on the display
+    private static final float DEFAULT_DISPLAY_FRAMES = 1.5f;
+    private static final float DEFAULT_MAX_HORIZON = 0.1f;
+    // Weight of the newest interval in the frame interval average
+    private static final float FRAME_ALPHA = 0.05f;
+    private static final float DEFAULT_FRAME_INTERVAL = 1.0f / 60.0f;
+
+    private float displayFrames = DEFAULT_DISPLAY_FRAMES;
+    private final float[] offset = new float[STREAMS];
+    private final float[] maxHorizon = new float[STREAMS];
+
+    private long frameNanos;
+    private float frameInterval = DEFAULT_FRAME_INTERVAL;
+
+    public PosePredictor() {
+        for (int i = 0; i < STREAMS; ++i) {
+            maxHorizon[i] = DEFAULT_MAX_HORIZON;
+        }
+    }
+
+    /**
+     * Mark the start of a frame, once per frame.
+     */
+    public void onFrame(long nowNanos) {
+        if (frameNanos != 0) {
+            float interval = (nowNanos - frameNanos) / 1e9f;
+            // Skip pauses, they are not the frame rate
+            if (interval > 0 && interval < 4 * frameInterval + 0.05f) {
+                frameInterval += FRAME_ALPHA * (interval - frameInterval);
+            }
+        }
+        frameNanos = nowNanos;
+    }
+
+    /**
+     * Seconds to extrapolate a stream whose newest sample was captured at
+     * captureNanos, as of the last onFrame().
+     */
+    public float getHorizon(int stream, long captureNanos) {
+        float age = captureNanos == 0 ? 0.0f : (frameNanos - captureNanos) / 1e9f;
+        float horizon = age + displayFrames * frameInterval + offset[stream];
+        return Math.max(0.0f, Math.min(horizon, maxHorizon[stream]));
+    }
+
+    /**
+     * out = position + velocity * horizon, for three axes. out may be position.
+     */
+    public static void extrapolate(float[] position, float[] velocity, float horizon, float[] out) {
+        for (int i = 0; i < 3; ++i) {
+            out[i] = position[i] + velocity[i] * horizon;
+        }
+    }
+
+    /**
+     * Frame intervals from the start of a frame to the display.
+     */
+    public void setDisplayFrames(float displayFrames) {
+        this.displayFrames = displayFrames;
+    }
+
+    /**
+     * Extra time added to a stream's horizon, negative to predict less.
+     */
+    public void setOffset(int stream, float seconds) {
+        offset[stream] = seconds;
+    }
+
+    /**
+     * Longest a stream is extrapolated, 0 for no prediction.
+     */
+    public void setMaxHorizon(int stream, float seconds) {
+        maxHorizon[stream] = seconds;
+    }
+
+    public float getFrameInterval() {
+        return frameInterval;
+    }
+}
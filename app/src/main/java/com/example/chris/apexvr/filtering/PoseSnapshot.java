@@ -0,0 +1,39 @@
+package com.example.chris.apexvr.filtering;
+
+import io.github.apexhaptics.apexhapticsdisplay.JointHistory;
+
+/**
+ * Everything the render thread needs from one tracking step, handed over in
+ * a TripleBuffer. Positions are filtered but not predicted, the render
+ * thread extrapolates them to its own display time.
+ */
+public class PoseSnapshot {
+
+    public boolean ready;
+
+    // World side correction of the phone's head view
+    public final float[] orientationCorrection = new float[16];
+
+    // Velocities in m/s
+    public final float[] head = new float[3];
+    public final float[] headVelocity = new float[3];
+    public final float[] leftHand = new float[3];
+    public final float[] leftHandVelocity = new float[3];
+    public final float[] rightHand = new float[3];
+    public final float[] rightHandVelocity = new float[3];
+
+    public HandTracker.Status leftHandStatus = HandTracker.Status.Lost;
+    public HandTracker.Status rightHandStatus = HandTracker.Status.Lost;
+
+    public final float[] skeleton = new float[JointHistory.JOINTS * 3];
+
+    // Sender capture time of the newest skeleton sample in the positions
+    public long captureNanos;
+
+    public PoseSnapshot() {
+        orientationCorrection[0] = 1;
+        orientationCorrection[5] = 1;
+        orientationCorrection[10] = 1;
+        orientationCorrection[15] = 1;
+    }
+}
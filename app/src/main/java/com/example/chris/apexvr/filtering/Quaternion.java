@@ -0,0 +1,183 @@
+package com.example.chris.apexvr.filtering;
+
+/**
+ * Mutable unit quaternion for rotations. Operations write into this and
+ * return it, and are safe when an argument is this, so a few preallocated
+ * instances are enough for per frame math.
+ *
+ * Matrices are OpenGL style, column major 4x4, with only the upper 3x3 used.
+ * Products compose like the matrices do: a.multiply(b) rotates by b first.
+ */
+public class Quaternion {
+
+    public float x, y, z, w = 1;
+
+    public Quaternion setIdentity() {
+        return set(0, 0, 0, 1);
+    }
+
+    public Quaternion set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Quaternion set(Quaternion q) {
+        return set(q.x, q.y, q.z, q.w);
+    }
+
+    /**
+     * Rotation of angle radians about a unit axis.
+     */
+    public Quaternion setAxisAngle(float ax, float ay, float az, float angle) {
+        float s = (float) Math.sin(angle * 0.5);
+        return set(ax * s, ay * s, az * s, (float) Math.cos(angle * 0.5));
+    }
+
+    /**
+     * The rotation part of a matrix, which should be orthonormal.
+     */
+    public Quaternion setFromMatrix(float[] m, int offset) {
+        float m00 = m[offset], m10 = m[offset + 1], m20 = m[offset + 2];
+        float m01 = m[offset + 4], m11 = m[offset + 5], m21 = m[offset + 6];
+        float m02 = m[offset + 8], m12 = m[offset + 9], m22 = m[offset + 10];
+
+        float trace = m00 + m11 + m22;
+        if (trace > 0) {
+            float s = (float) Math.sqrt(trace + 1.0) * 2;
+            set((m21 - m12) / s, (m02 - m20) / s, (m10 - m01) / s, 0.25f * s);
+        } else if (m00 > m11 && m00 > m22) {
+            float s = (float) Math.sqrt(1.0 + m00 - m11 - m22) * 2;
+            set(0.25f * s, (m01 + m10) / s, (m02 + m20) / s, (m21 - m12) / s);
+        } else if (m11 > m22) {
+            float s = (float) Math.sqrt(1.0 + m11 - m00 - m22) * 2;
+            set((m01 + m10) / s, 0.25f * s, (m12 + m21) / s, (m02 - m20) / s);
+        } else {
+            float s = (float) Math.sqrt(1.0 + m22 - m00 - m11) * 2;
+            set((m02 + m20) / s, (m12 + m21) / s, 0.25f * s, (m10 - m01) / s);
+        }
+        return normalize();
+    }
+
+    /**
+     * Write the rotation as a 4x4 matrix with no translation.
+     */
+    public void toMatrix(float[] m, int offset) {
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+
+        m[offset] = 1 - 2 * (yy + zz);
+        m[offset + 1] = 2 * (xy + wz);
+        m[offset + 2] = 2 * (xz - wy);
+        m[offset + 3] = 0;
+
+        m[offset + 4] = 2 * (xy - wz);
+        m[offset + 5] = 1 - 2 * (xx + zz);
+        m[offset + 6] = 2 * (yz + wx);
+        m[offset + 7] = 0;
+
+        m[offset + 8] = 2 * (xz + wy);
+        m[offset + 9] = 2 * (yz - wx);
+        m[offset + 10] = 1 - 2 * (xx + yy);
+        m[offset + 11] = 0;
+
+        m[offset + 12] = 0;
+        m[offset + 13] = 0;
+        m[offset + 14] = 0;
+        m[offset + 15] = 1;
+    }
+
+    /**
+     * this = a * b
+     */
+    public Quaternion multiply(Quaternion a, Quaternion b) {
+        return set(
+                a.w * b.x + a.x * b.w + a.y * b.z - a.z * b.y,
+                a.w * b.y - a.x * b.z + a.y * b.w + a.z * b.x,
+                a.w * b.z + a.x * b.y - a.y * b.x + a.z * b.w,
+                a.w * b.w - a.x * b.x - a.y * b.y - a.z * b.z);
+    }
+
+    /**
+     * The inverse rotation, for a unit quaternion.
+     */
+    public Quaternion conjugate() {
+        return set(-x, -y, -z, w);
+    }
+
+    public Quaternion normalize() {
+        float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (length == 0) {
+            return setIdentity();
+        }
+        return set(x / length, y / length, z / length, w / length);
+    }
+
+    public float dot(Quaternion q) {
+        return x * q.x + y * q.y + z * q.z + w * q.w;
+    }
+
+    /**
+     * Rotation angle in radians, 0 to pi.
+     */
+    public float angle() {
+        return 2.0f * (float) Math.atan2(Math.sqrt(x * x + y * y + z * z), Math.abs(w));
+    }
+
+    /**
+     * this = the part of q that turns about the y axis, q = swing * twist.
+     */
+    public Quaternion setTwistY(Quaternion q) {
+        if (q.y == 0 && q.w == 0) {
+            // Half a turn about an axis in the xz plane, no twist to speak of
+            return setIdentity();
+        }
+        return set(0, q.y, 0, q.w).normalize();
+    }
+
+    /**
+     * Scale the rotation's angle by t: 0 gives identity, 1 leaves it as it is.
+     */
+    public Quaternion scaleAngle(float t) {
+        if (w < 0) {
+            set(-x, -y, -z, -w);
+        }
+        float half = (float) Math.acos(Math.min(1.0f, w));
+        float sin = (float) Math.sin(half);
+        if (sin < 1e-6f) {
+            return this;
+        }
+        float scale = (float) Math.sin(half * t) / sin;
+        return set(x * scale, y * scale, z * scale, (float) Math.cos(half * t));
+    }
+
+    /**
+     * this = rotation t of the way from a to b along the shortest arc.
+     */
+    public Quaternion slerp(Quaternion a, Quaternion b, float t) {
+        float cos = a.dot(b);
+        float bx = b.x, by = b.y, bz = b.z, bw = b.w;
+        if (cos < 0) {
+            cos = -cos;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+
+        float sa, sb;
+        if (cos > 0.9995f) {
+            sa = 1 - t;
+            sb = t;
+        } else {
+            float angle = (float) Math.acos(cos);
+            float sin = (float) Math.sin(angle);
+            sa = (float) Math.sin((1 - t) * angle) / sin;
+            sb = (float) Math.sin(t * angle) / sin;
+        }
+        return set(sa * a.x + sb * bx, sa * a.y + sb * by, sa * a.z + sb * bz, sa * a.w + sb * bw).normalize();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.chris.apexvr.filtering;
+
+import java.util.concurrent.locks.LockSupport;
+
+import io.github.apexhaptics.apexhapticsdisplay.PacketIngest;
+
+/**
+ * Runs the ApexSensors filters as samples arrive, off the render thread.
+ *
+ * The packet reader wakes the thread after every skeleton or head marker
+ * sample, so the filters step at the sensor rate whatever the frame rate.
+ * The render thread hands over the phone's head view each frame with
+ * setHeadView() and reads the published poses with ApexSensors.frame();
+ * neither side ever waits on the other.
+ */
+public class TrackingThread extends Thread {
+
+    // Longest sleep without a sample, so the hand timeouts still run when the stream stops
+    private static final long IDLE_NANOS = 20000000L;
+
+    private final ApexSensors sensors;
+    private final PacketIngest ingest;
+
+    private final TripleBuffer<float[]> headViews =
+            new TripleBuffer<>(new float[16], new float[16], new float[16]);
+    private boolean haveHeadView = false;
+
+    private volatile boolean running = true;
+
+    private final Runnable wakeup = new Runnable() {
+        @Override
+        public void run() {
+            LockSupport.unpark(TrackingThread.this);
+        }
+    };
+
+    public TrackingThread(ApexSensors sensors, PacketIngest ingest) {
+        super("ApexTracking");
+        this.sensors = sensors;
+        this.ingest = ingest;
+    }
+
+    /**
+     * The phone's head view for the next steps. Render thread only.
+     */
+    public void setHeadView(float[] headView) {
+        System.arraycopy(headView, 0, headViews.getBack(), 0, 16);
+        headViews.publish();
+    }
+
+    @Override
+    public void run() {
+        ingest.setTrackingListener(wakeup);
+        try {
+            while (running) {
+                if (headViews.update()) {
+                    haveHeadView = true;
+                }
+                // Fusion starts from the phone's orientation, wait for the first frame
+                if (haveHeadView) {
+                    sensors.track(headViews.getFront(), ingest.getHeadHistory(), ingest.getJointHistory());
+                }
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        } finally {
+            ingest.setTrackingListener(null);
+        }
+    }
+
+    /**
+     * Stop after the current step, join() to wait for it.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.chris.apexvr.filtering;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single producer, single consumer hand off of the latest value of a
+ * preallocated buffer, such as a pose.
+ *
+ * The producer fills its back buffer and publishes it by swapping it with
+ * the middle one; the consumer takes the middle one by swapping it with its
+ * front buffer. Both swaps are one atomic exchange, so neither side waits on
+ * the other, and each side always owns a buffer the other cannot touch. A
+ * buffer that is replaced before the consumer took it is simply skipped.
+ *
+ * <pre>
+ * // producer
+ * fill(buffer.getBack());
+ * buffer.publish();
+ *
+ * // consumer
+ * buffer.update();
+ * read(buffer.getFront());
+ * </pre>
+ */
+public class TripleBuffer<T> {
+
+    // Set on the middle index while it holds a buffer the consumer has not taken
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // Only touched by the producer
+    private int back = 0;
+    // Only touched by the consumer
+    private int front = 2;
+
+    public TripleBuffer(T a, T b, T c) {
+        buffers = new Object[]{a, b, c};
+    }
+
+    /**
+     * The buffer to fill. Producer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Publish the back buffer, the producer gets a new one to fill.
+     * Producer thread only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Take the latest published buffer, if there is a new one.
+     * Consumer thread only.
+     *
+     * @return whether the front buffer changed
+     */
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX;
+        return true;
+    }
+
+    /**
+     * The latest buffer taken by update(). Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T) buffers[front];
+    }
+}
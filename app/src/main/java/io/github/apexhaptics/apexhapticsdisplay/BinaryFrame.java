@@ -0,0 +1,147 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Layout of the binary framed protocol, the compact alternative to the comma
+ * separated text lines. Everything is little endian.
+ *
+ * <pre>
+ * offset  size  field
+ * 0       1     SYNC (0xA5, never sent in the text protocol)
+ * 1       1     frame type
+ * 2       1     flags, FLAG_CRC if a CRC follows the payload
+ * 3       2     payload length in bytes
+ * 5       n     payload
+ * 5+n     2     CRC-16/CCITT over type, flags, length and payload (optional)
+ * </pre>
+ *
+ * Payloads:
+ * <pre>
+ * TYPE_JOINTS     deltaT u16, count u8, count x (joint u8, state u8, x y z f32)
+ * TYPE_MARKERS    deltaT u16, mask u8 (MARKER_*), head x y z f32,
+ *                 head rotation 9 f32 (row major), robot x y z f32,
+ *                 robot rotation 9 f32, each only if its bit is set
+ * TYPE_KIN_POS    deltaT u16, x y z f32
+ * TYPE_GAME_STATE state i32
+ * TYPE_PONG       ping id i32, sender clock in ms i64
+ * </pre>
+ *
+ * The phone asks for binary frames by sending MODE_REQUEST after connecting.
+ * A sender that does not know the request keeps sending text, and since every
+ * frame starts with SYNC the reader handles either on a frame by frame basis.
+ */
+public final class BinaryFrame {
+
+    public static final int SYNC = 0xA5;
+    public static final int HEADER_SIZE = 5;
+    public static final int CRC_SIZE = 2;
+    public static final int MAX_PAYLOAD = 1024;
+
+    public static final int TYPE_JOINTS = 1;
+    public static final int TYPE_MARKERS = 2;
+    public static final int TYPE_KIN_POS = 3;
+    public static final int TYPE_GAME_STATE = 4;
+    public static final int TYPE_PONG = 5;
+
+    public static final int FLAG_CRC = 0x01;
+
+    public static final int MARKER_HEAD = 0x01;
+    public static final int MARKER_HEAD_ROTATION = 0x02;
+    public static final int MARKER_ROBOT = 0x04;
+
+    public static final int JOINT_SIZE = 2 + 3 * 4;
+
+    public static final byte[] MODE_REQUEST = "Mode,BIN\n".getBytes(Charset.forName("US-ASCII"));
+
+    private static final int[] CRC_TABLE = new int[256];
+    static {
+        for (int i = 0; i < 256; ++i) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; ++bit) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private BinaryFrame() {}
+
+    /**
+     * CRC-16/CCITT-FALSE (poly 0x1021, init 0xFFFF) of a range of bytes.
+     */
+    public static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; ++i) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * Writes frames into a reusable little endian buffer. This is the sender
+     * side of the format, used for tests and replaying recordings.
+     */
+    public static class Encoder {
+        private final ByteBuffer buffer;
+        private final boolean crc;
+        private int frameStart;
+
+        public Encoder(int capacity, boolean crc) {
+            buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            this.crc = crc;
+        }
+
+        public Encoder begin(int type) {
+            frameStart = buffer.position();
+            buffer.put((byte) SYNC);
+            buffer.put((byte) type);
+            buffer.put((byte) (crc ? FLAG_CRC : 0));
+            buffer.putShort((short) 0);
+            return this;
+        }
+
+        public Encoder putByte(int value) {
+            buffer.put((byte) value);
+            return this;
+        }
+
+        public Encoder putShort(int value) {
+            buffer.putShort((short) value);
+            return this;
+        }
+
+        public Encoder putInt(int value) {
+            buffer.putInt(value);
+            return this;
+        }
+
+        public Encoder putFloat(float value) {
+            buffer.putFloat(value);
+            return this;
+        }
+
+        public Encoder end() {
+            int payload = buffer.position() - frameStart - HEADER_SIZE;
+            buffer.putShort(frameStart + 3, (short) payload);
+            if (crc) {
+                buffer.putShort((short) crc16(buffer.array(), frameStart + 1, HEADER_SIZE - 1 + payload));
+            }
+            return this;
+        }
+
+        public byte[] array() {
+            return buffer.array();
+        }
+
+        public int length() {
+            return buffer.position();
+        }
+
+        public void clear() {
+            buffer.clear();
+        }
+    }
+}
@@ -23,24 +23,19 @@ import android.bluetooth.BluetoothSocket;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.BluetoothDataPacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.GameStatePacket;
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
-import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotKinPosPacket;
 import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotPosPacket;
 
@@ -67,25 +62,71 @@ public class BluetoothService {
 //    private static final CharSequence TAGET_NAME = "ALICE";
 //    private static final CharSequence TAGET_NAME = "nope";
 
-    // Bluetooth pol rate while disconnected
+    // Bluetooth pol rate while disconnected, also the longest reconnect backoff
     private static final int pollRate = 2000;
 
+    // First retry after the link drops is immediate, then backs off from here doubling up to pollRate
+    private static final long RECONNECT_BACKOFF_MS = 50;
+
+    // Read watchdog: silent this long and the link is stalled and the sender is probed,
+    // silent for the read timeout and the socket is dropped and reconnected. A sender
+    // that has never answered a ping may just be pausing, it gets a few read timeouts
+    private static final long WATCHDOG_PERIOD_MS = 25;
+    private static final long STALL_TIMEOUT_MS = 100;
+    private static final int UNSYNCED_TIMEOUTS = 3;
+    private volatile long readTimeoutMs = 300;
+
+    // Ask the sender for binary frames when connecting, text is still understood either way
+    private boolean requestBinaryProtocol = true;
+
+    // How often the reader logs the ingest latency histograms, 0 to never log
+    private volatile long latencyLogPeriodMs = 10000;
+
 
     // Member fields
     private final BluetoothAdapter mAdapter;
+    private final Connector connector;
 //    private final Handler mHandler;
     private AcceptThread mAcceptThread;
     private ConnectThread mConnectThread;
     private ConnectedThread mConnectedThread;
     private int mState;
 
+    // Reconnects and the read watchdog run here, never on the Bluetooth threads
+    private final ScheduledExecutorService linkExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BluetoothLink");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    // Probes are written from here, a write blocked on a dead link must not hold up the watchdog
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BluetoothProbe");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private ScheduledFuture<?> reconnectFuture;
+    private ScheduledFuture<?> watchdogFuture;
+    private long reconnectDelayMs;
+
+    private LinkHealth linkHealth = LinkHealth.Down;
+    private LinkHealth.Listener linkHealthListener;
+
     // Constants that indicate the current connection state
     public static final int STATE_NONE = 0;       // we're doing nothing
     public static final int STATE_LISTEN = 1;     // now listening for incoming connections
     public static final int STATE_CONNECTING = 2; // now initiating an outgoing connection
     public static final int STATE_CONNECTED = 3;  // now connected to a remote device
 
-    private ConcurrentMap<String, BluetoothDataPacket> dataPackets = new ConcurrentHashMap<>();
+    // Parsing, clock sync and the packet histories, shared by every connection
+    private final PacketIngest ingest = new PacketIngest();
 
     /**
      * Constructor. Prepares a new BluetoothChat session.
@@ -104,63 +145,301 @@ public class BluetoothService {
         if (mAdapter == null) {
             // Device does not support Bluetooth
             d(TAG, "Bluetooth unsupported");
+            connector = null;
             return;
         }
 
-        detectDeviceThread d = new detectDeviceThread();
-        d.start();
+        connector = bluetoothConnector;
+        scheduleReconnect();
+    }
+
+    /**
+     * Make every connection through connector instead of Bluetooth, for
+     * running the link handling over a PipeTransport off device.
+     */
+    BluetoothService(Connector connector) {
+        mState = STATE_NONE;
+        mAdapter = null;
+        this.connector = connector;
+        scheduleReconnect();
+    }
+
+    /**
+     * Starts a connection attempt each time the link is to be made again.
+     */
+    interface Connector {
+        /**
+         * Start an attempt that ends in connected(), or in a reconnect after a
+         * backoff if it fails.
+         *
+         * @return false if there is nothing to connect to yet, try again later
+         */
+        boolean connect();
+    }
+
+    private final Connector bluetoothConnector = new Connector() {
+        @Override
+        public boolean connect() {
+            BluetoothDevice device = findDevice();
+            if (device == null) {
+                return false;
+            }
+            BluetoothService.this.connect(device);
+            return true;
+        }
+    };
+
+    /**
+     * The paired tracking PC, or null if it is not paired.
+     */
+    private BluetoothDevice findDevice() {
+        Set<BluetoothDevice> pairedDevices = mAdapter.getBondedDevices();
+
+        // There are paired devices. Get the name and address of each paired device.
+        for (BluetoothDevice device : pairedDevices) {
+            String deviceName = device.getName();
+            String deviceHardwareAddress = device.getAddress(); // MAC address
+            if (deviceName == null || !deviceName.contains(TAGET_NAME)) continue;
+            Log.d(TAG, "Bluetooth Device name: " + deviceName);
+            d(TAG, "Bluetooth Device MAC: " + deviceHardwareAddress);
+            return device;
+        }
+        return null;
     }
 
-    private class detectDeviceThread extends Thread {
+    private final Runnable reconnectTask = new Runnable() {
+        @Override
         public void run() {
-            while (true) {
-
-                Set<BluetoothDevice> pairedDevices = mAdapter.getBondedDevices();
-
-                if (pairedDevices.size() > 0) {
-                    boolean foundDevice = false;
-                    // There are paired devices. Get the name and address of each paired device.
-                    for (BluetoothDevice device : pairedDevices) {
-                        String deviceName = device.getName();
-                        String deviceHardwareAddress = device.getAddress(); // MAC address
-                        if (!deviceName.contains(TAGET_NAME)) continue;
-                        foundDevice = true;
-                        Log.d(TAG, "Bluetooth Device name: " + deviceName);
-                        d(TAG, "Bluetooth Device MAC: " + deviceHardwareAddress);
-                        connect(device);
-                        break;
-                    }
-                    if (foundDevice) break;
-                }
-                try {
-                    Thread.sleep(pollRate);
-                } catch (Exception e) {
-                    d(TAG, "Sleep exception");
-                }
+            synchronized (BluetoothService.this) {
+                reconnectFuture = null;
+                if (mState == STATE_NONE || mState == STATE_CONNECTED) return;
+            }
+
+            if (!connector.connect()) {
+                scheduleReconnect();
             }
         }
+    };
+
+    /**
+     * Try to connect again after the current backoff, which doubles each time
+     * until a connection is made.
+     */
+    private synchronized void scheduleReconnect() {
+        if (connector == null || reconnectFuture != null) return;
+
+        long delay = reconnectDelayMs;
+        reconnectDelayMs = delay == 0 ? RECONNECT_BACKOFF_MS : Math.min(delay * 2, pollRate);
+
+        if (mState != STATE_LISTEN) {
+            setState(STATE_LISTEN);
+        }
+        setLinkHealth(LinkHealth.Reconnecting);
+        reconnectFuture = linkExecutor.schedule(reconnectTask, delay, TimeUnit.MILLISECONDS);
     }
 
+    private synchronized void cancelReconnect() {
+        if (reconnectFuture != null) {
+            reconnectFuture.cancel(false);
+            reconnectFuture = null;
+        }
+    }
 
-    private void handlePackets(List<BluetoothDataPacket> packets) {
-        for (BluetoothDataPacket packet:packets) {
-            dataPackets.put(packet.getPacketString(),packet);
+    private final Runnable watchdogTask = new Runnable() {
+        @Override
+        public void run() {
+            checkLink();
         }
+    };
+
+    /**
+     * Read watchdog, run every WATCHDOG_PERIOD_MS while connected. A socket read
+     * cannot time out on its own, so a silent link is closed from here, which
+     * makes the blocked read throw and the reader reconnect.
+     *
+     * A sender that answers pings answers the probe sent when the link
+     * stalls, so one that stays silent for the read timeout is gone. One that
+     * has never answered a ping could be pausing its stream instead, so it
+     * stays Stalled for UNSYNCED_TIMEOUTS read timeouts before it is dropped.
+     */
+    private void checkLink() {
+        ConnectedThread r;
+        synchronized (this) {
+            if (mState != STATE_CONNECTED) return;
+            r = mConnectedThread;
+        }
+        if (r == null) return;
+
+        long silentMs = (System.nanoTime() - r.getLastDataNanos()) / 1000000L;
+        long timeoutMs = ingest.getClockSync().isSynced() ? readTimeoutMs : UNSYNCED_TIMEOUTS * readTimeoutMs;
+        if (silentMs >= timeoutMs) {
+            Log.w(TAG, "Nothing read for " + silentMs + "ms, reconnecting");
+            r.cancel();
+        } else if (silentMs >= STALL_TIMEOUT_MS) {
+            if (getLinkHealth() == LinkHealth.Healthy) {
+                setLinkHealth(LinkHealth.Stalled);
+                // A quiet sender answers this, a dead link does not
+                probe(r);
+            }
+        } else if (getLinkHealth() == LinkHealth.Stalled) {
+            setLinkHealth(LinkHealth.Healthy);
+        }
+    }
+
+    private void probe(final ConnectedThread r) {
+        probeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                r.write(ClockSync.PROBE);
+            }
+        });
     }
 
-    public BluetoothDataPacket getPacket(String name){
-        BluetoothDataPacket packet = dataPackets.get(name);
+    private synchronized void cancelWatchdog() {
+        if (watchdogFuture != null) {
+            watchdogFuture.cancel(false);
+            watchdogFuture = null;
+        }
+    }
+
+    private void setLinkHealth(LinkHealth health) {
+        LinkHealth previous;
+        LinkHealth.Listener listener;
+        synchronized (this) {
+            previous = linkHealth;
+            if (previous == health) return;
+            linkHealth = health;
+            listener = linkHealthListener;
+        }
+        d(TAG, "Link " + previous + " -> " + health);
+        if (listener != null) {
+            listener.onLinkHealthChanged(previous, health);
+        }
+    }
+
+    public synchronized LinkHealth getLinkHealth() {
+        return linkHealth;
+    }
+
+    /**
+     * Be told when the link health changes, null to stop.
+     */
+    public synchronized void setLinkHealthListener(LinkHealth.Listener listener) {
+        linkHealthListener = listener;
+    }
+
+    /**
+     * How long the link may go without data before it is dropped and
+     * reconnected, once the sender has shown it answers pings. Three times
+     * as long before then.
+     */
+    public void setReadTimeout(long timeoutMs) {
+        readTimeoutMs = timeoutMs;
+    }
+
+
+    public JointHistory getJointHistory() {
+        return ingest.getJointHistory();
+    }
+
+    public MarkerHistory getHeadHistory() {
+        return ingest.getHeadHistory();
+    }
+
+    public PacketMailbox<RobotPosPacket> getRobotPosPackets() {
+        return ingest.getRobotPosPackets();
+    }
+
+    public PacketMailbox<RobotKinPosPacket> getRobotKinPosPackets() {
+        return ingest.getRobotKinPosPackets();
+    }
+
+    public PacketMailbox<GameStatePacket> getGameStatePackets() {
+        return ingest.getGameStatePackets();
+    }
+
+    /**
+     * Return a packet taken from a mailbox to its pool once it is no longer used.
+     *
+     * @param packet The packet to recycle, may be null
+     */
+    public void releasePacket(BluetoothDataPacket packet){
         if(packet != null){
-            dataPackets.remove(name);
+            packet.release();
         }
+    }
 
-        return packet;
+    /**
+     * The sender clock estimate for the current connection.
+     */
+    public ClockSync getClockSync() {
+        return ingest.getClockSync();
     }
 
-    public boolean hasPacket(String name){
+    /**
+     * The ingest path the connections read into.
+     */
+    public PacketIngest getIngest() {
+        return ingest;
+    }
 
-        return dataPackets.get(name) != null;
+    /**
+     * Record every byte read from the tracking PC to a log that a
+     * ReplayTransport can play back, appending if the file exists. Replaces
+     * any recording already running.
+     */
+    public void startRecording(File file) throws IOException {
+        SessionRecorder recorder = new SessionRecorder(file);
+        SessionRecorder previous = ingest.getRecorder();
+        ingest.setRecorder(recorder);
+        closeRecorder(previous);
+        Log.i(TAG, "Recording session to " + file);
+    }
 
+    public void stopRecording() {
+        SessionRecorder previous = ingest.getRecorder();
+        ingest.setRecorder(null);
+        closeRecorder(previous);
+    }
+
+    private void closeRecorder(SessionRecorder recorder) {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.close();
+            if (recorder.getDropped() > 0) {
+                Log.w(TAG, "Recording dropped " + recorder.getDropped() + " bytes");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Recording failed", e);
+        }
+    }
+
+    /**
+     * Log p50, p99 and max latency of every ingest stage for each packet type.
+     */
+    public void logLatency() {
+        for (String summary : ingest.latencySummaries()) {
+            Log.i(TAG, summary);
+        }
+    }
+
+    /**
+     * Set how often the reader thread logs the latency histograms.
+     *
+     * @param periodMs Milliseconds between logs, 0 to stop logging
+     */
+    public void setLatencyLogPeriod(long periodMs) {
+        latencyLogPeriodMs = periodMs;
+    }
+
+    /**
+     * Total number of tracking packets that were replaced before the render
+     * thread took them, or fell out of their history before it was drained.
+     */
+    public long getDroppedPackets() {
+        return ingest.getDroppedPackets();
     }
 
     /**
@@ -203,10 +482,12 @@ public class BluetoothService {
             mConnectedThread = null;
         }
 
+        // Starting over by hand skips any backoff
+        cancelWatchdog();
+        cancelReconnect();
+        reconnectDelayMs = 0;
         setState(STATE_LISTEN);
-
-        detectDeviceThread d = new detectDeviceThread();
-        d.run();
+        scheduleReconnect();
     }
 
     /**
@@ -235,6 +516,7 @@ public class BluetoothService {
         mConnectThread = new ConnectThread(device);
         mConnectThread.start();
         setState(STATE_CONNECTING);
+        setLinkHealth(LinkHealth.Connecting);
     }
 
     /**
@@ -244,7 +526,18 @@ public class BluetoothService {
      * @param device The BluetoothDevice that has been connected
      */
     public synchronized void connected(BluetoothSocket socket, BluetoothDevice device) {
-        d(TAG, "connected");
+        d(TAG,"DEVICE_NAME: " + device.getName());
+        connected(new RfcommTransport(socket));
+    }
+
+    /**
+     * Start the ConnectedThread on any transport, for example a TcpTransport
+     * to a sender reached through adb reverse instead of Bluetooth.
+     *
+     * @param transport The connected transport to read from
+     */
+    public synchronized void connected(Transport transport) {
+        d(TAG, "connected to " + transport.getName());
 
         // Cancel the thread that completed the connection
         if (mConnectThread != null) {
@@ -270,14 +563,47 @@ public class BluetoothService {
 //        bundle.putString(Constants.DEVICE_NAME, device.getName());
 //        msg.setData(bundle);
 //        mHandler.sendMessage(msg);
-        d(TAG,"DEVICE_NAME: " + device.getName());
+
+        ConnectedThread connectedThread;
+        try {
+            connectedThread = new ConnectedThread(transport);
+        } catch (IOException e) {
+            Log.e(TAG, "transport streams not created", e);
+            try {
+                transport.close();
+            } catch (IOException e2) {
+                Log.e(TAG, "close() of transport failed", e2);
+            }
+            scheduleReconnect();
+            return;
+        }
 
         setState(STATE_CONNECTED);
+        cancelReconnect();
+        reconnectDelayMs = 0;
 
         // Start the thread to manage the connection and perform transmissions
-        mConnectedThread = new ConnectedThread(socket);
+        mConnectedThread = connectedThread;
         mConnectedThread.setPriority(Thread.MAX_PRIORITY);
         mConnectedThread.start();
+
+        if (requestBinaryProtocol) {
+            mConnectedThread.write(BinaryFrame.MODE_REQUEST);
+        }
+
+        setLinkHealth(LinkHealth.Healthy);
+        cancelWatchdog();
+        watchdogFuture = linkExecutor.scheduleAtFixedRate(watchdogTask,
+                WATCHDOG_PERIOD_MS, WATCHDOG_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Choose whether to ask the sender for the binary framed protocol on the
+     * next connection. The reader accepts text lines and binary frames
+     * regardless, so a sender that ignores the request keeps working.
+     */
+    public void setRequestBinaryProtocol(boolean requestBinaryProtocol) {
+        this.requestBinaryProtocol = requestBinaryProtocol;
     }
 
     /**
@@ -300,7 +626,11 @@ public class BluetoothService {
             mAcceptThread.cancel();
             mAcceptThread = null;
         }
+
+        cancelWatchdog();
+        cancelReconnect();
         setState(STATE_NONE);
+        setLinkHealth(LinkHealth.Down);
     }
 
     /**
@@ -324,7 +654,7 @@ public class BluetoothService {
     /**
      * Indicate that the connection attempt failed and notify the UI Activity.
      */
-    private void connectionFailed() {
+    private void connectionFailed(ConnectThread failed) {
         // Send a failure message back to the Activity
 //        Message msg = mHandler.obtainMessage(Constants.MESSAGE_TOAST);
 //        Bundle bundle = new Bundle();
@@ -333,19 +663,18 @@ public class BluetoothService {
 //        mHandler.sendMessage(msg);
         d(TAG,"Unable to connect device");
 
-        // Start the service over to restart listening mode
-        try {
-            Thread.sleep(pollRate);
-        } catch (Exception e) {
-            d(TAG, "Sleep exception");
+        // Try again after the backoff, unless the attempt was replaced or the service stopped
+        synchronized (this) {
+            if (mConnectThread != failed || mState == STATE_NONE) return;
+            mConnectThread = null;
         }
-        BluetoothService.this.start();
+        scheduleReconnect();
     }
 
     /**
      * Indicate that the connection was lost and notify the UI Activity.
      */
-    private void connectionLost() {
+    private void connectionLost(ConnectedThread lost) {
         // Send a failure message back to the Activity
 //        Message msg = mHandler.obtainMessage(Constants.MESSAGE_TOAST);
 //        Bundle bundle = new Bundle();
@@ -354,8 +683,13 @@ public class BluetoothService {
 //        mHandler.sendMessage(msg);
         d(TAG,"Device connection was lost");
 
-        // Start the service over to restart listening mode
-        BluetoothService.this.start();
+        // Only the current connection reconnects, not one that was replaced or stopped
+        synchronized (this) {
+            if (mConnectedThread != lost || mState == STATE_NONE) return;
+            mConnectedThread = null;
+        }
+        cancelWatchdog();
+        scheduleReconnect();
     }
 
     /**
@@ -477,7 +811,7 @@ public class BluetoothService {
                 } catch (IOException e2) {
                     Log.e(TAG, "unable to close() socket during connection failure", e2);
                 }
-                connectionFailed();
+                connectionFailed(this);
                 return;
             }
 
@@ -504,173 +838,37 @@ public class BluetoothService {
      * It handles all incoming and outgoing transmissions.
      */
     private class ConnectedThread extends Thread {
-        private final BluetoothSocket mmSocket;
-        private final BufferedReader mmBufferedReader;
-        private final OutputStream mmOutStream;
-        private final InputStream inputStream;
+        private final PacketIngest.Session session;
 
-        ConnectedThread(BluetoothSocket socket) {
+        ConnectedThread(Transport transport) throws IOException {
             d(TAG, "create ConnectedThread");
-            mmSocket = socket;
-            InputStream tmpIn = null;
-            OutputStream tmpOut = null;
-
-            // Get the BluetoothSocket input and output streams
-            try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
-            } catch (IOException e) {
-                Log.e(TAG, "temp sockets not created", e);
-            }
-
-            mmOutStream = tmpOut;
-            mmBufferedReader = new BufferedReader(new InputStreamReader(tmpIn));
-            inputStream = tmpIn;
+            session = ingest.open(transport);
         }
 
         public void run() {
             Log.i(TAG, "BEGIN mConnectedThread");
-            String[] packetData;
+            long lastLatencyLog = System.nanoTime();
 
             // Keep listening to the InputStream while connected
             while (mState == STATE_CONNECTED) {
                 try {
+                    if (!session.readNext()) {
+                        throw new IOException("Stream ended");
+                    }
 
-                    //Log.i(TAG,"Has data: " + inputStream.available());
-                    // Send the obtained bytes to the UI Activity
-//                    mHandler.obtainMessage(Constants.MESSAGE_READ, bytes, -1, buffer)
-//                            .sendToTarget();
-                    packetData = mmBufferedReader.readLine().split(",");
-                    List<BluetoothDataPacket> packets = null;
-                    switch (packetData[0]) {
-                        case JointPacket.packetString:
-                            packets = parseJointPacket(packetData);
-                            break;
-                        case HeadPacket.packetString:
-                            packets = parseMarkerPacket(packetData);
-                            break;
-                        case RobotKinPosPacket.packetString:
-                            packets = parseRobotKinPosPacket(packetData);
-                            break;
-                        case GameStatePacket.packetString:
-                            packets = parseGameStatePacket(packetData);
-                            break;
-                        case "":
-                            continue;
-                        default:
-                            Log.e(TAG, "Unknown packet type");
-                            continue;
+                    long logPeriod = latencyLogPeriodMs;
+                    if (logPeriod > 0 && System.nanoTime() - lastLatencyLog > logPeriod * 1000000L) {
+                        lastLatencyLog = System.nanoTime();
+                        logLatency();
                     }
-                    handlePackets(packets);
                 } catch (IOException e) {
                     Log.w(TAG, "disconnected", e);
-                    connectionLost();
+                    connectionLost(this);
                     break;
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    Log.e(TAG, "Incorrectly formatted message");
                 }
             }
         }
 
-        private ArrayList<BluetoothDataPacket> parseJointPacket(String[] data) {
-            JointPacket packet = new JointPacket();
-            ArrayList<BluetoothDataPacket> packets = new ArrayList<>();
-            packets.add(packet);
-            packet.deltaT = Integer.parseInt(data[1]);
-            try {
-                for (int i = 2; i < data.length; i+=6){
-                    if(!data[i].equals(JointPacket.separator)) return packets;
-
-                    packet.addJoint(Joint.JointType.values()[Integer.parseInt(data[i+1])],
-                            Joint.JointTrackingState.values()[Integer.parseInt(data[i+2])],
-                            Float.parseFloat(data[i+3]),
-                            Float.parseFloat(data[i+4]),
-                            Float.parseFloat(data[i+5]));
-                }
-            } catch (ArrayIndexOutOfBoundsException e) {
-                Log.e(TAG, "Incorrectly formatted JOINT message");
-            }
-            return packets;
-        }
-
-        private ArrayList<BluetoothDataPacket> parseMarkerPacket(String[] data) {
-            ArrayList<BluetoothDataPacket> packets = new ArrayList<>();
-            int i = 2;
-            try {
-                if(data[i].equals(HeadPacket.headString)) {
-                    HeadPacket packet = new HeadPacket();
-                    packet.deltaT = Integer.parseInt(data[1]);
-                    if(data.length > 6 && !data[i+4].equals(RobotPosPacket.robString)) {
-                        float[] headRotMat = new float[]{
-                                Float.parseFloat(data[i + 4]), Float.parseFloat(data[i + 5]), Float.parseFloat(data[i + 6]), 0,
-                                Float.parseFloat(data[i + 7]), Float.parseFloat(data[i + 8]), Float.parseFloat(data[i + 9]), 0,
-                                Float.parseFloat(data[i + 10]), Float.parseFloat(data[i + 11]), Float.parseFloat(data[i + 12]), 0,
-                                0, 0, 0, 1,
-                        };
-                        packet.setHeadPos(Float.parseFloat(data[i+1]),
-                                Float.parseFloat(data[i+2]),
-                                Float.parseFloat(data[i+3]),
-                                headRotMat);
-                        i += 13;
-                    }
-                    else {
-                        packet.setHeadPos(Float.parseFloat(data[i+1]),
-                                Float.parseFloat(data[i+2]),
-                                Float.parseFloat(data[i+3]),
-                                null);
-                        i += 4;
-                    }
-                    packets.add(packet);
-                }
-                if(data.length > i && data[i].equals(RobotPosPacket.robString)) {
-                    RobotPosPacket packet = new RobotPosPacket();
-                    packet.deltaT = Integer.parseInt(data[1]);
-                    float[] robotRotMatrix = new float[] {
-                            Float.parseFloat(data[i+4]), Float.parseFloat(data[i+5]),Float.parseFloat(data[i+6]),0,
-                            Float.parseFloat(data[i+7]), Float.parseFloat(data[i+8]),Float.parseFloat(data[i+9]),0,
-                            Float.parseFloat(data[i+10]), Float.parseFloat(data[i+11]),Float.parseFloat(data[i+12]),0,
-                            0,0,0,1,
-                    };
-                    packet.setRobotPos(Float.parseFloat(data[i+1]),
-                            Float.parseFloat(data[i+2]),
-                            Float.parseFloat(data[i+3]),
-                            robotRotMatrix);
-                    i += 13;
-                    packets.add(packet);
-                }
-            } catch (ArrayIndexOutOfBoundsException e) {
-                Log.e(TAG, "Incorrectly formatted MARKER message: " + Arrays.toString(data));
-            }
-            return packets;
-        }
-
-        private ArrayList<BluetoothDataPacket> parseRobotKinPosPacket(String[] data) {
-            RobotKinPosPacket packet = new RobotKinPosPacket();
-            ArrayList<BluetoothDataPacket> packets = new ArrayList<>();
-            packets.add(packet);
-            packet.deltaT = Integer.parseInt(data[1]);
-            try {
-                packet.setPos(Float.parseFloat(data[2]),
-                        Float.parseFloat(data[3]),
-                        Float.parseFloat(data[4]));
-            } catch (ArrayIndexOutOfBoundsException e) {
-                Log.e(TAG, "Incorrectly formatted kinematic position message");
-            }
-            return packets;
-        }
-
-        private ArrayList<BluetoothDataPacket> parseGameStatePacket(String[] data) {
-            GameStatePacket packet = new GameStatePacket();
-            ArrayList<BluetoothDataPacket> packets = new ArrayList<>();
-            packets.add(packet);
-            try {
-                packet.setGameState(Integer.parseInt(data[1]));
-            } catch (ArrayIndexOutOfBoundsException e) {
-                Log.e(TAG, "Incorrectly formatted game state message");
-            }
-            return packets;
-        }
-
         /**
          * Write to the connected OutStream.
          *
@@ -678,7 +876,7 @@ public class BluetoothService {
          */
         void write(byte[] buffer) {
             try {
-                mmOutStream.write(buffer);
+                session.write(buffer);
 
                 // Share the sent message back to the UI Activity
 //                mHandler.obtainMessage(Constants.MESSAGE_WRITE, -1, -1, buffer)
@@ -689,9 +887,16 @@ public class BluetoothService {
             }
         }
 
+        /**
+         * When the last packet or frame was read, watched by checkLink().
+         */
+        long getLastDataNanos() {
+            return session.getLastDataNanos();
+        }
+
         void cancel() {
             try {
-                mmSocket.close();
+                session.close();
             } catch (IOException e) {
                 Log.e(TAG, "close() of connect socket failed", e);
             }
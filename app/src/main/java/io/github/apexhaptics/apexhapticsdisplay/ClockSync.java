@@ -0,0 +1,236 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.nio.charset.Charset;
+
+/**
+ * Estimates the offset between the sender's clock and the local
+ * System.nanoTime() clock, NTP style.
+ *
+ * The phone sends "Ping,id" and the sender answers "Pong,id,senderMillis"
+ * (or a TYPE_PONG frame). Assuming the reply was made half way through the
+ * round trip gives one offset sample. Samples with the shortest round trip
+ * are the least delayed by the link, so the estimate is the offset of the
+ * fastest round trip among the last WINDOW samples.
+ *
+ * The sender only reports deltaT on tracking packets, so capture times are
+ * rebuilt per stream by a Stream from deltaT, the arrival times and the one
+ * way link delay found here. Everything except the getters runs on the
+ * reader thread.
+ */
+public class ClockSync {
+
+    // Ping quickly until the first few samples are in, then keep the window fresh
+    private static final long FAST_PING_PERIOD_NANOS = 250000000L;
+    private static final long PING_PERIOD_NANOS = 2000000000L;
+    private static final int FAST_PINGS = 8;
+
+    private static final int WINDOW = 16;
+    private static final int PENDING = 8;
+
+    // "Ping," and ten digits of id, fixed width so the message is written in place
+    private static final byte[] PING_PREFIX = "Ping,".getBytes(Charset.forName("US-ASCII"));
+    private static final int ID_DIGITS = 10;
+
+    /**
+     * A ping with id 0, which no reply is matched against. Anything can send it
+     * to get the sender talking.
+     */
+    public static final byte[] PROBE = "Ping,0\n".getBytes(Charset.forName("US-ASCII"));
+
+    private final byte[] pingMessage = new byte[PING_PREFIX.length + ID_DIGITS + 1];
+
+    // Pings waiting for a reply, indexed by id % PENDING
+    private final int[] pendingIds = new int[PENDING];
+    private final long[] pendingSentNanos = new long[PENDING];
+
+    // Ring of the most recent offset samples
+    private final long[] sampleRoundTrip = new long[WINDOW];
+    private final long[] sampleOffset = new long[WINDOW];
+    private int samples;
+    private int nextSample;
+
+    private int nextPingId = 1;
+    private int pingsSent;
+    private long lastPingNanos;
+
+    // Sender nanoseconds minus local nanoseconds, and the round trip it was measured with
+    private volatile long offsetNanos;
+    private volatile long roundTripNanos;
+    private volatile boolean synced;
+
+    public ClockSync() {
+        System.arraycopy(PING_PREFIX, 0, pingMessage, 0, PING_PREFIX.length);
+        pingMessage[pingMessage.length - 1] = '\n';
+    }
+
+    /**
+     * Forget all samples, for a new connection.
+     */
+    public void reset() {
+        for (int i = 0; i < PENDING; ++i) {
+            pendingIds[i] = 0;
+        }
+        samples = 0;
+        nextSample = 0;
+        pingsSent = 0;
+        lastPingNanos = 0;
+        offsetNanos = 0;
+        roundTripNanos = 0;
+        synced = false;
+    }
+
+    public boolean isPingDue(long nowNanos) {
+        long period = pingsSent < FAST_PINGS ? FAST_PING_PERIOD_NANOS : PING_PERIOD_NANOS;
+        return pingsSent == 0 || nowNanos - lastPingNanos >= period;
+    }
+
+    /**
+     * Build the next ping and remember when it is sent. The returned array is
+     * reused by the next call, write it out straight away.
+     */
+    public byte[] nextPing(long nowNanos) {
+        int id = nextPingId;
+        nextPingId = id == Integer.MAX_VALUE ? 1 : id + 1;
+
+        pendingIds[id % PENDING] = id;
+        pendingSentNanos[id % PENDING] = nowNanos;
+        lastPingNanos = nowNanos;
+        ++pingsSent;
+
+        int digit = PING_PREFIX.length + ID_DIGITS - 1;
+        for (int i = 0; i < ID_DIGITS; ++i, --digit) {
+            pingMessage[digit] = (byte) ('0' + id % 10);
+            id /= 10;
+        }
+        return pingMessage;
+    }
+
+    /**
+     * Take in the sender's reply to a ping.
+     *
+     * @param pingId Id echoed back by the sender
+     * @param senderMillis Sender clock when it replied
+     * @param receivedNanos When the reply came off the socket
+     * @return false if the reply did not match an outstanding ping
+     */
+    public boolean onPong(int pingId, long senderMillis, long receivedNanos) {
+        int slot = pingId % PENDING;
+        if (pingId <= 0 || pendingIds[slot] != pingId) {
+            return false;
+        }
+        pendingIds[slot] = 0;
+
+        long sent = pendingSentNanos[slot];
+        long roundTrip = receivedNanos - sent;
+        if (roundTrip < 0) {
+            return false;
+        }
+
+        sampleRoundTrip[nextSample] = roundTrip;
+        sampleOffset[nextSample] = senderMillis * 1000000L - (sent + roundTrip / 2);
+        nextSample = (nextSample + 1) % WINDOW;
+        if (samples < WINDOW) {
+            ++samples;
+        }
+
+        int best = 0;
+        for (int i = 1; i < samples; ++i) {
+            if (sampleRoundTrip[i] < sampleRoundTrip[best]) {
+                best = i;
+            }
+        }
+        offsetNanos = sampleOffset[best];
+        roundTripNanos = sampleRoundTrip[best];
+        synced = true;
+        return true;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Sender clock minus local clock in nanoseconds, 0 until synced.
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * Shortest round trip in the current window.
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    /**
+     * Best estimate of the delay from the sender to the phone, half the
+     * shortest round trip.
+     */
+    public long getOneWayNanos() {
+        return roundTripNanos / 2;
+    }
+
+    public String summary() {
+        return "Clock offset " + offsetNanos / 1000 + "us, round trip " + roundTripNanos / 1000
+                + "us" + (synced ? "" : " (not synced)");
+    }
+
+    /**
+     * Rebuilds capture times for one stream of packets. The sender's deltaT
+     * spacing is trusted over arrival times, which carry the link and
+     * scheduling jitter. The chain of deltaT is anchored so no packet is
+     * captured later than its arrival minus the one way delay; a packet that
+     * arrives earlier than the chain allows pulls the chain back, and a
+     * chain that sits too early drifts forward slowly to follow clock skew.
+     */
+    public static class Stream {
+
+        // Fraction of the remaining slack taken up per packet
+        private static final int DRIFT_DIVISOR = 64;
+
+        // A longer gap than this means the stream paused, start a new chain
+        private static final long GAP_NANOS = 500000000L;
+
+        private final ClockSync clockSync;
+        private boolean started;
+        private long lastCaptureNanos;
+
+        public Stream(ClockSync clockSync) {
+            this.clockSync = clockSync;
+        }
+
+        public void reset() {
+            started = false;
+            lastCaptureNanos = 0;
+        }
+
+        /**
+         * Capture time of the next packet of the stream.
+         *
+         * @param deltaT The packet's milliseconds since the previous one, 0 for the first
+         * @param readNanos When the packet came off the socket
+         */
+        public long capture(int deltaT, long readNanos) {
+            long latest = readNanos - clockSync.getOneWayNanos();
+
+            if (!started || deltaT <= 0) {
+                started = true;
+                lastCaptureNanos = latest;
+                return latest;
+            }
+
+            long predicted = lastCaptureNanos + deltaT * 1000000L;
+            long slack = latest - predicted;
+            long capture;
+            if (slack < 0 || slack > GAP_NANOS) {
+                capture = latest;
+            } else {
+                capture = predicted + slack / DRIFT_DIVISOR;
+            }
+
+            lastCaptureNanos = capture;
+            return capture;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+
+/**
+ * Ring of skeleton samples. Positions are packed x, y, z per joint per slot
+ * and the tracking state is kept as its ordinal, NOT_PRESENT for joints the
+ * sample did not include (their positions are NaN).
+ */
+public class JointHistory extends SampleRing {
+
+    public static final byte NOT_PRESENT = -1;
+
+    private static final Joint.JointTrackingState[] TRACKING_STATES = Joint.JointTrackingState.values();
+    public static final int JOINTS = JointPacket.JOINTS;
+    private static final int ALL_PRESENT = (1 << JOINTS) - 1;
+
+    private final float[] positions;
+    private final byte[] states;
+
+    public JointHistory(String name, int capacity) {
+        super(name, capacity);
+        positions = new float[this.capacity * JOINTS * 3];
+        states = new byte[this.capacity * JOINTS];
+    }
+
+    /**
+     * Copy a packet into the next slot. Producer thread only.
+     */
+    public void append(JointPacket packet) {
+        int slot = beginAppend(packet.captureNanos, packet.readNanos);
+
+        float[] packetPositions = packet.getPositions();
+        byte[] packetStates = packet.getStates();
+        int present = packet.getPresentMask();
+        int base = slot * JOINTS;
+        if (present == ALL_PRESENT) {
+            System.arraycopy(packetPositions, 0, positions, base * 3, JOINTS * 3);
+            System.arraycopy(packetStates, 0, states, base, JOINTS);
+        } else {
+            for (int j = 0; j < JOINTS; ++j) {
+                int position = (base + j) * 3;
+                if ((present & (1 << j)) == 0) {
+                    states[base + j] = NOT_PRESENT;
+                    positions[position] = Float.NaN;
+                    positions[position + 1] = Float.NaN;
+                    positions[position + 2] = Float.NaN;
+                } else {
+                    states[base + j] = packetStates[j];
+                    positions[position] = packetPositions[j * 3];
+                    positions[position + 1] = packetPositions[j * 3 + 1];
+                    positions[position + 2] = packetPositions[j * 3 + 2];
+                }
+            }
+        }
+
+        endAppend();
+    }
+
+    /**
+     * Index of the first joint's x in getPositions(), the slot's other joints
+     * follow in JointType order.
+     */
+    public static int skeletonIndex(int slot) {
+        return slot * JOINTS * 3;
+    }
+
+    /**
+     * Index of a joint's x in getPositions(), y and z follow.
+     */
+    public static int positionIndex(int slot, Joint.JointType type) {
+        return (slot * JOINTS + type.ordinal()) * 3;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public boolean isPresent(int slot, Joint.JointType type) {
+        return states[slot * JOINTS + type.ordinal()] != NOT_PRESENT;
+    }
+
+    /**
+     * Tracking state of a joint, null if the sample did not include it.
+     */
+    public Joint.JointTrackingState getState(int slot, Joint.JointType type) {
+        byte state = states[slot * JOINTS + type.ordinal()];
+        return state == NOT_PRESENT ? null : TRACKING_STATES[state];
+    }
+
+    public float getX(int slot, Joint.JointType type) {
+        return positions[positionIndex(slot, type)];
+    }
+
+    public float getY(int slot, Joint.JointType type) {
+        return positions[positionIndex(slot, type) + 1];
+    }
+
+    public float getZ(int slot, Joint.JointType type) {
+        return positions[positionIndex(slot, type) + 2];
+    }
+}
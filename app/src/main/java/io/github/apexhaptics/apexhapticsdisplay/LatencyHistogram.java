@@ -0,0 +1,126 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size log-linear histogram of latencies, in the spirit of HdrHistogram.
+ *
+ * Values are kept in microseconds. Below 64 us every value has its own
+ * bucket, above that each power of two is split into 32 buckets, so any
+ * recorded value is known to within about 3%. Recording is a couple of shifts
+ * and an increment with no allocation.
+ *
+ * Meant to be recorded from one thread. The counts are published with
+ * ordered writes, so another thread, like the one logging, reads values that
+ * were really recorded. Its snapshot can still be a few records behind in
+ * some buckets, which is all a diagnostic dump needs.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 6; // 2^6 == LINEAR_BUCKETS
+    private static final int LAST_EXPONENT = 32; // over an hour, anything larger is clamped
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + (LAST_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS);
+    // Single writer, so lazySet of one more is an increment without a lock
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        int bucket = bucketOf(micros);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        total.lazySet(total.get() + 1);
+        if (micros > max.get()) {
+            max.lazySet(micros);
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > LAST_EXPONENT) {
+            exponent = LAST_EXPONENT;
+            micros = (2L << LAST_EXPONENT) - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Highest value that lands in a bucket.
+     */
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+
+    /**
+     * The value in microseconds that the given fraction (0 to 1) of recorded
+     * values are at or below.
+     */
+    public long percentile(double fraction) {
+        long count = total.get();
+        long max = this.max.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Recording thread only.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); ++i) {
+            counts.lazySet(i, 0);
+        }
+        total.lazySet(0);
+        max.lazySet(0);
+    }
+
+    /**
+     * p50, p99 and max in milliseconds, for logging.
+     */
+    public String summary() {
+        return String.format(Locale.US, "p50 %.2f ms, p99 %.2f ms, max %.2f ms (n=%d)",
+                percentile(0.5) / 1000.0, percentile(0.99) / 1000.0, max.get() / 1000.0, total.get());
+    }
+}
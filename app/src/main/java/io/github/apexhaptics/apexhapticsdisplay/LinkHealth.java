@@ -0,0 +1,19 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+/**
+ * How well the link to the tracking PC is doing, as seen by BluetoothService.
+ */
+public enum LinkHealth {
+    Down,           // not connected and not trying to be
+    Reconnecting,   // looking for the device or waiting out a backoff
+    Connecting,     // socket connect in progress
+    Healthy,        // connected and data is arriving
+    Stalled;        // connected but nothing has arrived for a while
+
+    public interface Listener {
+        /**
+         * Called on whichever thread noticed the change, keep it short.
+         */
+        void onLinkHealthChanged(LinkHealth previous, LinkHealth current);
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
+
+/**
+ * Ring of marker samples, a position and an optional 4x4 rotation per slot.
+ */
+public class MarkerHistory extends SampleRing {
+
+    private final float[] positions;
+    private final float[] rotations;
+    private final boolean[] hasRotation;
+
+    public MarkerHistory(String name, int capacity) {
+        super(name, capacity);
+        positions = new float[this.capacity * 3];
+        rotations = new float[this.capacity * 16];
+        hasRotation = new boolean[this.capacity];
+    }
+
+    /**
+     * Copy a packet into the next slot. Producer thread only.
+     */
+    public void append(HeadPacket packet) {
+        append(packet.captureNanos, packet.readNanos, packet.X, packet.Y, packet.Z, packet.rotMat);
+    }
+
+    /**
+     * Copy a marker into the next slot. Producer thread only.
+     *
+     * @param rotMat 4x4 rotation, null if the marker has none
+     */
+    public void append(long capture, long read, float x, float y, float z, float[] rotMat) {
+        int slot = beginAppend(capture, read);
+
+        positions[slot * 3] = x;
+        positions[slot * 3 + 1] = y;
+        positions[slot * 3 + 2] = z;
+        hasRotation[slot] = rotMat != null;
+        if (rotMat != null) {
+            System.arraycopy(rotMat, 0, rotations, slot * 16, 16);
+        }
+
+        endAppend();
+    }
+
+    /**
+     * Index of a slot's x in getPositions(), y and z follow.
+     */
+    public static int positionIndex(int slot) {
+        return slot * 3;
+    }
+
+    /**
+     * Index of a slot's 4x4 rotation in getRotations().
+     */
+    public static int rotationIndex(int slot) {
+        return slot * 16;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    public boolean hasRotation(int slot) {
+        return hasRotation[slot];
+    }
+
+    /**
+     * Position in the drained batch (0 to count - 1) of the newest sample with a
+     * rotation, or -1 if there is none.
+     */
+    public int newestWithRotation(int count) {
+        for (int i = count - 1; i >= 0; --i) {
+            if (hasRotation[slot(i)]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,303 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.BluetoothDataPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.ClockPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.GameStatePacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotKinPosPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotPosPacket;
+
+/**
+ * Everything between a Transport and the render thread: parsing, clock sync,
+ * capture time stamping and the histories and mailboxes the consumers read.
+ *
+ * Nothing here touches Android on the normal path, so the same ingest runs
+ * on the phone under BluetoothService and on the host JVM over a
+ * PipeTransport, TcpTransport or a ReplayTransport of a recorded session.
+ */
+public class PacketIngest {
+
+    // Samples kept for the tracking filters, a couple of seconds at the Kinect rate
+    private static final int HISTORY_SIZE = 64;
+
+    // Every skeleton and head marker sample, drained in batches by the render thread
+    private final JointHistory jointHistory = new JointHistory(JointPacket.packetString, HISTORY_SIZE);
+    private final MarkerHistory headHistory = new MarkerHistory(HeadPacket.packetString, HISTORY_SIZE);
+
+    // Latest packet of the other types, published by the reader and taken by the render thread
+    private final PacketMailbox<RobotPosPacket> robotPosPackets = new PacketMailbox<>(RobotPosPacket.packetString);
+    private final PacketMailbox<RobotKinPosPacket> robotKinPosPackets = new PacketMailbox<>(RobotKinPosPacket.packetString);
+    private final PacketMailbox<GameStatePacket> gameStatePackets = new PacketMailbox<>(GameStatePacket.packetString);
+
+    // Sender clock offset, and capture time reconstruction for each stream
+    private final ClockSync clockSync = new ClockSync();
+    private final ClockSync.Stream jointClock = new ClockSync.Stream(clockSync);
+    private final ClockSync.Stream headClock = new ClockSync.Stream(clockSync);
+    private final ClockSync.Stream robotPosClock = new ClockSync.Stream(clockSync);
+    private final ClockSync.Stream robotKinPosClock = new ClockSync.Stream(clockSync);
+    private final ClockSync.Stream gameStateClock = new ClockSync.Stream(clockSync);
+
+    private volatile boolean pingSender = true;
+
+    // Run after every skeleton or head marker sample, to wake a consumer waiting on them
+    private volatile Runnable trackingListener;
+
+    // Gets a copy of every byte read while set
+    private volatile SessionRecorder recorder;
+
+    /**
+     * Start reading from a newly connected transport. Only one session should
+     * be read at a time, the clocks start over for each.
+     */
+    public Session open(Transport transport) throws IOException {
+        resetClocks();
+        return new Session(transport);
+    }
+
+    /**
+     * Stamp a filled packet with its capture time and add it to the history or
+     * mailbox for its type. Clock replies are used here and not published.
+     */
+    private void handlePacket(BluetoothDataPacket packet) {
+        if (packet instanceof JointPacket) {
+            packet.captureNanos = jointClock.capture(packet.deltaT, packet.readNanos);
+            jointHistory.append((JointPacket) packet);
+            packet.release();
+            notifyTracking();
+        } else if (packet instanceof HeadPacket) {
+            packet.captureNanos = headClock.capture(packet.deltaT, packet.readNanos);
+            headHistory.append((HeadPacket) packet);
+            packet.release();
+            notifyTracking();
+        } else if (packet instanceof RobotPosPacket) {
+            packet.captureNanos = robotPosClock.capture(packet.deltaT, packet.readNanos);
+            robotPosPackets.publish((RobotPosPacket) packet);
+        } else if (packet instanceof RobotKinPosPacket) {
+            packet.captureNanos = robotKinPosClock.capture(packet.deltaT, packet.readNanos);
+            robotKinPosPackets.publish((RobotKinPosPacket) packet);
+        } else if (packet instanceof GameStatePacket) {
+            packet.captureNanos = gameStateClock.capture(packet.deltaT, packet.readNanos);
+            gameStatePackets.publish((GameStatePacket) packet);
+        } else if (packet instanceof ClockPacket) {
+            ClockPacket pong = (ClockPacket) packet;
+            clockSync.onPong(pong.pingId, pong.senderMillis, pong.readNanos);
+            packet.release();
+        } else {
+            packet.release();
+        }
+    }
+
+    private void notifyTracking() {
+        Runnable listener = trackingListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Start capture time reconstruction over for a new connection.
+     */
+    private void resetClocks() {
+        clockSync.reset();
+        jointClock.reset();
+        headClock.reset();
+        robotPosClock.reset();
+        robotKinPosClock.reset();
+        gameStateClock.reset();
+    }
+
+    public JointHistory getJointHistory() {
+        return jointHistory;
+    }
+
+    public MarkerHistory getHeadHistory() {
+        return headHistory;
+    }
+
+    public PacketMailbox<RobotPosPacket> getRobotPosPackets() {
+        return robotPosPackets;
+    }
+
+    public PacketMailbox<RobotKinPosPacket> getRobotKinPosPackets() {
+        return robotKinPosPackets;
+    }
+
+    public PacketMailbox<GameStatePacket> getGameStatePackets() {
+        return gameStatePackets;
+    }
+
+    /**
+     * Run a listener on the reader thread after every new skeleton or head
+     * marker sample, null for none. It should only signal, not do the work.
+     */
+    public void setTrackingListener(Runnable listener) {
+        trackingListener = listener;
+    }
+
+    /**
+     * The sender clock estimate for the current session.
+     */
+    public ClockSync getClockSync() {
+        return clockSync;
+    }
+
+    /**
+     * Whether sessions ping the sender for clock sync. A recorded or scripted
+     * sender that never answers can turn it off.
+     */
+    public void setPingSender(boolean pingSender) {
+        this.pingSender = pingSender;
+    }
+
+    /**
+     * Tee everything read from now on into a recorder, null to stop. The
+     * caller still owns the recorder and closes it when done.
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public SessionRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Total number of tracking packets that were replaced before the render
+     * thread took them, or fell out of their history before it was drained.
+     */
+    public long getDroppedPackets() {
+        return jointHistory.getOverruns() + headHistory.getOverruns() + robotPosPackets.getDropped()
+                + robotKinPosPackets.getDropped() + gameStatePackets.getDropped();
+    }
+
+    /**
+     * p50, p99 and max latency of every ingest stage for each packet type, one
+     * entry per stream. Any thread, the reader logs it while the consumers
+     * record.
+     */
+    public String[] latencySummaries() {
+        return new String[]{
+                clockSync.summary(),
+                jointHistory.latencySummary(),
+                headHistory.latencySummary(),
+                robotPosPackets.latencySummary(),
+                robotKinPosPackets.latencySummary(),
+                gameStatePackets.latencySummary()
+        };
+    }
+
+    /**
+     * Reading side of one connection. readNext() belongs to a single reader
+     * thread, write() and close() can be called from anywhere.
+     */
+    public class Session {
+        private final Transport transport;
+        private final OutputStream outputStream;
+        private final PacketParser parser;
+
+        // When the last packet or frame was read, for watchdogs
+        private volatile long lastDataNanos = System.nanoTime();
+
+        private Session(Transport transport) throws IOException {
+            this.transport = transport;
+            outputStream = transport.getOutputStream();
+            parser = new PacketParser(new PacketTokenizer(new RecordingStream(transport.getInputStream())),
+                    new PacketParser.PacketHandler() {
+                        @Override
+                        public void onPacket(BluetoothDataPacket packet) {
+                            handlePacket(packet);
+                        }
+                    });
+        }
+
+        /**
+         * Read and handle one line or frame, and ping the sender if it is time.
+         *
+         * @return false if the stream has ended
+         */
+        public boolean readNext() throws IOException {
+            if (!parser.parseNext()) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            lastDataNanos = now;
+            if (pingSender && clockSync.isPingDue(now)) {
+                write(clockSync.nextPing(now));
+            }
+            return true;
+        }
+
+        public synchronized void write(byte[] buffer) throws IOException {
+            outputStream.write(buffer);
+        }
+
+        public long getLastDataNanos() {
+            return lastDataNanos;
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+        /**
+         * Close the transport, which makes a blocked readNext() throw or end.
+         */
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+
+    /**
+     * Passes reads through, handing a copy to the recorder when there is one.
+     */
+    private class RecordingStream extends InputStream implements TimestampedStream {
+        private final InputStream in;
+        private final TimestampedStream timestamps;
+        private long lastReadNanos;
+
+        RecordingStream(InputStream in) {
+            this.in = in;
+            timestamps = in instanceof TimestampedStream ? (TimestampedStream) in : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                lastReadNanos = timestamps != null ? timestamps.getLastReadNanos() : System.nanoTime();
+                SessionRecorder current = recorder;
+                if (current != null) {
+                    current.record(b, off, read, lastReadNanos);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public long getLastReadNanos() {
+            return lastReadNanos;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.BluetoothDataPacket;
+
+/**
+ * Single producer, single consumer slot holding the latest packet of one type.
+ *
+ * The reader thread publishes and the render thread takes, each with one
+ * atomic swap, so a packet is either still in the mailbox or owned by the
+ * consumer, never both. Every published packet gets a sequence number, so the
+ * consumer can tell how many packets arrived since its last take, and a packet
+ * that is replaced before anyone took it is counted as dropped.
+ *
+ * Taking a packet records how long it spent in each stage of the ingest
+ * pipeline, from the socket read to the consumer.
+ */
+public class PacketMailbox<T extends BluetoothDataPacket> {
+
+    private final String name;
+    private final AtomicReference<T> latest = new AtomicReference<>();
+
+    // Only written by the producer
+    private long publishedSequence;
+    private volatile long dropped;
+
+    // Only touched by the consumer
+    private long lastTakenSequence;
+    private long sinceLastTake;
+
+    // Recorded by the consumer, readable from any thread for logging
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private final LatencyHistogram waitLatency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    public PacketMailbox(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Publish a filled packet, replacing anything the consumer has not taken yet.
+     * Producer thread only.
+     */
+    public void publish(T packet) {
+        packet.sequence = ++publishedSequence;
+        packet.publishedNanos = System.nanoTime();
+
+        T stale = latest.getAndSet(packet);
+        if (stale != null) {
+            dropped = dropped + 1;
+            stale.release();
+        }
+    }
+
+    /**
+     * Take the latest packet, or null if nothing new has been published.
+     * The caller owns the packet until it calls release() on it.
+     * Consumer thread only.
+     */
+    public T take() {
+        T packet = latest.getAndSet(null);
+        if (packet != null) {
+            packet.consumedNanos = System.nanoTime();
+            sinceLastTake = packet.sequence - lastTakenSequence;
+            lastTakenSequence = packet.sequence;
+
+            parseLatency.recordNanos(packet.parsedNanos - packet.readNanos);
+            publishLatency.recordNanos(packet.publishedNanos - packet.parsedNanos);
+            waitLatency.recordNanos(packet.consumedNanos - packet.publishedNanos);
+            totalLatency.recordNanos(packet.consumedNanos - packet.readNanos);
+        } else {
+            sinceLastTake = 0;
+        }
+        return packet;
+    }
+
+    public boolean hasPacket() {
+        return latest.get() != null;
+    }
+
+    /**
+     * How many packets were published between the previous take and the last
+     * one. 1 means nothing was missed, 0 means the last take came back empty.
+     */
+    public long getSequenceSinceLastTake() {
+        return sinceLastTake;
+    }
+
+    /**
+     * Total number of packets that were replaced before the consumer took them.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Socket read to consumer, for the packets that were taken.
+     */
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * One line per pipeline stage with p50, p99 and max, for logging.
+     */
+    public String latencySummary() {
+        return name + " total: " + totalLatency.summary()
+                + "\n  parse: " + parseLatency.summary()
+                + "\n  publish: " + publishLatency.summary()
+                + "\n  wait for consumer: " + waitLatency.summary()
+                + "\n  dropped: " + dropped;
+    }
+
+    /**
+     * Clear the latency histograms. Consumer thread only.
+     */
+    public void resetLatency() {
+        parseLatency.reset();
+        publishLatency.reset();
+        waitLatency.reset();
+        totalLatency.reset();
+    }
+}
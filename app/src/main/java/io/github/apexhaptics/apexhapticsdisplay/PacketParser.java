@@ -0,0 +1,508 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.BluetoothDataPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.ClockPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.GameStatePacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.PacketPool;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotKinPosPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotPosPacket;
+
+/**
+ * Turns lines and binary frames (see BinaryFrame) from a PacketTokenizer into
+ * data packets.
+ *
+ * Kept separate from the Bluetooth threads so the same parsing can be driven
+ * from any stream, including recorded frames on the host JVM. Packets come
+ * from per type pools; whoever ends up with a packet must release() it.
+ */
+public class PacketParser {
+
+    private static final String TAG = "PacketParser";
+
+    // One being filled, one published and one held by the render thread, plus a spare
+    private static final int POOL_SIZE = 4;
+
+    // values() clones the array on every call, keep one copy around
+    private static final Joint.JointType[] JOINT_TYPES = Joint.JointType.values();
+    private static final Joint.JointTrackingState[] TRACKING_STATES = Joint.JointTrackingState.values();
+
+    public interface PacketHandler {
+        void onPacket(BluetoothDataPacket packet);
+    }
+
+    private final PacketTokenizer tokenizer;
+    private final PacketHandler handler;
+
+    // Little endian view over the tokenizer's buffer for decoding binary frames
+    private ByteBuffer frameView;
+    // After a bad frame, everything up to the next SYNC byte is dropped
+    private boolean resync;
+
+    // Packets are filled from these pools and released by whoever consumes them
+    private final PacketPool<JointPacket> jointPool = new PacketPool<JointPacket>(POOL_SIZE) {
+        @Override
+        protected JointPacket create() {
+            return new JointPacket();
+        }
+    };
+    private final PacketPool<HeadPacket> headPool = new PacketPool<HeadPacket>(POOL_SIZE) {
+        @Override
+        protected HeadPacket create() {
+            return new HeadPacket();
+        }
+    };
+    private final PacketPool<RobotPosPacket> robotPosPool = new PacketPool<RobotPosPacket>(POOL_SIZE) {
+        @Override
+        protected RobotPosPacket create() {
+            return new RobotPosPacket();
+        }
+    };
+    private final PacketPool<RobotKinPosPacket> robotKinPosPool = new PacketPool<RobotKinPosPacket>(POOL_SIZE) {
+        @Override
+        protected RobotKinPosPacket create() {
+            return new RobotKinPosPacket();
+        }
+    };
+    private final PacketPool<GameStatePacket> gameStatePool = new PacketPool<GameStatePacket>(POOL_SIZE) {
+        @Override
+        protected GameStatePacket create() {
+            return new GameStatePacket();
+        }
+    };
+
+    private final PacketPool<ClockPacket> clockPool = new PacketPool<ClockPacket>(POOL_SIZE) {
+        @Override
+        protected ClockPacket create() {
+            return new ClockPacket();
+        }
+    };
+
+    public PacketParser(PacketTokenizer tokenizer, PacketHandler handler) {
+        this.tokenizer = tokenizer;
+        this.handler = handler;
+    }
+
+    /**
+     * Read and parse one text line or binary frame from the stream.
+     *
+     * @return false if the stream has ended
+     */
+    public boolean parseNext() throws IOException {
+        int first = tokenizer.peek();
+        if (resync) {
+            while (first >= 0 && first != BinaryFrame.SYNC) {
+                tokenizer.skip(1);
+                first = tokenizer.peek();
+            }
+            resync = false;
+        }
+        if (first < 0) {
+            return false;
+        }
+        if (first == BinaryFrame.SYNC) {
+            return parseFrame();
+        }
+
+        if (!tokenizer.nextLine()) {
+            return false;
+        }
+
+        if (tokenizer.isLineEmpty()) {
+            return true;
+        }
+
+        try {
+            tokenizer.requireToken();
+            if (tokenizer.tokenEquals(JointPacket.packetString)) {
+                parseJointPacket();
+            } else if (tokenizer.tokenEquals(HeadPacket.packetString)) {
+                parseMarkerPacket();
+            } else if (tokenizer.tokenEquals(RobotKinPosPacket.packetString)) {
+                parseRobotKinPosPacket();
+            } else if (tokenizer.tokenEquals(GameStatePacket.packetString)) {
+                parseGameStatePacket();
+            } else if (tokenizer.tokenEquals(ClockPacket.packetString)) {
+                parseClockPacket();
+            } else {
+                Log.e(TAG, "Unknown packet type");
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            Log.e(TAG, "Incorrectly formatted message: " + tokenizer.lineToString());
+        }
+
+        return true;
+    }
+
+    private void parseJointPacket() {
+        JointPacket packet = jointPool.acquire();
+        try {
+            packet.deltaT = tokenizer.nextInt();
+
+            while (tokenizer.nextToken()) {
+                if (!tokenizer.tokenEquals(JointPacket.separator)) break;
+
+                int type = tokenizer.nextInt();
+                int state = tokenizer.nextInt();
+                if (type < 0 || type >= JOINT_TYPES.length || state < 0 || state >= TRACKING_STATES.length) {
+                    throw new ArrayIndexOutOfBoundsException("Joint " + type + " state " + state);
+                }
+                float x = tokenizer.nextFloat();
+                float y = tokenizer.nextFloat();
+                float z = tokenizer.nextFloat();
+
+                packet.addJoint(type, state, x, y, z);
+            }
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+
+        deliver(packet);
+    }
+
+    private void parseMarkerPacket() {
+        int deltaT = tokenizer.nextInt();
+        tokenizer.requireToken();
+
+        if (tokenizer.tokenEquals(HeadPacket.headString)) {
+            HeadPacket packet = headPool.acquire();
+            boolean more;
+            try {
+                packet.deltaT = deltaT;
+
+                float x = tokenizer.nextFloat();
+                float y = tokenizer.nextFloat();
+                float z = tokenizer.nextFloat();
+
+                more = tokenizer.nextToken();
+                if (more && !tokenizer.tokenEquals(RobotPosPacket.robString)) {
+                    float[] headRotMat = packet.getRotBuffer();
+                    headRotMat[0] = tokenizer.tokenAsFloat();
+                    readRotation(headRotMat, 1);
+                    packet.setHeadPos(x, y, z, headRotMat);
+                    more = tokenizer.nextToken();
+                } else {
+                    packet.setHeadPos(x, y, z, null);
+                }
+            } catch (RuntimeException e) {
+                packet.release();
+                throw e;
+            }
+            deliver(packet);
+
+            if (!more) {
+                return;
+            }
+        }
+
+        if (tokenizer.tokenEquals(RobotPosPacket.robString)) {
+            RobotPosPacket packet = robotPosPool.acquire();
+            try {
+                packet.deltaT = deltaT;
+
+                float x = tokenizer.nextFloat();
+                float y = tokenizer.nextFloat();
+                float z = tokenizer.nextFloat();
+
+                float[] robotRotMatrix = packet.getRotBuffer();
+                readRotation(robotRotMatrix, 0);
+                packet.setRobotPos(x, y, z, robotRotMatrix);
+            } catch (RuntimeException e) {
+                packet.release();
+                throw e;
+            }
+
+            deliver(packet);
+        }
+    }
+
+    /**
+     * Read the rest of a row major 3x3 rotation into the upper left of a 4x4
+     * matrix, starting at element first (0 to 8) of the 3x3.
+     */
+    private void readRotation(float[] matrix, int first) {
+        for (int i = first; i < 9; ++i) {
+            matrix[(i / 3) * 4 + i % 3] = tokenizer.nextFloat();
+        }
+        clearTranslation(matrix);
+    }
+
+    /**
+     * Fill in the last row and column of a 4x4 rotation matrix.
+     */
+    private static void clearTranslation(float[] matrix) {
+        matrix[3] = 0;
+        matrix[7] = 0;
+        matrix[11] = 0;
+        matrix[12] = 0;
+        matrix[13] = 0;
+        matrix[14] = 0;
+        matrix[15] = 1;
+    }
+
+    private void parseRobotKinPosPacket() {
+        RobotKinPosPacket packet = robotKinPosPool.acquire();
+        try {
+            packet.deltaT = tokenizer.nextInt();
+            packet.setPos(tokenizer.nextFloat(),
+                    tokenizer.nextFloat(),
+                    tokenizer.nextFloat());
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+        deliver(packet);
+    }
+
+    private void parseGameStatePacket() {
+        GameStatePacket packet = gameStatePool.acquire();
+        try {
+            packet.setGameState(tokenizer.nextInt());
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+        deliver(packet);
+    }
+
+    private void parseClockPacket() {
+        ClockPacket packet = clockPool.acquire();
+        try {
+            packet.pingId = tokenizer.nextInt();
+            packet.senderMillis = tokenizer.nextLong();
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+        deliver(packet);
+    }
+
+    /**
+     * Stamp a finished packet and hand it on.
+     */
+    private void deliver(BluetoothDataPacket packet) {
+        packet.readNanos = tokenizer.getLastFillNanos();
+        packet.parsedNanos = System.nanoTime();
+        handler.onPacket(packet);
+    }
+
+    private ByteBuffer frameView() {
+        byte[] buffer = tokenizer.getBuffer();
+        if (frameView == null || frameView.array() != buffer) {
+            frameView = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return frameView;
+    }
+
+    /**
+     * Decode one binary frame. A frame that fails its CRC, claims to be too
+     * long to be real or runs past the end of the stream only has its SYNC
+     * byte dropped, and the reader rescans from there for the next frame. The
+     * length could be what is corrupt, so skipping by it could drop good
+     * frames with the bad one.
+     *
+     * @return false if the stream ended part way through the header
+     */
+    private boolean parseFrame() throws IOException {
+        if (!tokenizer.ensureAvailable(BinaryFrame.HEADER_SIZE)) {
+            return false;
+        }
+
+        ByteBuffer view = frameView();
+        int offset = tokenizer.getUnreadOffset();
+        int type = view.get(offset + 1) & 0xFF;
+        boolean hasCrc = (view.get(offset + 2) & BinaryFrame.FLAG_CRC) != 0;
+        int length = view.getShort(offset + 3) & 0xFFFF;
+
+        if (length > BinaryFrame.MAX_PAYLOAD) {
+            Log.e(TAG, "Binary frame too long: " + length);
+            dropSync();
+            return true;
+        }
+
+        int frameSize = BinaryFrame.HEADER_SIZE + length + (hasCrc ? BinaryFrame.CRC_SIZE : 0);
+        if (!tokenizer.ensureAvailable(frameSize)) {
+            Log.e(TAG, "Stream ended inside a binary frame");
+            dropSync();
+            return true;
+        }
+
+        // Filling may have moved or replaced the buffer
+        view = frameView();
+        offset = tokenizer.getUnreadOffset();
+
+        if (hasCrc) {
+            int expected = view.getShort(offset + BinaryFrame.HEADER_SIZE + length) & 0xFFFF;
+            int actual = BinaryFrame.crc16(view.array(), offset + 1, BinaryFrame.HEADER_SIZE - 1 + length);
+            if (expected != actual) {
+                Log.e(TAG, "Binary frame failed CRC");
+                dropSync();
+                return true;
+            }
+        }
+
+        int payload = offset + BinaryFrame.HEADER_SIZE;
+        boolean valid;
+        switch (type) {
+            case BinaryFrame.TYPE_JOINTS:
+                valid = decodeJoints(view, payload, length);
+                break;
+            case BinaryFrame.TYPE_MARKERS:
+                valid = decodeMarkers(view, payload, length);
+                break;
+            case BinaryFrame.TYPE_KIN_POS:
+                valid = decodeKinPos(view, payload, length);
+                break;
+            case BinaryFrame.TYPE_GAME_STATE:
+                valid = decodeGameState(view, payload, length);
+                break;
+            case BinaryFrame.TYPE_PONG:
+                valid = decodePong(view, payload, length);
+                break;
+            default:
+                Log.e(TAG, "Unknown binary frame type: " + type);
+                valid = true;
+                break;
+        }
+        if (!valid) {
+            Log.e(TAG, "Incorrectly formatted binary frame of type " + type);
+        }
+
+        tokenizer.skip(frameSize);
+        return true;
+    }
+
+    /**
+     * Drop the SYNC byte of a bad frame and rescan from the byte after it.
+     */
+    private void dropSync() {
+        tokenizer.skip(1);
+        resync = true;
+    }
+
+    private boolean decodeJoints(ByteBuffer view, int payload, int length) {
+        if (length < 3) {
+            return false;
+        }
+        int count = view.get(payload + 2) & 0xFF;
+        if (length < 3 + count * BinaryFrame.JOINT_SIZE) {
+            return false;
+        }
+
+        JointPacket packet = jointPool.acquire();
+        packet.deltaT = view.getShort(payload) & 0xFFFF;
+
+        int joint = payload + 3;
+        for (int i = 0; i < count; ++i, joint += BinaryFrame.JOINT_SIZE) {
+            int type = view.get(joint) & 0xFF;
+            int state = view.get(joint + 1) & 0xFF;
+            if (type >= JOINT_TYPES.length || state >= TRACKING_STATES.length) {
+                packet.release();
+                return false;
+            }
+            packet.addJoint(type, state,
+                    view.getFloat(joint + 2),
+                    view.getFloat(joint + 6),
+                    view.getFloat(joint + 10));
+        }
+
+        deliver(packet);
+        return true;
+    }
+
+    private boolean decodeMarkers(ByteBuffer view, int payload, int length) {
+        if (length < 3) {
+            return false;
+        }
+        int deltaT = view.getShort(payload) & 0xFFFF;
+        int mask = view.get(payload + 2) & 0xFF;
+
+        boolean head = (mask & BinaryFrame.MARKER_HEAD) != 0;
+        boolean headRotation = head && (mask & BinaryFrame.MARKER_HEAD_ROTATION) != 0;
+        boolean robot = (mask & BinaryFrame.MARKER_ROBOT) != 0;
+        int needed = 3 + (head ? 12 : 0) + (headRotation ? 36 : 0) + (robot ? 48 : 0);
+        if (length < needed) {
+            return false;
+        }
+
+        int position = payload + 3;
+        if (head) {
+            HeadPacket packet = headPool.acquire();
+            packet.deltaT = deltaT;
+            float x = view.getFloat(position);
+            float y = view.getFloat(position + 4);
+            float z = view.getFloat(position + 8);
+            position += 12;
+            if (headRotation) {
+                readRotation(view, position, packet.getRotBuffer());
+                packet.setHeadPos(x, y, z, packet.getRotBuffer());
+                position += 36;
+            } else {
+                packet.setHeadPos(x, y, z, null);
+            }
+            deliver(packet);
+        }
+
+        if (robot) {
+            RobotPosPacket packet = robotPosPool.acquire();
+            packet.deltaT = deltaT;
+            float x = view.getFloat(position);
+            float y = view.getFloat(position + 4);
+            float z = view.getFloat(position + 8);
+            readRotation(view, position + 12, packet.getRotBuffer());
+            packet.setRobotPos(x, y, z, packet.getRotBuffer());
+            deliver(packet);
+        }
+        return true;
+    }
+
+    private static void readRotation(ByteBuffer view, int position, float[] matrix) {
+        for (int i = 0; i < 9; ++i) {
+            matrix[(i / 3) * 4 + i % 3] = view.getFloat(position + i * 4);
+        }
+        clearTranslation(matrix);
+    }
+
+    private boolean decodeKinPos(ByteBuffer view, int payload, int length) {
+        if (length < 14) {
+            return false;
+        }
+        RobotKinPosPacket packet = robotKinPosPool.acquire();
+        packet.deltaT = view.getShort(payload) & 0xFFFF;
+        packet.setPos(view.getFloat(payload + 2),
+                view.getFloat(payload + 6),
+                view.getFloat(payload + 10));
+        deliver(packet);
+        return true;
+    }
+
+    private boolean decodeGameState(ByteBuffer view, int payload, int length) {
+        if (length < 4) {
+            return false;
+        }
+        GameStatePacket packet = gameStatePool.acquire();
+        packet.setGameState(view.getInt(payload));
+        deliver(packet);
+        return true;
+    }
+
+    private boolean decodePong(ByteBuffer view, int payload, int length) {
+        if (length < 12) {
+            return false;
+        }
+        ClockPacket packet = clockPool.acquire();
+        packet.pingId = view.getInt(payload);
+        packet.senderMillis = view.getLong(payload + 4);
+        deliver(packet);
+        return true;
+    }
+}
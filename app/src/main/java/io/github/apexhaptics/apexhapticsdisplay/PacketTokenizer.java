@@ -0,0 +1,405 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte level tokenizer for the comma separated packet protocol.
+ *
+ * Reads straight from the socket stream into a reusable buffer and hands out
+ * tokens as ranges of that buffer, so ints and floats are parsed in place
+ * without creating Strings. Once the buffer is big enough for the longest
+ * line nothing is allocated per line.
+ *
+ * Binary frames share the same buffer: peek() looks at the next unread byte,
+ * ensureAvailable() buffers a whole frame and skip() consumes it.
+ *
+ * Running out of tokens throws ArrayIndexOutOfBoundsException, the same as
+ * indexing past the end of a split() array, so callers can keep treating a
+ * short line as an incorrectly formatted message.
+ */
+public class PacketTokenizer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final byte SEPARATOR = ',';
+    private static final byte NEW_LINE = '\n';
+    private static final byte RETURN = '\r';
+
+    // Powers of ten used by the float parser, covers everything a float can hold
+    private static final double[] POWERS_OF_TEN = new double[40];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final InputStream inputStream;
+    private final TimestampedStream timestamps;
+    private byte[] buffer;
+
+    // Valid bytes in the buffer are [bufferStart, bufferEnd)
+    private int bufferStart;
+    private int bufferEnd;
+
+    // The current line is [lineStart, lineEnd), the newline is not included
+    private int lineStart;
+    private int lineEnd;
+    private int nextLineStart;
+
+    // System.nanoTime() of the last read that returned data
+    private long lastFillNanos;
+
+    // Read cursor inside the current line and the current token range
+    private int position;
+    private int tokenStart;
+    private int tokenEnd;
+
+    public PacketTokenizer(InputStream inputStream) {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public PacketTokenizer(InputStream inputStream, int bufferSize) {
+        this.inputStream = inputStream;
+        timestamps = inputStream instanceof TimestampedStream ? (TimestampedStream) inputStream : null;
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Advance to the next line of the stream, blocking until a full line is available.
+     *
+     * @return false if the stream ended before another line was read
+     */
+    public boolean nextLine() throws IOException {
+        bufferStart = nextLineStart;
+
+        int scan = bufferStart;
+        while (true) {
+            for (; scan < bufferEnd; ++scan) {
+                if (buffer[scan] == NEW_LINE) {
+                    lineStart = bufferStart;
+                    lineEnd = scan;
+                    if (lineEnd > lineStart && buffer[lineEnd - 1] == RETURN) {
+                        --lineEnd;
+                    }
+                    nextLineStart = scan + 1;
+                    position = lineStart;
+                    tokenStart = tokenEnd = lineStart;
+                    return true;
+                }
+            }
+
+            scan -= bufferStart;
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The next unread byte without consuming it, blocking until one arrives.
+     *
+     * @return the byte as 0 to 255, or -1 if the stream has ended
+     */
+    public int peek() throws IOException {
+        if (!ensureAvailable(1)) {
+            return -1;
+        }
+        return buffer[bufferStart] & 0xFF;
+    }
+
+    /**
+     * Block until at least count unread bytes are in the buffer. The unread
+     * bytes may move, so call getUnreadOffset() afterwards.
+     *
+     * @return false if the stream ended first
+     */
+    public boolean ensureAvailable(int count) throws IOException {
+        bufferStart = nextLineStart;
+        while (bufferEnd - bufferStart < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The buffer the stream is read into. Replaced when a frame or line does
+     * not fit, so do not hold on to it across ensureAvailable() calls.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Offset of the first unread byte in getBuffer().
+     */
+    public int getUnreadOffset() {
+        return nextLineStart;
+    }
+
+    /**
+     * Consume count bytes that were made available with ensureAvailable().
+     */
+    public void skip(int count) {
+        nextLineStart += count;
+        bufferStart = nextLineStart;
+    }
+
+    /**
+     * Read more bytes from the stream, moving the partial line to the front of
+     * the buffer and growing it if a single line or frame does not fit.
+     */
+    private boolean fill() throws IOException {
+        int pending = bufferEnd - bufferStart;
+
+        if (bufferStart > 0) {
+            System.arraycopy(buffer, bufferStart, buffer, 0, pending);
+        } else if (pending == buffer.length) {
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, pending);
+            buffer = larger;
+        }
+
+        bufferStart = 0;
+        bufferEnd = pending;
+        nextLineStart = 0;
+
+        int read = inputStream.read(buffer, bufferEnd, buffer.length - bufferEnd);
+        if (read < 0) {
+            return false;
+        }
+        bufferEnd += read;
+        lastFillNanos = timestamps != null ? timestamps.getLastReadNanos() : System.nanoTime();
+        return true;
+    }
+
+    /**
+     * System.nanoTime() of the most recent read from the stream, or the time
+     * a TimestampedStream reports for it. Right after a line or frame is
+     * complete this is when its last bytes arrived.
+     */
+    public long getLastFillNanos() {
+        return lastFillNanos;
+    }
+
+    /**
+     * Move to the next comma separated token of the current line.
+     *
+     * @return false if the line has no more tokens
+     */
+    public boolean nextToken() {
+        if (position > lineEnd) {
+            return false;
+        }
+
+        tokenStart = position;
+        int scan = position;
+        while (scan < lineEnd && buffer[scan] != SEPARATOR) {
+            ++scan;
+        }
+        tokenEnd = scan;
+        position = scan + 1;
+        return true;
+    }
+
+    /**
+     * Move to the next token, treating a missing token as a malformed line.
+     */
+    public void requireToken() {
+        if (!nextToken()) {
+            throw new ArrayIndexOutOfBoundsException("Line ended early");
+        }
+    }
+
+    public boolean isLineEmpty() {
+        return lineEnd == lineStart;
+    }
+
+    public boolean tokenEquals(String value) {
+        int length = tokenEnd - tokenStart;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (buffer[tokenStart + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int nextInt() {
+        requireToken();
+        return tokenAsInt();
+    }
+
+    public long nextLong() {
+        requireToken();
+        return tokenAsLong();
+    }
+
+    public float nextFloat() {
+        requireToken();
+        return tokenAsFloat();
+    }
+
+    public int tokenAsInt() {
+        int i = tokenStart;
+        int end = trimmedEnd();
+        i = skipSpaces(i, end);
+
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            ++i;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Empty integer token");
+        }
+
+        int value = 0;
+        for (; i < end; ++i) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid integer token: " + tokenToString());
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public long tokenAsLong() {
+        int i = tokenStart;
+        int end = trimmedEnd();
+        i = skipSpaces(i, end);
+
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            ++i;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Empty integer token");
+        }
+
+        long value = 0;
+        for (; i < end; ++i) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid integer token: " + tokenToString());
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse the current token as a float. Handles the plain and exponent
+     * forms the sender produces, anything unusual (NaN, Infinity, very long
+     * mantissas) falls back to Float.parseFloat.
+     */
+    public float tokenAsFloat() {
+        int i = tokenStart;
+        int end = trimmedEnd();
+        i = skipSpaces(i, end);
+
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+
+        for (; i < end; ++i) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) break;
+            seenDigit = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) ++digits;
+            } else {
+                ++exponent;
+            }
+        }
+
+        if (i < end && buffer[i] == '.') {
+            ++i;
+            for (; i < end; ++i) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                seenDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0) ++digits;
+                    --exponent;
+                }
+            }
+        }
+
+        if (seenDigit && i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+                negativeExponent = buffer[i] == '-';
+                ++i;
+            }
+            int explicitExponent = 0;
+            int start = i;
+            for (; i < end; ++i) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                explicitExponent = explicitExponent * 10 + digit;
+            }
+            if (i == start) {
+                return Float.parseFloat(tokenToString());
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (!seenDigit || i != end || exponent <= -POWERS_OF_TEN.length || exponent >= POWERS_OF_TEN.length) {
+            return Float.parseFloat(tokenToString());
+        }
+
+        double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+
+        return (float) (negative ? -value : value);
+    }
+
+    private int trimmedEnd() {
+        int end = tokenEnd;
+        while (end > tokenStart && buffer[end - 1] == ' ') {
+            --end;
+        }
+        return end;
+    }
+
+    private int skipSpaces(int i, int end) {
+        while (i < end && buffer[i] == ' ') {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * The current token as a String. Allocates, only meant for error messages
+     * and the rare fallback paths.
+     */
+    public String tokenToString() {
+        return new String(buffer, tokenStart, tokenEnd - tokenStart);
+    }
+
+    /**
+     * The current line as a String. Allocates, only meant for error messages.
+     */
+    public String lineToString() {
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+}
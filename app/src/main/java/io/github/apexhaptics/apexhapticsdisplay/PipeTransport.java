@@ -0,0 +1,178 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * In-memory transport, one end of a pair made by pair(). Bytes written to
+ * one end are read from the other, with a bounded buffer in each direction
+ * so a fast writer blocks instead of growing the heap.
+ *
+ * Unlike PipedInputStream it does not care which threads read and write,
+ * and closing either end ends the stream for both.
+ */
+public class PipeTransport implements Transport {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final Pipe in;
+    private final Pipe out;
+
+    private PipeTransport(String name, Pipe in, Pipe out) {
+        this.name = name;
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Two connected ends, the first for the reader (the phone side) and the
+     * second for whatever plays the sender.
+     */
+    public static PipeTransport[] pair() {
+        return pair(DEFAULT_BUFFER_SIZE);
+    }
+
+    public static PipeTransport[] pair(int bufferSize) {
+        Pipe toReader = new Pipe(bufferSize);
+        Pipe toSender = new Pipe(bufferSize);
+        return new PipeTransport[]{
+                new PipeTransport("pipe reader", toReader, toSender),
+                new PipeTransport("pipe sender", toSender, toReader)
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in.input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out.output;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        in.close();
+        out.close();
+    }
+
+    /**
+     * Ring buffer of bytes going one way.
+     */
+    private static class Pipe {
+        private final byte[] buffer;
+        private int readPosition;
+        private int count;
+        private boolean closed;
+
+        final InputStream input = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return Pipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                synchronized (Pipe.this) {
+                    return count;
+                }
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        final OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Pipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        Pipe(int size) {
+            buffer = new byte[size];
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (count == 0) {
+                if (closed) {
+                    return -1;
+                }
+                waitInterruptibly();
+            }
+
+            int read = Math.min(len, count);
+            int first = Math.min(read, buffer.length - readPosition);
+            System.arraycopy(buffer, readPosition, b, off, first);
+            System.arraycopy(buffer, 0, b, off + first, read - first);
+            readPosition = (readPosition + read) % buffer.length;
+            count -= read;
+            notifyAll();
+            return read;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (closed) {
+                    throw new IOException("Pipe closed");
+                }
+                if (count == buffer.length) {
+                    waitInterruptibly();
+                    continue;
+                }
+
+                int writePosition = (readPosition + count) % buffer.length;
+                int chunk = Math.min(len, Math.min(buffer.length - count, buffer.length - writePosition));
+                System.arraycopy(b, off, buffer, writePosition, chunk);
+                count += chunk;
+                off += chunk;
+                len -= chunk;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private void waitInterruptibly() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Plays a SessionRecorder log back as a transport, chunk by chunk as it was
+ * read off the socket.
+ *
+ * Chunks are released at the recorded pace divided by the speed, so 1 is real
+ * time, 4 is four times faster and AS_FAST_AS_POSSIBLE does not wait at all.
+ * Either way packets are stamped with the recorded receive times, moved onto
+ * the current System.nanoTime() timeline, so the filters see the same sample
+ * intervals whatever the speed. Sessions in the log play back to back.
+ *
+ * Anything written to the transport, pings included, is thrown away; turn
+ * off PacketIngest.setPingSender() when replaying.
+ */
+public class ReplayTransport implements Transport {
+
+    public static final double REAL_TIME = 1.0;
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final File file;
+    private final DataInputStream input;
+    private final double speed;
+    private final ReplayStream stream = new ReplayStream();
+
+    private volatile boolean closed;
+
+    private final OutputStream discard = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public ReplayTransport(File file, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+        }
+        this.file = file;
+        this.speed = speed;
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+
+        try {
+            if (input.readInt() != SessionRecorder.MAGIC) {
+                throw new IOException("Not a session recording: " + file);
+            }
+            int version = input.readUnsignedByte();
+            if (version != SessionRecorder.VERSION) {
+                throw new IOException("Unsupported session recording version " + version + ": " + file);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return discard;
+    }
+
+    @Override
+    public String getName() {
+        return "replay of " + file.getName();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        input.close();
+    }
+
+    private class ReplayStream extends InputStream implements TimestampedStream {
+
+        // Bytes left of the current record
+        private int remaining;
+
+        // Recorded time where the current session starts, and where that lands on our timeline
+        private boolean started;
+        private long sessionStartNanos;
+        private long sessionOffsetNanos;
+
+        // Wall clock when playback began, and the recorded time played so far
+        private long playbackStartNanos;
+        private long lastReadNanos;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                if (!nextRecord()) {
+                    return -1;
+                }
+            }
+
+            int count = Math.min(len, remaining);
+            input.readFully(b, off, count);
+            remaining -= count;
+            return count;
+        }
+
+        /**
+         * Read the next record header and wait until it is due.
+         *
+         * @return false at the end of the log
+         */
+        private boolean nextRecord() throws IOException {
+            if (closed) {
+                return false;
+            }
+
+            long recorded;
+            try {
+                recorded = input.readLong();
+                remaining = input.readUnsignedShort();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            if (!started) {
+                started = true;
+                playbackStartNanos = System.nanoTime();
+                sessionStartNanos = recorded;
+                sessionOffsetNanos = playbackStartNanos;
+            } else if (remaining == 0) {
+                // New session, continue the timeline from where the last one ended
+                sessionStartNanos = recorded;
+                sessionOffsetNanos = lastReadNanos;
+            }
+
+            lastReadNanos = sessionOffsetNanos + (recorded - sessionStartNanos);
+            waitUntilDue();
+            return true;
+        }
+
+        private void waitUntilDue() throws InterruptedIOException {
+            if (Double.isInfinite(speed)) {
+                return;
+            }
+            long due = playbackStartNanos + (long) ((lastReadNanos - playbackStartNanos) / speed);
+            long wait = due - System.nanoTime();
+            if (wait <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public long getLastReadNanos() {
+            return lastReadNanos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ReplayTransport.this.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer, single consumer ring of tracking samples, the history
+ * counterpart to PacketMailbox.
+ *
+ * Subclasses keep the sample data as struct of arrays indexed by slot, all
+ * allocated up front. The reader thread fills a slot and publishes it, the
+ * render thread drains every sample published since its last drain in one
+ * batch:
+ *
+ * <pre>
+ * int count = ring.drain();
+ * for (int i = 0; i < count; ++i) {
+ *     int slot = ring.slot(i);
+ *     ...
+ * }
+ * </pre>
+ *
+ * Nothing blocks the reader. If the consumer falls more than a ring behind,
+ * the oldest samples are skipped and counted as overruns. A slot can still be
+ * overwritten while the consumer is reading it if the reader laps it during
+ * the batch; isDrainIntact() tells when that happened.
+ */
+public abstract class SampleRing {
+
+    private final String name;
+    protected final int capacity;
+    private final int mask;
+
+    // When each sample was captured by the sender and read off the socket
+    protected final long[] captureNanos;
+    protected final long[] readNanos;
+
+    // Number of samples published, only written by the producer
+    private final AtomicLong written = new AtomicLong();
+
+    // Only written by the consumer, overruns is read by whoever logs
+    private volatile long overruns;
+    private long cursor;
+    private long drainStart;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of two. One slot is
+     *                 always being written, so capacity - 1 samples can be drained
+     */
+    protected SampleRing(String name, int capacity) {
+        this.name = name;
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.capacity = size;
+        mask = size - 1;
+        captureNanos = new long[size];
+        readNanos = new long[size];
+    }
+
+    /**
+     * Slot the next sample is written to. Producer thread only.
+     */
+    protected int beginAppend(long capture, long read) {
+        int slot = (int) (written.get() & mask);
+        captureNanos[slot] = capture;
+        readNanos[slot] = read;
+        return slot;
+    }
+
+    /**
+     * Publish the sample written since beginAppend(). Producer thread only.
+     */
+    protected void endAppend() {
+        written.lazySet(written.get() + 1);
+    }
+
+    /**
+     * Claim every sample published since the last drain.
+     * Consumer thread only.
+     *
+     * @return the number of samples, read them through slot(0) to slot(count - 1)
+     */
+    public int drain() {
+        long end = written.get();
+        long start = Math.max(cursor, end - capacity + 1);
+        overruns = overruns + start - cursor;
+        drainStart = start;
+        cursor = end;
+
+        long now = System.nanoTime();
+        for (long i = start; i < end; ++i) {
+            latency.recordNanos(now - readNanos[(int) (i & mask)]);
+        }
+        return (int) (end - start);
+    }
+
+    /**
+     * Slot of the i-th sample of the last drain, oldest first.
+     */
+    public int slot(int i) {
+        return (int) ((drainStart + i) & mask);
+    }
+
+    /**
+     * False if the reader has overwritten any of the drained slots since drain().
+     */
+    public boolean isDrainIntact() {
+        return written.get() - capacity < drainStart;
+    }
+
+    public long getCaptureNanos(int slot) {
+        return captureNanos[slot];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Samples the consumer never saw because it fell a ring behind.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Socket read to drain of every sample, for logging.
+     */
+    public String latencySummary() {
+        return name + " history: " + latency.summary() + ", overruns: " + overruns;
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends the raw bytes read from a transport to a log file, each chunk with
+ * the time it was received, so a session can be replayed later with a
+ * ReplayTransport.
+ *
+ * <pre>
+ * file    MAGIC i32, VERSION u8, then records until the end of the file
+ * record  receive time i64 (System.nanoTime()), length u16, length bytes
+ * </pre>
+ * Everything is big endian. A record with length 0 starts a new session;
+ * receive times are only comparable within a session. Reopening an existing
+ * log appends a new session to it.
+ *
+ * The reader thread copies each chunk into a preallocated buffer and queues
+ * it, a background thread does the file writes. If the writer falls behind
+ * and the queue is full the chunk is dropped and counted rather than making
+ * the reader wait.
+ */
+public class SessionRecorder implements Closeable {
+
+    public static final int MAGIC = 0x41505852; // "APXR"
+    public static final int VERSION = 1;
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int QUEUE_SIZE = 256;
+
+    private final ArrayBlockingQueue<Chunk> free = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final ArrayBlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_SIZE + 1);
+    private final DataOutputStream output;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean closed;
+    private volatile IOException writeError;
+
+    // Queued last to make the writer finish up
+    private final Chunk endOfLog = new Chunk(0);
+
+    private static class Chunk {
+        final byte[] data;
+        int length;
+        long receivedNanos;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    public SessionRecorder(File file) throws IOException {
+        boolean fresh = !file.exists() || file.length() == 0;
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+        if (fresh) {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+        }
+        writeRecord(System.nanoTime(), null, 0, 0);
+
+        for (int i = 0; i < QUEUE_SIZE; ++i) {
+            free.add(new Chunk(CHUNK_SIZE));
+        }
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "SessionRecorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue bytes that were just read. Called on the reader thread, never
+     * blocks or allocates.
+     */
+    public void record(byte[] buffer, int offset, int length, long receivedNanos) {
+        if (closed) {
+            return;
+        }
+        while (length > 0) {
+            Chunk chunk = free.poll();
+            if (chunk == null) {
+                dropped.addAndGet(length);
+                return;
+            }
+            int count = Math.min(length, CHUNK_SIZE);
+            System.arraycopy(buffer, offset, chunk.data, 0, count);
+            chunk.length = count;
+            chunk.receivedNanos = receivedNanos;
+            queue.offer(chunk);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk == endOfLog) {
+                    break;
+                }
+                if (writeError == null) {
+                    try {
+                        writeRecord(chunk.receivedNanos, chunk.data, 0, chunk.length);
+                        if (queue.isEmpty()) {
+                            output.flush();
+                        }
+                    } catch (IOException e) {
+                        writeError = e;
+                    }
+                }
+                free.offer(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecord(long receivedNanos, byte[] data, int offset, int length) throws IOException {
+        output.writeLong(receivedNanos);
+        output.writeShort(length);
+        if (length > 0) {
+            output.write(data, offset, length);
+        }
+    }
+
+    /**
+     * Bytes that were not recorded because the writer could not keep up.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write out everything queued so far and close the file.
+     *
+     * @throws IOException if any write failed while recording
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.offer(endOfLog);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+}
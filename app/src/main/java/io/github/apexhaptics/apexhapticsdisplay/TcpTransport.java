@@ -0,0 +1,59 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Transport over a TCP socket, for a sender reached over the network or
+ * through adb reverse, or a local server on the host JVM.
+ */
+public class TcpTransport implements Transport {
+
+    private final Socket socket;
+
+    /**
+     * Wrap an already connected socket. Nagle is turned off, the packets are
+     * small and latency matters more than throughput.
+     */
+    public TcpTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+    }
+
+    /**
+     * Connect to a sender listening on host:port.
+     */
+    public static TcpTransport connect(String host, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            return new TcpTransport(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public String getName() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
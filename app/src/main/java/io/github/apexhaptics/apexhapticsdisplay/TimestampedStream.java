@@ -0,0 +1,15 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+/**
+ * An input stream that knows when the bytes it last returned were received,
+ * on the System.nanoTime() timeline. PacketTokenizer stamps packets with
+ * this instead of the time it read them, which lets a replay hand out the
+ * recorded receive times.
+ */
+public interface TimestampedStream {
+
+    /**
+     * Receive time of the bytes returned by the most recent read.
+     */
+    long getLastReadNanos();
+}
@@ -0,0 +1,27 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A connected byte stream to the tracking PC. The ingest path only needs the
+ * two streams, so the same reader runs over Bluetooth RFCOMM on the phone, a
+ * TCP socket (adb reverse, or localhost on the host JVM) or an in-memory pipe
+ * in tests.
+ *
+ * Closing a transport must unblock a read in progress, that is how a stalled
+ * link is dropped.
+ */
+public interface Transport extends Closeable {
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Short description for logging, the device or address on the other end.
+     */
+    String getName();
+}
@@ -1,16 +1,46 @@
 package io.github.apexhaptics.apexhapticsdisplay.datatypes;
 
-import java.util.Date;
-
 /**
  * Created by Jaden on 2017-02-15.
  */
 
 public abstract class BluetoothDataPacket {
-    public Date createDate;
     public int deltaT; // Time in MS since last. 0 if the first
-    BluetoothDataPacket() {
-        createDate = new Date();
+    public long sequence; // Position in the stream of packets of this type, set on publish
+
+    // System.nanoTime() stamps as the packet moves through the ingest pipeline
+    public long readNanos; // bytes that completed the packet came off the socket
+    public long parsedNanos; // packet fully parsed
+    public long publishedNanos; // packet placed in its mailbox
+    public long consumedNanos; // packet taken by the consumer
+
+    // When the sender sampled the data, on the local System.nanoTime() clock. 0 if unknown
+    public long captureNanos;
+
+    PacketPool<?> pool;
+
+    /**
+     * Clear the packet before it is filled again. Called when the packet is
+     * taken from its pool.
+     */
+    protected void reset() {
+        deltaT = 0;
+        readNanos = 0;
+        parsedNanos = 0;
+        publishedNanos = 0;
+        consumedNanos = 0;
+        captureNanos = 0;
+    }
+
+    /**
+     * Give the packet back to the pool it came from. The packet must not be
+     * used after this call.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
     }
+
     public abstract String getPacketString();
 }
@@ -0,0 +1,25 @@
+package io.github.apexhaptics.apexhapticsdisplay.datatypes;
+
+/**
+ * The sender's reply to a clock ping, carrying the sender's clock at the time
+ * it answered. Consumed by ClockSync on the reader thread, never published.
+ */
+
+public class ClockPacket extends BluetoothDataPacket {
+    public static final String packetString = "Pong";
+
+    public int pingId; // Id of the ping being answered
+    public long senderMillis; // Sender clock when the ping was answered
+
+    @Override
+    protected void reset() {
+        super.reset();
+        pingId = 0;
+        senderMillis = 0;
+    }
+
+    @Override
+    public String getPacketString() {
+        return packetString;
+    }
+}
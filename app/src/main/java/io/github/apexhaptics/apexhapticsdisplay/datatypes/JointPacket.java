@@ -1,27 +1,90 @@
 package io.github.apexhaptics.apexhapticsdisplay.datatypes;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import static android.R.attr.x;
-
 /**
  * Created by Jaden on 2017-02-15.
+ *
+ * One skeleton sample. Joints are stored flat and indexed by JointType
+ * ordinal: x, y, z of each joint in positions, the tracking state ordinal in
+ * states and a bit per joint in the presence mask. Nothing here allocates
+ * after construction.
  */
 
 public class JointPacket extends BluetoothDataPacket {
     public static final String packetString = "JLoc";
     public static final String separator = "JNT";
-    private HashMap<Joint.JointType, Joint> jointMap = new HashMap<>();
+
+    private static final Joint.JointTrackingState[] TRACKING_STATES = Joint.JointTrackingState.values();
+    public static final int JOINTS = Joint.JointType.values().length;
+
+    private final float[] positions = new float[JOINTS * 3];
+    private final byte[] states = new byte[JOINTS];
+
+    // Bit n set if the joint with ordinal n is in the sample
+    private int presentMask;
 
     public void addJoint(Joint.JointType type, Joint.JointTrackingState state, float x, float y, float z) {
-        Joint joint = new Joint(x,y,z);
-        joint.state = state;
-        jointMap.put(type, joint);
+        addJoint(type.ordinal(), state.ordinal(), x, y, z);
+    }
+
+    /**
+     * Set a joint by ordinals, as they come off the wire. The caller checks
+     * they are in range.
+     */
+    public void addJoint(int type, int state, float x, float y, float z) {
+        int position = type * 3;
+        positions[position] = x;
+        positions[position + 1] = y;
+        positions[position + 2] = z;
+        states[type] = (byte) state;
+        presentMask |= 1 << type;
+    }
+
+    public boolean isPresent(Joint.JointType type) {
+        return (presentMask & (1 << type.ordinal())) != 0;
+    }
+
+    public int getPresentMask() {
+        return presentMask;
+    }
+
+    /**
+     * Tracking state of a joint, null if the sample did not include it.
+     */
+    public Joint.JointTrackingState getState(Joint.JointType type) {
+        return isPresent(type) ? TRACKING_STATES[states[type.ordinal()]] : null;
+    }
+
+    public float getX(Joint.JointType type) {
+        return positions[type.ordinal() * 3];
+    }
+
+    public float getY(Joint.JointType type) {
+        return positions[type.ordinal() * 3 + 1];
+    }
+
+    public float getZ(Joint.JointType type) {
+        return positions[type.ordinal() * 3 + 2];
+    }
+
+    /**
+     * x, y, z of every joint by ordinal. Only meaningful where the joint is
+     * present, read only.
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Tracking state ordinal of every joint, only meaningful where present.
+     */
+    public byte[] getStates() {
+        return states;
     }
 
-    public Joint getJoint(Joint.JointType type) {
-        return jointMap.get(type);
+    @Override
+    protected void reset() {
+        super.reset();
+        presentMask = 0;
     }
 
     public String getPacketString() { return packetString; }
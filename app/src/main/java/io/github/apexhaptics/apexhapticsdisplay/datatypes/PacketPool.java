@@ -0,0 +1,51 @@
+package io.github.apexhaptics.apexhapticsdisplay.datatypes;
+
+/**
+ * A small pool of recyclable packets of one type.
+ *
+ * The reader thread acquires packets to fill and the render thread releases
+ * them once it is done, so acquire and release are synchronized. The pool is
+ * sized so the steady state (one being filled, one published, one being read)
+ * never has to create a packet.
+ */
+public abstract class PacketPool<T extends BluetoothDataPacket> {
+
+    private final BluetoothDataPacket[] free;
+    private int size;
+    private int created;
+
+    public PacketPool(int capacity) {
+        free = new BluetoothDataPacket[capacity];
+    }
+
+    protected abstract T create();
+
+    @SuppressWarnings("unchecked")
+    public synchronized T acquire() {
+        T packet;
+        if (size > 0) {
+            packet = (T) free[--size];
+            free[size] = null;
+        } else {
+            packet = create();
+            packet.pool = this;
+            ++created;
+        }
+        packet.reset();
+        return packet;
+    }
+
+    synchronized void release(BluetoothDataPacket packet) {
+        if (size < free.length) {
+            free[size++] = packet;
+        }
+    }
+
+    /**
+     * The number of packets this pool has had to create, stops growing once
+     * the pool has warmed up.
+     */
+    public synchronized int getCreated() {
+        return created;
+    }
+}
@@ -1,7 +1,5 @@
 package io.github.apexhaptics.apexhapticsdisplay.datatypes;
 
-import static android.R.attr.angle;
-
 /**
  * Created by Jaden on 2017-02-15.
  */
@@ -13,12 +11,34 @@ public class RobotPosPacket extends BluetoothDataPacket {
     public float Y;
     public float Z;
     public float[] rotMat;
+    private final float[] rotBuffer = new float[16];
 
+    /**
+     * Set the position and rotation. The rotation is copied into this
+     * packet's own matrix unless it is already that matrix (see
+     * getRotBuffer()), null means the packet has no rotation.
+     */
     public void setRobotPos(float x, float y, float z, float[] rotMat) {
         X=x;
         Y=y;
         Z=z;
-        this.rotMat = rotMat;
+        if (rotMat != null && rotMat != rotBuffer) {
+            System.arraycopy(rotMat, 0, rotBuffer, 0, 16);
+        }
+        this.rotMat = rotMat == null ? null : rotBuffer;
+    }
+
+    /**
+     * The matrix this packet owns, for filling in place before calling setRobotPos.
+     */
+    public float[] getRotBuffer() {
+        return rotBuffer;
+    }
+
+    @Override
+    protected void reset() {
+        super.reset();
+        rotMat = null;
     }
 
     public String getPacketString() { return packetString; }
@@ -0,0 +1,185 @@
+package android.opengl;
+
+import java.nio.Buffer;
+
+/**
+ * Host JVM stand-in for android.opengl.GLES30, for the calls the app makes.
+ * There is no context, so every call does nothing: names and locations are
+ * 0, nothing ever fails to compile or link, the extensions the app needs
+ * are there, and glGetError() has nothing to report. What is left to test is the Java side of drawing.
+ */
+public class GLES30 {
+
+    public static void glActiveTexture(int texture) {
+    }
+
+    public static void glAttachShader(int program, int shader) {
+    }
+
+    public static void glBindBuffer(int target, int buffer) {
+    }
+
+    public static void glBindFramebuffer(int target, int framebuffer) {
+    }
+
+    public static void glBindTexture(int target, int texture) {
+    }
+
+    public static void glBindVertexArray(int array) {
+    }
+
+    public static void glBufferData(int target, int size, Buffer data, int usage) {
+    }
+
+    public static void glBufferSubData(int target, int offset, int size, Buffer data) {
+    }
+
+    public static int glCheckFramebufferStatus(int target) {
+        // GL_FRAMEBUFFER_COMPLETE
+        return 0x8CD5;
+    }
+
+    public static void glClear(int mask) {
+    }
+
+    public static void glClearColor(float red, float green, float blue, float alpha) {
+    }
+
+    public static void glCompileShader(int shader) {
+    }
+
+    public static int glCreateProgram() {
+        return 0;
+    }
+
+    public static int glCreateShader(int type) {
+        return 0;
+    }
+
+    public static void glCullFace(int mode) {
+    }
+
+    public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+    }
+
+    public static void glDeleteProgram(int program) {
+    }
+
+    public static void glDeleteShader(int shader) {
+    }
+
+    public static void glDepthFunc(int func) {
+    }
+
+    public static void glDisable(int cap) {
+    }
+
+    public static void glDisableVertexAttribArray(int index) {
+    }
+
+    public static void glDrawArrays(int mode, int first, int count) {
+    }
+
+    public static void glDrawBuffers(int n, int[] bufs, int offset) {
+    }
+
+    public static void glDrawElements(int mode, int count, int type, int offset) {
+    }
+
+    public static void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+    }
+
+    public static void glDrawRangeElements(int mode, int start, int end, int count, int type, int offset) {
+    }
+
+    public static void glEnable(int cap) {
+    }
+
+    public static void glEnableVertexAttribArray(int index) {
+    }
+
+    public static void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+    }
+
+    public static void glGenBuffers(int n, int[] buffers, int offset) {
+    }
+
+    public static void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    }
+
+    public static void glGenTextures(int n, int[] textures, int offset) {
+    }
+
+    public static void glGenVertexArrays(int n, int[] arrays, int offset) {
+    }
+
+    public static void glGenerateMipmap(int target) {
+    }
+
+    public static int glGetAttribLocation(int program, String name) {
+        return 0;
+    }
+
+    public static int glGetError() {
+        // GL_NO_ERROR
+        return 0;
+    }
+
+    public static void glGetIntegerv(int pname, int[] params, int offset) {
+    }
+
+    public static String glGetShaderInfoLog(int shader) {
+        return "";
+    }
+
+    public static void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        // GL_COMPILE_STATUS is the only query, compiled
+        params[offset] = 1;
+    }
+
+    public static String glGetString(int name) {
+        // GL_EXTENSIONS is the only query, with the one extension asked for
+        return "GL_OES_depth_texture";
+    }
+
+    public static int glGetUniformLocation(int program, String name) {
+        return 0;
+    }
+
+    public static void glLinkProgram(int program) {
+    }
+
+    public static void glReadBuffer(int mode) {
+    }
+
+    public static void glShaderSource(int shader, String string) {
+    }
+
+    public static void glTexImage2D(int target, int level, int internalformat, int width, int height,
+                                    int border, int format, int type, Buffer pixels) {
+    }
+
+    public static void glTexParameteri(int target, int pname, int param) {
+    }
+
+    public static void glUniform1i(int location, int x) {
+    }
+
+    public static void glUniform4fv(int location, int count, float[] v, int offset) {
+    }
+
+    public static void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+    }
+
+    public static void glUseProgram(int program) {
+    }
+
+    public static void glVertexAttribDivisor(int index, int divisor) {
+    }
+
+    public static void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {
+    }
+
+    public static void glViewport(int x, int y, int width, int height) {
+    }
+}
@@ -0,0 +1,246 @@
+package android.opengl;
+
+/**
+ * Host JVM stand-in for android.opengl.Matrix with the same column major
+ * conventions, for the methods the app calls. Like the platform version
+ * nothing here allocates, so the allocation tests hold for it too.
+ */
+public class Matrix {
+
+    private static final float[] TEMP = new float[32];
+
+    public static void multiplyMM(float[] result, int resultOffset,
+                                  float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        // result may alias either side
+        synchronized (TEMP) {
+            for (int c = 0; c < 4; ++c) {
+                float b0 = rhs[rhsOffset + c * 4];
+                float b1 = rhs[rhsOffset + c * 4 + 1];
+                float b2 = rhs[rhsOffset + c * 4 + 2];
+                float b3 = rhs[rhsOffset + c * 4 + 3];
+                for (int r = 0; r < 4; ++r) {
+                    TEMP[c * 4 + r] = lhs[lhsOffset + r] * b0 + lhs[lhsOffset + 4 + r] * b1
+                            + lhs[lhsOffset + 8 + r] * b2 + lhs[lhsOffset + 12 + r] * b3;
+                }
+            }
+            System.arraycopy(TEMP, 0, result, resultOffset, 16);
+        }
+    }
+
+    public static void multiplyMV(float[] resultVec, int resultVecOffset,
+                                  float[] lhsMat, int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+        float x = rhsVec[rhsVecOffset];
+        float y = rhsVec[rhsVecOffset + 1];
+        float z = rhsVec[rhsVecOffset + 2];
+        float w = rhsVec[rhsVecOffset + 3];
+        for (int r = 0; r < 4; ++r) {
+            resultVec[resultVecOffset + r] = lhsMat[lhsMatOffset + r] * x + lhsMat[lhsMatOffset + 4 + r] * y
+                    + lhsMat[lhsMatOffset + 8 + r] * z + lhsMat[lhsMatOffset + 12 + r] * w;
+        }
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; ++i) {
+            sm[smOffset + i] = i % 5 == 0 ? 1.0f : 0.0f;
+        }
+    }
+
+    public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; ++i) {
+            m[mOffset + 12 + i] += m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z;
+        }
+    }
+
+    public static void translateM(float[] tm, int tmOffset, float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 12; ++i) {
+            tm[tmOffset + i] = m[mOffset + i];
+        }
+        for (int i = 0; i < 4; ++i) {
+            tm[tmOffset + 12 + i] = m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z
+                    + m[mOffset + 12 + i];
+        }
+    }
+
+    public static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; ++i) {
+            m[mOffset + i] *= x;
+            m[mOffset + 4 + i] *= y;
+            m[mOffset + 8 + i] *= z;
+        }
+    }
+
+    public static void scaleM(float[] sm, int smOffset, float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; ++i) {
+            sm[smOffset + i] = m[mOffset + i] * x;
+            sm[smOffset + 4 + i] = m[mOffset + 4 + i] * y;
+            sm[smOffset + 8 + i] = m[mOffset + 8 + i] * z;
+            sm[smOffset + 12 + i] = m[mOffset + 12 + i];
+        }
+    }
+
+    /**
+     * Rotation of a degrees about (x, y, z).
+     */
+    public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+        rm[rmOffset + 3] = 0;
+        rm[rmOffset + 7] = 0;
+        rm[rmOffset + 11] = 0;
+        rm[rmOffset + 12] = 0;
+        rm[rmOffset + 13] = 0;
+        rm[rmOffset + 14] = 0;
+        rm[rmOffset + 15] = 1;
+
+        double radians = Math.toRadians(a);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1.0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+        float nc = 1.0f - c;
+        float xy = x * y, yz = y * z, zx = z * x;
+        float xs = x * s, ys = y * s, zs = z * s;
+        rm[rmOffset] = x * x * nc + c;
+        rm[rmOffset + 4] = xy * nc - zs;
+        rm[rmOffset + 8] = zx * nc + ys;
+        rm[rmOffset + 1] = xy * nc + zs;
+        rm[rmOffset + 5] = y * y * nc + c;
+        rm[rmOffset + 9] = yz * nc - xs;
+        rm[rmOffset + 2] = zx * nc - ys;
+        rm[rmOffset + 6] = yz * nc + xs;
+        rm[rmOffset + 10] = z * z * nc + c;
+    }
+
+    public static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+        rotateM(m, mOffset, m, mOffset, a, x, y, z);
+    }
+
+    public static void rotateM(float[] rm, int rmOffset, float[] m, int mOffset, float a, float x, float y, float z) {
+        synchronized (TEMP) {
+            setRotateM(TEMP, 16, a, x, y, z);
+            for (int c = 0; c < 4; ++c) {
+                for (int r = 0; r < 4; ++r) {
+                    TEMP[c * 4 + r] = m[mOffset + r] * TEMP[16 + c * 4] + m[mOffset + 4 + r] * TEMP[16 + c * 4 + 1]
+                            + m[mOffset + 8 + r] * TEMP[16 + c * 4 + 2] + m[mOffset + 12 + r] * TEMP[16 + c * 4 + 3];
+                }
+            }
+            System.arraycopy(TEMP, 0, rm, rmOffset, 16);
+        }
+    }
+
+    public static void orthoM(float[] m, int mOffset,
+                              float left, float right, float bottom, float top, float near, float far) {
+        if (left == right || bottom == top || near == far) {
+            throw new IllegalArgumentException("empty volume");
+        }
+        for (int i = 0; i < 16; ++i) {
+            m[mOffset + i] = 0;
+        }
+        m[mOffset] = 2.0f / (right - left);
+        m[mOffset + 5] = 2.0f / (top - bottom);
+        m[mOffset + 10] = -2.0f / (far - near);
+        m[mOffset + 12] = -(right + left) / (right - left);
+        m[mOffset + 13] = -(top + bottom) / (top - bottom);
+        m[mOffset + 14] = -(far + near) / (far - near);
+        m[mOffset + 15] = 1.0f;
+    }
+
+    public static void setLookAtM(float[] rm, int rmOffset, float eyeX, float eyeY, float eyeZ,
+                                  float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+
+        // s = f x up
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+
+        // u = s x f
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        rm[rmOffset] = sx;
+        rm[rmOffset + 1] = ux;
+        rm[rmOffset + 2] = -fx;
+        rm[rmOffset + 3] = 0.0f;
+        rm[rmOffset + 4] = sy;
+        rm[rmOffset + 5] = uy;
+        rm[rmOffset + 6] = -fy;
+        rm[rmOffset + 7] = 0.0f;
+        rm[rmOffset + 8] = sz;
+        rm[rmOffset + 9] = uz;
+        rm[rmOffset + 10] = -fz;
+        rm[rmOffset + 11] = 0.0f;
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+
+        translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+    }
+
+    /**
+     * Inverse by cofactors, false and mInv untouched if m is singular.
+     */
+    public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+        synchronized (TEMP) {
+            float[] a = TEMP;
+            System.arraycopy(m, mOffset, a, 16, 16);
+            int o = 16;
+
+            a[0] = a[o + 5] * a[o + 10] * a[o + 15] - a[o + 5] * a[o + 11] * a[o + 14] - a[o + 9] * a[o + 6] * a[o + 15]
+                    + a[o + 9] * a[o + 7] * a[o + 14] + a[o + 13] * a[o + 6] * a[o + 11] - a[o + 13] * a[o + 7] * a[o + 10];
+            a[4] = -a[o + 4] * a[o + 10] * a[o + 15] + a[o + 4] * a[o + 11] * a[o + 14] + a[o + 8] * a[o + 6] * a[o + 15]
+                    - a[o + 8] * a[o + 7] * a[o + 14] - a[o + 12] * a[o + 6] * a[o + 11] + a[o + 12] * a[o + 7] * a[o + 10];
+            a[8] = a[o + 4] * a[o + 9] * a[o + 15] - a[o + 4] * a[o + 11] * a[o + 13] - a[o + 8] * a[o + 5] * a[o + 15]
+                    + a[o + 8] * a[o + 7] * a[o + 13] + a[o + 12] * a[o + 5] * a[o + 11] - a[o + 12] * a[o + 7] * a[o + 9];
+            a[12] = -a[o + 4] * a[o + 9] * a[o + 14] + a[o + 4] * a[o + 10] * a[o + 13] + a[o + 8] * a[o + 5] * a[o + 14]
+                    - a[o + 8] * a[o + 6] * a[o + 13] - a[o + 12] * a[o + 5] * a[o + 10] + a[o + 12] * a[o + 6] * a[o + 9];
+            a[1] = -a[o + 1] * a[o + 10] * a[o + 15] + a[o + 1] * a[o + 11] * a[o + 14] + a[o + 9] * a[o + 2] * a[o + 15]
+                    - a[o + 9] * a[o + 3] * a[o + 14] - a[o + 13] * a[o + 2] * a[o + 11] + a[o + 13] * a[o + 3] * a[o + 10];
+            a[5] = a[o] * a[o + 10] * a[o + 15] - a[o] * a[o + 11] * a[o + 14] - a[o + 8] * a[o + 2] * a[o + 15]
+                    + a[o + 8] * a[o + 3] * a[o + 14] + a[o + 12] * a[o + 2] * a[o + 11] - a[o + 12] * a[o + 3] * a[o + 10];
+            a[9] = -a[o] * a[o + 9] * a[o + 15] + a[o] * a[o + 11] * a[o + 13] + a[o + 8] * a[o + 1] * a[o + 15]
+                    - a[o + 8] * a[o + 3] * a[o + 13] - a[o + 12] * a[o + 1] * a[o + 11] + a[o + 12] * a[o + 3] * a[o + 9];
+            a[13] = a[o] * a[o + 9] * a[o + 14] - a[o] * a[o + 10] * a[o + 13] - a[o + 8] * a[o + 1] * a[o + 14]
+                    + a[o + 8] * a[o + 2] * a[o + 13] + a[o + 12] * a[o + 1] * a[o + 10] - a[o + 12] * a[o + 2] * a[o + 9];
+            a[2] = a[o + 1] * a[o + 6] * a[o + 15] - a[o + 1] * a[o + 7] * a[o + 14] - a[o + 5] * a[o + 2] * a[o + 15]
+                    + a[o + 5] * a[o + 3] * a[o + 14] + a[o + 13] * a[o + 2] * a[o + 7] - a[o + 13] * a[o + 3] * a[o + 6];
+            a[6] = -a[o] * a[o + 6] * a[o + 15] + a[o] * a[o + 7] * a[o + 14] + a[o + 4] * a[o + 2] * a[o + 15]
+                    - a[o + 4] * a[o + 3] * a[o + 14] - a[o + 12] * a[o + 2] * a[o + 7] + a[o + 12] * a[o + 3] * a[o + 6];
+            a[10] = a[o] * a[o + 5] * a[o + 15] - a[o] * a[o + 7] * a[o + 13] - a[o + 4] * a[o + 1] * a[o + 15]
+                    + a[o + 4] * a[o + 3] * a[o + 13] + a[o + 12] * a[o + 1] * a[o + 7] - a[o + 12] * a[o + 3] * a[o + 5];
+            a[14] = -a[o] * a[o + 5] * a[o + 14] + a[o] * a[o + 6] * a[o + 13] + a[o + 4] * a[o + 1] * a[o + 14]
+                    - a[o + 4] * a[o + 2] * a[o + 13] - a[o + 12] * a[o + 1] * a[o + 6] + a[o + 12] * a[o + 2] * a[o + 5];
+            a[3] = -a[o + 1] * a[o + 6] * a[o + 11] + a[o + 1] * a[o + 7] * a[o + 10] + a[o + 5] * a[o + 2] * a[o + 11]
+                    - a[o + 5] * a[o + 3] * a[o + 10] - a[o + 9] * a[o + 2] * a[o + 7] + a[o + 9] * a[o + 3] * a[o + 6];
+            a[7] = a[o] * a[o + 6] * a[o + 11] - a[o] * a[o + 7] * a[o + 10] - a[o + 4] * a[o + 2] * a[o + 11]
+                    + a[o + 4] * a[o + 3] * a[o + 10] + a[o + 8] * a[o + 2] * a[o + 7] - a[o + 8] * a[o + 3] * a[o + 6];
+            a[11] = -a[o] * a[o + 5] * a[o + 11] + a[o] * a[o + 7] * a[o + 9] + a[o + 4] * a[o + 1] * a[o + 11]
+                    - a[o + 4] * a[o + 3] * a[o + 9] - a[o + 8] * a[o + 1] * a[o + 7] + a[o + 8] * a[o + 3] * a[o + 5];
+            a[15] = a[o] * a[o + 5] * a[o + 10] - a[o] * a[o + 6] * a[o + 9] - a[o + 4] * a[o + 1] * a[o + 10]
+                    + a[o + 4] * a[o + 2] * a[o + 9] + a[o + 8] * a[o + 1] * a[o + 6] - a[o + 8] * a[o + 2] * a[o + 5];
+
+            float det = a[o] * a[0] + a[o + 1] * a[4] + a[o + 2] * a[8] + a[o + 3] * a[12];
+            if (det == 0.0f) {
+                return false;
+            }
+            for (int i = 0; i < 16; ++i) {
+                mInv[mInvOffset + i] = a[i] / det;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.chris.apexvr;
+
+import android.opengl.Matrix;
+
+import com.example.chris.apexvr.apexGL.Frustum;
+import com.example.chris.apexvr.apexGL.mesh.ColouredInterleavedMesh;
+import com.example.chris.apexvr.apexGL.object.ColouredStaticObject;
+import com.example.chris.apexvr.apexGL.object.GLObject;
+import com.example.chris.apexvr.apexGL.object.MultiCSObject;
+import com.example.chris.apexvr.apexGL.object.Sky;
+import com.example.chris.apexvr.apexGL.object.TerrainObject;
+import com.example.chris.apexvr.apexGL.shader.GLProgram;
+import com.example.chris.apexvr.apexGL.shader.LightingExtention;
+import com.example.chris.apexvr.apexGL.world.GroundCreater;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Draws a scene shaped like the real one through the GL shim, which does
+ * nothing, so all that is left to check is the Java side of drawEye(): what
+ * is culled for which eye, how often the scene is walked, and allocation.
+ */
+public class ApexGraphicsTest {
+
+    private static final int TREES = 400;
+    private static final float NEAR = 0.1f;
+    private static final float FAR = 100.0f;
+    // Half the distance between the eyes
+    private static final float EYE_OFFSET = 0.03f;
+
+    /**
+     * Counts binds, standing in for the shadow map.
+     */
+    private static class CountingExtention implements LightingExtention {
+        int binds;
+
+        @Override
+        public void link(GLProgram program) {
+        }
+
+        @Override
+        public void bind(GLProgram program, float[] p, float[] v, float[] m) {
+            ++binds;
+        }
+    }
+
+    /**
+     * A point sized object that counts how often the scene is walked past it
+     * and how often it is drawn.
+     */
+    private static class Probe extends ColouredStaticObject {
+        final CountingExtention draws = new CountingExtention();
+        int prepares;
+
+        Probe(float x, float y, float z) {
+            super(new GLProgram(), point());
+            place(orientation, x, y, z);
+            addExtention(draws);
+        }
+
+        @Override
+        public boolean prepare(Frustum left, Frustum right) {
+            ++prepares;
+            return super.prepare(left, right);
+        }
+    }
+
+    private static ColouredInterleavedMesh point() {
+        return new ColouredInterleavedMesh(
+                FloatBuffer.allocate(3 * ColouredInterleavedMesh.FLOAT_STRIDE), IntBuffer.wrap(new int[]{0, 1, 2}));
+    }
+
+    /**
+     * Identity moved to x, y, z.
+     */
+    private static float[] place(float[] m, float x, float y, float z) {
+        Matrix.setIdentityM(m, 0);
+        Matrix.translateM(m, 0, x, y, z);
+        return m;
+    }
+
+    /**
+     * What Matrix.perspectiveM makes for 90 degrees and square, as
+     * FrustumTest builds it.
+     */
+    private static float[] perspective() {
+        float[] p = new float[16];
+        p[0] = 1.0f;
+        p[5] = 1.0f;
+        p[10] = -(FAR + NEAR) / (FAR - NEAR);
+        p[11] = -1.0f;
+        p[14] = -2.0f * FAR * NEAR / (FAR - NEAR);
+        return p;
+    }
+
+    /**
+     * Tiled ground and trees, the way loadAssets() builds them, with every
+     * other tree behind the eyes.
+     */
+    private static ApexGraphics scene(CountingExtention extention, GLObject... probes) {
+        GLProgram program = new GLProgram();
+
+        TerrainObject ground = new TerrainObject(program, new GroundCreater(240.0f, 200).getTerrainMesh(32, 4));
+        place(ground.getOrientation(), 0, -1.5f, 0);
+        ground.addExtention(extention);
+
+        MultiCSObject trees = new MultiCSObject(program, point());
+        place(trees.getOrientation(), 0, 0, 0);
+        trees.addExtention(extention);
+        for (int i = 0; i < TREES; ++i) {
+            float z = 1.0f + i * 0.2f;
+            trees.addSubObject(place(new float[16], 0, 0, i % 2 == 0 ? -z : z));
+        }
+
+        List<GLObject> objects = new ArrayList<>();
+        objects.add(ground);
+        objects.add(trees);
+        Collections.addAll(objects, probes);
+        return new ApexGraphics(objects, new Sky(program));
+    }
+
+    @Test
+    public void drawEyeDoesNotAllocate() {
+        Probe behind = new Probe(0, 0, 5.0f);
+        CountingExtention extention = new CountingExtention();
+        ApexGraphics graphics = scene(extention, behind);
+
+        float[] perspective = perspective();
+        float[] view = place(new float[16], 0, 0, 0);
+
+        int eyes = 20000;
+        for (int i = 0; i < eyes; ++i) {
+            graphics.drawEye(perspective, view);
+        }
+
+        extention.binds = 0;
+        long before = allocatedBytes();
+        for (int i = 0; i < eyes; ++i) {
+            graphics.drawEye(perspective, view);
+        }
+        long allocated = allocatedBytes() - before;
+
+        // The trees are instanced, one draw for all that are in front
+        assertEquals(eyes * 2, extention.binds);
+        assertEquals(0, behind.draws.binds);
+        assertTrue("drawEye allocated " + allocated + " bytes", allocated / (double) eyes < 1.0);
+    }
+
+    @Test
+    public void stereoFrameWalksSceneOnce() {
+        // Inside the left eye's frustum by 1cm and outside the right's
+        Probe leftOnly = new Probe(-1.0f - EYE_OFFSET + 0.01f, 0, -1.0f);
+        Probe ahead = new Probe(0, 0, -5.0f);
+        Probe behind = new Probe(0, 0, 5.0f);
+        CountingExtention extention = new CountingExtention();
+        ApexGraphics graphics = scene(extention, leftOnly, ahead, behind);
+
+        // Each view moves the world the other way from its eye
+        float[] perspective = perspective();
+        float[] leftView = place(new float[16], EYE_OFFSET, 0, 0);
+        float[] rightView = place(new float[16], -EYE_OFFSET, 0, 0);
+
+        // Each eye on its own culls differently
+        graphics.drawEye(perspective, leftView);
+        assertEquals(1, leftOnly.draws.binds);
+        graphics.drawEye(perspective, rightView);
+        assertEquals(1, leftOnly.draws.binds);
+        assertEquals(2, leftOnly.prepares);
+        assertEquals(2, ahead.draws.binds);
+        assertEquals(0, behind.draws.binds);
+
+        int frames = 10000;
+        for (int i = 0; i < frames; ++i) {
+            drawFrame(graphics, perspective, leftView, rightView);
+        }
+
+        extention.binds = 0;
+        for (Probe probe : new Probe[]{leftOnly, ahead, behind}) {
+            probe.prepares = 0;
+            probe.draws.binds = 0;
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < frames; ++i) {
+            drawFrame(graphics, perspective, leftView, rightView);
+        }
+        long allocated = allocatedBytes() - before;
+
+        // Walked once a frame, and what either eye sees is drawn for both
+        assertEquals(frames, leftOnly.prepares);
+        assertEquals(frames, behind.prepares);
+        assertEquals(frames * 2, leftOnly.draws.binds);
+        assertEquals(frames * 2, ahead.draws.binds);
+        assertEquals(0, behind.draws.binds);
+        assertEquals(frames * 2 * 2, extention.binds);
+        assertTrue("stereo frame allocated " + allocated + " bytes", allocated / (double) frames < 1.0);
+    }
+
+    private static void drawFrame(ApexGraphics graphics, float[] perspective, float[] leftView, float[] rightView) {
+        graphics.prepareEyes(perspective, leftView, perspective, rightView);
+        graphics.drawPreparedEye(perspective, leftView);
+        graphics.drawPreparedEye(perspective, rightView);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.chris.apexvr.apexGL;
+
+import android.opengl.Matrix;
+
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Culls spheres and boxes against a 90 degree frustum looking down -z from
+ * the origin, which sees exactly the points with |x| and |y| under -z.
+ */
+public class FrustumTest {
+
+    private static final float NEAR = 0.1f;
+    private static final float FAR = 100.0f;
+
+    private static Frustum lookingDownZ() {
+        Frustum frustum = new Frustum();
+        frustum.set(perspective());
+        return frustum;
+    }
+
+    /**
+     * What Matrix.perspectiveM makes for 90 degrees and square, written out
+     * so the planes can be read off it.
+     */
+    private static float[] perspective() {
+        float[] p = new float[16];
+        p[0] = 1.0f;
+        p[5] = 1.0f;
+        p[10] = -(FAR + NEAR) / (FAR - NEAR);
+        p[11] = -1.0f;
+        p[14] = -2.0f * FAR * NEAR / (FAR - NEAR);
+        return p;
+    }
+
+    @Test
+    public void findsEye() {
+        assertArrayEquals(new float[]{0, 0, 0}, lookingDownZ().getEye(), 1e-5f);
+
+        float[] view = new float[16];
+        Matrix.setLookAtM(view, 0, 3.0f, 1.5f, -2.0f, 0.0f, 0.0f, -10.0f, 0.0f, 1.0f, 0.0f);
+        float[] pv = new float[16];
+        Matrix.multiplyMM(pv, 0, perspective(), 0, view, 0);
+
+        Frustum frustum = new Frustum();
+        frustum.set(pv);
+        assertArrayEquals(new float[]{3.0f, 1.5f, -2.0f}, frustum.getEye(), 1e-4f);
+    }
+
+    @Test
+    public void cullsSpheres() {
+        Frustum frustum = lookingDownZ();
+
+        assertTrue(frustum.intersectsSphere(0, 0, -5, 0.5f));
+        // Straddling the right plane
+        assertTrue(frustum.intersectsSphere(5.4f, 0, -5, 0.5f));
+
+        assertFalse("behind", frustum.intersectsSphere(0, 0, 5, 0.5f));
+        assertFalse("right", frustum.intersectsSphere(10, 0, -5, 1.0f));
+        assertFalse("below", frustum.intersectsSphere(0, -10, -5, 1.0f));
+        assertFalse("past far", frustum.intersectsSphere(0, 0, -110, 1.0f));
+    }
+
+    @Test
+    public void cullsPlacedBoxes() {
+        Frustum frustum = lookingDownZ();
+        // A cube from -1 to 1, with normals interleaved
+        float[] vertices = {
+                -1, -1, -1, 0, 0, 0,
+                1, 1, 1, 0, 0, 0,
+                -1, 1, 1, 0, 0, 0,
+        };
+        Bounds bounds = Bounds.of(FloatBuffer.wrap(vertices), 6);
+        assertArrayEquals(new float[]{0, 0, 0}, bounds.center, 0.0f);
+        assertArrayEquals(new float[]{1, 1, 1}, bounds.extent, 0.0f);
+        assertEquals((float) Math.sqrt(3), bounds.radius, 1e-6f);
+
+        float[] model = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, -5, 1};
+        assertTrue(frustum.intersectsBox(model, bounds));
+
+        // Centre outside, one corner in
+        model[12] = 3.9f;
+        model[14] = -3.0f;
+        assertTrue(frustum.intersectsBox(model, bounds));
+
+        model[12] = 0.0f;
+        model[14] = 3.0f;
+        assertFalse("behind", frustum.intersectsBox(model, bounds));
+
+        // Scaled up by the model it reaches back in
+        model[0] = model[5] = model[10] = 4.0f;
+        assertTrue(frustum.intersectsBox(model, bounds));
+    }
+}
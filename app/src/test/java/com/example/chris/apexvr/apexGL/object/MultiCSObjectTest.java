@@ -0,0 +1,71 @@
+package com.example.chris.apexvr.apexGL.object;
+
+import android.opengl.Matrix;
+
+import com.example.chris.apexvr.apexGL.Frustum;
+import com.example.chris.apexvr.apexGL.mesh.ColouredInterleavedMesh;
+import com.example.chris.apexvr.apexGL.shader.GLProgram;
+import com.example.chris.apexvr.apexGL.shader.Shadow;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ten point sized sub objects down the z axis, five in front of an eye at
+ * the origin looking down -z and five behind it.
+ */
+public class MultiCSObjectTest {
+
+    private static MultiCSObject row() {
+        MultiCSObject row = new MultiCSObject(new GLProgram(), new ColouredInterleavedMesh(
+                FloatBuffer.allocate(3 * ColouredInterleavedMesh.FLOAT_STRIDE), IntBuffer.wrap(new int[]{0, 1, 2})));
+        Matrix.setIdentityM(row.getOrientation(), 0);
+        for (int i = -5; i < 5; ++i) {
+            float[] m = new float[16];
+            Matrix.setIdentityM(m, 0);
+            Matrix.translateM(m, 0, 0, 0, i + 0.5f);
+            row.addSubObject(m);
+        }
+        return row;
+    }
+
+    private static Frustum lookingDownZ() {
+        // 90 degrees and square, 100m far
+        float near = 0.1f;
+        float far = 100.0f;
+        float[] p = new float[16];
+        p[0] = 1.0f;
+        p[5] = 1.0f;
+        p[10] = -(far + near) / (far - near);
+        p[11] = -1.0f;
+        p[14] = -2.0f * far * near / (far - near);
+        Frustum frustum = new Frustum();
+        frustum.set(p);
+        return frustum;
+    }
+
+    @Test
+    public void packsOnlyInstancesInView() {
+        MultiCSObject row = row();
+
+        assertTrue(row.prepare(lookingDownZ(), null));
+        assertEquals(5, row.getInstanceCount());
+
+        assertTrue(row.prepare(null, null));
+        assertEquals(10, row.getInstanceCount());
+    }
+
+    @Test
+    public void shadowLeavesFramesInstancesBe() {
+        MultiCSObject row = row();
+        Shadow shadow = new Shadow(new GLProgram(), new GLProgram(), new float[]{0.0f, 1.0f, 0.2f}, 60.0f, 60.0f);
+
+        assertTrue(row.prepare(lookingDownZ(), null));
+        row.drawShadow(shadow);
+        assertEquals(5, row.getInstanceCount());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.chris.apexvr.apexGL.object;
+
+import android.opengl.Matrix;
+
+import com.example.chris.apexvr.apexGL.Frustum;
+import com.example.chris.apexvr.apexGL.shader.GLProgram;
+import com.example.chris.apexvr.apexGL.world.GroundCreater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flat 240m ground in 7 by 7 tiles of 32 cells, tile tx * 7 + tz covering
+ * x from -120 + 38.6 * tx, and z the same way.
+ */
+public class TerrainObjectTest {
+
+    private static final int CENTRE = 3 * 7 + 3;
+    private static final int CORNER = 0;
+    private static final int NEAR_CORNER = 1 * 7 + 1;
+
+    private static TerrainObject terrain() {
+        return new TerrainObject(new GLProgram(), new GroundCreater(240.0f, 200).getTerrainMesh(32, 4));
+    }
+
+    /**
+     * 90 degrees looking down -z from an eye at x, 0, z, 100m far.
+     */
+    private static Frustum eyeAt(float x, float z) {
+        float[] pv = perspective();
+        Matrix.translateM(pv, 0, -x, 0, -z);
+        Frustum frustum = new Frustum();
+        frustum.set(pv);
+        return frustum;
+    }
+
+    private static float[] perspective() {
+        float near = 0.1f;
+        float far = 100.0f;
+        float[] p = new float[16];
+        p[0] = 1.0f;
+        p[5] = 1.0f;
+        p[10] = -(far + near) / (far - near);
+        p[11] = -1.0f;
+        p[14] = -2.0f * far * near / (far - near);
+        return p;
+    }
+
+    @Test
+    public void levelsCoarsenWithDistance() {
+        TerrainObject terrain = terrain();
+
+        assertTrue(terrain.prepare(eyeAt(0, 0), null));
+        assertEquals(0, terrain.getTileLevel(CENTRE));
+        assertEquals(3, terrain.getTileLevel(CORNER));
+
+        // Stood near the corner instead
+        assertTrue(terrain.prepare(eyeAt(-100.0f, -100.0f), null));
+        assertEquals(0, terrain.getTileLevel(CORNER));
+        assertEquals(1, terrain.getTileLevel(NEAR_CORNER));
+        assertEquals(3, terrain.getTileLevel(CENTRE));
+    }
+
+    @Test
+    public void eyesShareLevelsFromBetweenThem() {
+        TerrainObject terrain = terrain();
+        TerrainObject centred = terrain();
+
+        // Eyes far enough apart that either alone picks other levels
+        assertTrue(centred.prepare(eyeAt(0, 0), null));
+        assertTrue(terrain.prepare(eyeAt(-40.0f, 0), null));
+        assertEquals(1, terrain.getTileLevel(CENTRE));
+
+        assertTrue(terrain.prepare(eyeAt(-40.0f, 0), eyeAt(40.0f, 0)));
+        for (int t = 0; t < 7 * 7; ++t) {
+            assertEquals("tile " + t, centred.getTileLevel(t), terrain.getTileLevel(t));
+        }
+
+        // and drawing an eye leaves them be
+        float[] view = new float[16];
+        Matrix.setIdentityM(view, 0);
+        Matrix.translateM(view, 0, 40.0f, 0, 0);
+        terrain.drawPrepared(perspective(), view);
+        assertEquals(0, terrain.getTileLevel(CENTRE));
+    }
+
+    @Test
+    public void cullsTilesOutOfView() {
+        TerrainObject terrain = terrain();
+
+        assertTrue(terrain.prepare(eyeAt(0, 0), null));
+        assertTrue(terrain.isTileVisible(CENTRE));
+        assertTrue("ahead", terrain.isTileVisible(3 * 7 + 1));
+        assertFalse("behind", terrain.isTileVisible(3 * 7 + 6));
+        assertFalse("off to the side", terrain.isTileVisible(3));
+    }
+}
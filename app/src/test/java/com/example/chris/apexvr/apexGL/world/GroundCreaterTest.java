@@ -0,0 +1,114 @@
+package com.example.chris.apexvr.apexGL.world;
+
+import com.example.chris.apexvr.apexGL.mesh.Bounds;
+import com.example.chris.apexvr.apexGL.mesh.ColouredInterleavedMesh;
+import com.example.chris.apexvr.apexGL.mesh.TerrainMesh;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cuts the ground ApexGraphics makes into tiles and checks every level of
+ * every tile against the grid it came from.
+ */
+public class GroundCreaterTest {
+
+    private static final int WIDTH = 200;
+    private static final int TILE_CELLS = 32;
+    private static final int LEVELS = 4;
+
+    private static TerrainMesh terrain() {
+        GroundCreater groundCreater = new GroundCreater(240.0f, WIDTH);
+        groundCreater.perturb(5.0f, 0.5f, 6, 6);
+        return groundCreater.getTerrainMesh(TILE_CELLS, LEVELS);
+    }
+
+    @Test
+    public void levelsCoverTheGroundWithFewerTriangles() {
+        TerrainMesh mesh = terrain();
+        // 199 cells a side, six tiles of 32 and one of 7
+        assertEquals(49, mesh.getTileCount());
+
+        int vertices = mesh.vertices.limit() / ColouredInterleavedMesh.FLOAT_STRIDE;
+        double[] surface = new double[LEVELS];
+        for (int t = 0; t < mesh.getTileCount(); ++t) {
+            for (int level = 0; level < LEVELS; ++level) {
+                int first = mesh.getFirstIndex(t, level);
+                int count = mesh.getIndexCount(t, level);
+                assertEquals(0, count % 3);
+                if (level > 0) {
+                    assertTrue("tile " + t + " level " + level, count < mesh.getIndexCount(t, level - 1));
+                }
+
+                for (int i = first; i < first + count; i += 3) {
+                    boolean onGrid = true;
+                    for (int k = 0; k < 3; ++k) {
+                        int index = mesh.indexes.get(i + k);
+                        assertTrue(index >= 0 && index < vertices);
+                        onGrid &= index < WIDTH * WIDTH;
+                    }
+                    if (onGrid) {
+                        surface[level] += area(mesh, i);
+                    }
+                }
+            }
+        }
+
+        // Every level still spans the whole 240m square, skirts aside
+        for (int level = 0; level < LEVELS; ++level) {
+            assertEquals("level " + level, 240.0 * 240.0, surface[level], 0.5);
+        }
+    }
+
+    @Test
+    public void skirtsHangBelowTheirTile() {
+        TerrainMesh mesh = terrain();
+
+        for (int t = 0; t < mesh.getTileCount(); ++t) {
+            Bounds bounds = mesh.getTileBounds(t);
+            float lowestGround = Float.POSITIVE_INFINITY;
+            float highestSkirt = Float.NEGATIVE_INFINITY;
+
+            int first = mesh.getFirstIndex(t, 0);
+            for (int i = first; i < first + mesh.getIndexCount(t, 0); ++i) {
+                int index = mesh.indexes.get(i);
+                float x = mesh.vertices.get(index * ColouredInterleavedMesh.FLOAT_STRIDE);
+                float y = mesh.vertices.get(index * ColouredInterleavedMesh.FLOAT_STRIDE + 1);
+                float z = mesh.vertices.get(index * ColouredInterleavedMesh.FLOAT_STRIDE + 2);
+
+                assertTrue(x >= bounds.min[0] - 1e-3f && x <= bounds.max[0] + 1e-3f);
+                assertTrue(y >= bounds.min[1] - 1e-3f && y <= bounds.max[1] + 1e-3f);
+                assertTrue(z >= bounds.min[2] - 1e-3f && z <= bounds.max[2] + 1e-3f);
+
+                if (index < WIDTH * WIDTH) {
+                    lowestGround = Math.min(lowestGround, y);
+                } else {
+                    highestSkirt = Math.max(highestSkirt, y);
+                    // Straight down from an edge of the tile
+                    boolean onEdge = Math.abs(x - bounds.min[0]) < 1e-3f || Math.abs(x - bounds.max[0]) < 1e-3f
+                            || Math.abs(z - bounds.min[2]) < 1e-3f || Math.abs(z - bounds.max[2]) < 1e-3f;
+                    assertTrue("tile " + t, onEdge);
+                }
+            }
+
+            // Deep enough to fill whatever gap a neighbour's level leaves
+            assertTrue("tile " + t, highestSkirt < lowestGround);
+        }
+    }
+
+    /**
+     * Square metres the triangle at index i covers from above.
+     */
+    private static double area(TerrainMesh mesh, int i) {
+        float[] x = new float[3];
+        float[] z = new float[3];
+        for (int k = 0; k < 3; ++k) {
+            int index = mesh.indexes.get(i + k);
+            x[k] = mesh.vertices.get(index * ColouredInterleavedMesh.FLOAT_STRIDE);
+            z[k] = mesh.vertices.get(index * ColouredInterleavedMesh.FLOAT_STRIDE + 2);
+        }
+        double cross = (x[1] - x[0]) * (z[2] - z[0]) - (x[2] - x[0]) * (z[1] - z[0]);
+        return 0.5 * Math.abs(cross);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.chris.apexvr.filtering;
+
+import android.opengl.Matrix;
+
+import org.junit.Test;
+
+import io.github.apexhaptics.apexhapticsdisplay.JointHistory;
+import io.github.apexhaptics.apexhapticsdisplay.MarkerHistory;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+
+import static org.junit.Assert.*;
+
+/**
+ * Steps ApexSensors through a player walking slowly about in front of the
+ * Kinect with the head marker on, the Kinect level and the phone looking
+ * straight ahead, so the world ends up where the Kinect space is.
+ */
+public class ApexSensorsTest {
+
+    private static final long SAMPLE_NANOS = 33333333L;
+    private static final int SAMPLES = 30 * 4;
+    private static final int HEAD = Joint.JointType.Head.ordinal();
+
+    // Where the hands are held, from the head
+    private static final float[] LEFT_HAND = {-0.3f, -0.3f, -0.3f};
+    private static final float[] RIGHT_HAND = {0.3f, -0.3f, -0.3f};
+
+    private final JointHistory joints = new JointHistory("joints", 64);
+    private final MarkerHistory heads = new MarkerHistory("heads", 64);
+    private final JointPacket packet = new JointPacket();
+    private final float[] head = new float[3];
+    private final float[] marker = new float[16];
+    private final float[] headView = new float[16];
+
+    public ApexSensorsTest() {
+        Matrix.setIdentityM(headView, 0);
+        // Facing back at the Kinect
+        Matrix.setRotateM(marker, 0, 180.0f, 0, 1, 0);
+    }
+
+    @Test
+    public void waitsForSkeletonAndMarker() {
+        ApexSensors sensors = new ApexSensors();
+        long start = System.nanoTime();
+
+        // The marker rotation has not been seen yet
+        addSkeleton(start, 0);
+        sensors.step(headView, heads, joints);
+        assertFalse(sensors.isReady());
+
+        addMarker(start + SAMPLE_NANOS);
+        addSkeleton(start + SAMPLE_NANOS, 1);
+        sensors.step(headView, heads, joints);
+        assertTrue(sensors.isReady());
+    }
+
+    @Test
+    public void followsHeadAndHandsInTheWorld() throws Exception {
+        ApexSensors sensors = new ApexSensors();
+        // Stamped as if sampled up to now, so the hands are not timed out
+        long start = System.nanoTime() - SAMPLES * SAMPLE_NANOS;
+
+        for (int i = 0; i < SAMPLES; ++i) {
+            long capture = start + i * SAMPLE_NANOS;
+            addMarker(capture);
+            addSkeleton(capture, i);
+            sensors.step(headView, heads, joints);
+        }
+        assertTrue(sensors.isReady());
+        assertTrue(sensors.isLeftHandVisible());
+        assertTrue(sensors.isRightHandVisible());
+
+        // The view puts the predicted head at the eye, whatever it turned the world by
+        float[] view = sensors.getHeadTransform();
+        float[] eye = new float[4];
+        Matrix.multiplyMV(eye, 0, view, 0, new float[]{head[0], head[1], head[2], 1}, 0);
+        assertEquals(0.0f, length(eye), 0.05f);
+        Matrix.multiplyMV(eye, 0, view, 0, new float[]{head[0], head[1] + 1.0f, head[2], 1}, 0);
+        assertEquals(1.0f, length(eye), 0.05f);
+
+        // Smoothed skeleton in the world
+        float[] skeleton = sensors.getSkeleton();
+        int skeletonHead = HEAD * 3;
+        for (int i = 0; i < 3; ++i) {
+            assertEquals("head " + i, head[i], skeleton[skeletonHead + i], 0.05f);
+        }
+
+        // Hand models placed at the hands
+        for (int i = 0; i < 3; ++i) {
+            assertEquals("left hand " + i, head[i] + LEFT_HAND[i], sensors.getLeftHand()[12 + i], 0.05f);
+            assertEquals("right hand " + i, head[i] + RIGHT_HAND[i], sensors.getRigthHand()[12 + i], 0.05f);
+        }
+    }
+
+    /**
+     * A skeleton sample, the head circling slowly two metres out.
+     */
+    private void addSkeleton(long capture, int sample) {
+        double t = sample * SAMPLE_NANOS / 1e9;
+        head[0] = (float) (0.2 * Math.sin(0.5 * t));
+        head[1] = (float) (1.6 + 0.05 * Math.sin(1.1 * t));
+        head[2] = (float) (2.0 + 0.2 * Math.cos(0.5 * t));
+
+        for (Joint.JointType type : Joint.JointType.values()) {
+            float[] offset = type == Joint.JointType.HandLeft ? LEFT_HAND
+                    : type == Joint.JointType.HandRight ? RIGHT_HAND : null;
+            // The rest of the body hangs below the head
+            float drop = offset == null ? -Math.abs(type.ordinal() - HEAD) * 0.08f : offset[1];
+            packet.addJoint(type, Joint.JointTrackingState.Tracked,
+                    head[0] + (offset == null ? 0 : offset[0]),
+                    head[1] + drop,
+                    head[2] + (offset == null ? 0 : offset[2]));
+        }
+        packet.captureNanos = capture;
+        packet.readNanos = capture;
+        joints.append(packet);
+    }
+
+    /**
+     * A head marker sample where the last skeleton put the head.
+     */
+    private void addMarker(long capture) {
+        heads.append(capture, capture, head[0], head[1], head[2], marker);
+    }
+
+    private static float length(float[] v) {
+        return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    }
+}
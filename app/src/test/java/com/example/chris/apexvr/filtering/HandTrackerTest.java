@@ -0,0 +1,101 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds HandTracker scripted joint tracks at the Kinect rate.
+ */
+public class HandTrackerTest {
+
+    private static final float DT = 1.0f / 30.0f;
+
+    private static final Joint.JointTrackingState TRACKED = Joint.JointTrackingState.Tracked;
+    private static final Joint.JointTrackingState INFERRED = Joint.JointTrackingState.Inferred;
+    private static final Joint.JointTrackingState NOT_TRACKED = Joint.JointTrackingState.NotTracked;
+
+    @Test
+    public void followsTrackedHand() {
+        HandTracker tracker = newTracker();
+        assertFalse(tracker.isVisible());
+
+        for (int i = 0; i < 30; ++i) {
+            assertEquals(HandTracker.Status.Tracked, tracker.update(TRACKED, 0.5f, 1.0f, 2.0f, DT));
+        }
+        assertTrue(tracker.isVisible());
+        assertEquals(1.0f, tracker.getPosition()[1], 1e-4f);
+    }
+
+    @Test
+    public void coastsThenLosesUntrackedHand() {
+        HandTracker tracker = newTracker();
+        // Moving at 1 m/s along x
+        float x = 0;
+        for (int i = 0; i < 30; ++i, x += DT) {
+            tracker.update(TRACKED, x, 1.0f, 2.0f, DT);
+        }
+        float lastX = tracker.getPosition()[0];
+
+        assertEquals(HandTracker.Status.Coasting, tracker.update(NOT_TRACKED, 0, 0, 0, DT));
+        assertEquals(HandTracker.Status.Coasting, tracker.update(null, 0, 0, 0, DT));
+        assertTrue(tracker.isVisible());
+        // Carried on forward instead of jumping to the zeros
+        assertTrue(tracker.getPosition()[0] > lastX);
+        assertEquals(1.0f, tracker.getPosition()[1], 1e-3f);
+
+        for (int i = 0; i < 10; ++i) {
+            tracker.update(NOT_TRACKED, 0, 0, 0, DT);
+        }
+        assertEquals(HandTracker.Status.Lost, tracker.getStatus());
+        assertFalse(tracker.isVisible());
+
+        // Picked straight back up where it reappears
+        assertEquals(HandTracker.Status.Tracked, tracker.update(TRACKED, -0.3f, 1.2f, 1.5f, DT));
+        assertEquals(-0.3f, tracker.getPosition()[0], 0);
+    }
+
+    @Test
+    public void rejectsSingleOutliersButFollowsRealJumps() {
+        HandTracker tracker = newTracker();
+        for (int i = 0; i < 30; ++i) {
+            tracker.update(TRACKED, 0.5f, 1.0f, 2.0f, DT);
+        }
+
+        // One bad skeleton frame, a metre off
+        assertEquals(HandTracker.Status.Coasting, tracker.update(TRACKED, 1.5f, 1.0f, 2.0f, DT));
+        assertEquals(0.5f, tracker.getPosition()[0], 1e-3f);
+        assertEquals(HandTracker.Status.Tracked, tracker.update(TRACKED, 0.5f, 1.0f, 2.0f, DT));
+
+        // Keeps saying so, so believe it
+        tracker.update(TRACKED, 1.5f, 1.0f, 2.0f, DT);
+        tracker.update(TRACKED, 1.5f, 1.0f, 2.0f, DT);
+        assertEquals(HandTracker.Status.Tracked, tracker.update(TRACKED, 1.5f, 1.0f, 2.0f, DT));
+        assertEquals(1.5f, tracker.getPosition()[0], 1e-3f);
+    }
+
+    @Test
+    public void smoothsInferredHarder() {
+        HandTracker tracked = newTracker();
+        HandTracker inferred = newTracker();
+        for (int i = 0; i < 30; ++i) {
+            tracked.update(TRACKED, 0.5f, 1.0f, 2.0f, DT);
+            inferred.update(TRACKED, 0.5f, 1.0f, 2.0f, DT);
+        }
+
+        // A small step, inside the gate for both
+        tracked.update(TRACKED, 0.55f, 1.0f, 2.0f, DT);
+        assertEquals(HandTracker.Status.Inferred, inferred.update(INFERRED, 0.55f, 1.0f, 2.0f, DT));
+
+        float trackedMoved = tracked.getPosition()[0] - 0.5f;
+        float inferredMoved = inferred.getPosition()[0] - 0.5f;
+        assertTrue(inferredMoved > 0);
+        assertTrue(inferredMoved < trackedMoved);
+    }
+
+    private static HandTracker newTracker() {
+        return new HandTracker();
+    }
+}
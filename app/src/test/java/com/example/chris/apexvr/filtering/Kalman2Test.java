@@ -0,0 +1,117 @@
+package com.example.chris.apexvr.filtering;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks Kalman2 against the SimpleMatrix filter it replaced, and reports
+ * what a frame's worth of filtering costs.
+ */
+public class Kalman2Test {
+
+    private static final int STEPS = 2000;
+
+    @Test
+    public void matchesMatrixYawFilter() {
+        checkParity(0, 1.5708, 4, .01, 3.1416, 0.01, false);
+    }
+
+    @Test
+    public void matchesMatrixPositionFilter() {
+        checkParity(0, 1.5, 0.1, 0.3, 1, 1, false);
+    }
+
+    @Test
+    public void matchesMatrixFilterWithChangingNoise() {
+        checkParity(0, 1.5, 0.1, 0.3, 1, 1, true);
+    }
+
+    @Test
+    public void frameOfFilteringDoesNotAllocate() {
+        Kalman2[] filters = new Kalman2[4];
+        for (int i = 0; i < filters.length; ++i) {
+            filters[i] = new Kalman2(0, 1.5, 0.1, 0.3);
+            filters[i].reset(0, 0, 1, 1);
+        }
+
+        int frames = 1000000;
+        double sink = runFrames(filters, frames);
+
+        long before = allocatedBytes();
+        sink += runFrames(filters, frames);
+        long allocated = allocatedBytes() - before;
+
+        assertFalse(Double.isNaN(sink));
+        assertTrue("Kalman2 allocated " + allocated + " bytes", allocated / (double) frames < 1.0);
+    }
+
+    private static double runFrames(Kalman2[] filters, int frames) {
+        double sink = 0;
+        for (int f = 0; f < frames; ++f) {
+            double z = Math.sin(f * 0.01);
+            for (Kalman2 filter : filters) {
+                filter.step(z, 0.01);
+                sink += filter.getValue();
+            }
+        }
+        return sink;
+    }
+
+    private static void checkParity(double q0, double q1, double r0, double r1,
+                                    double p0, double p1, boolean changingNoise) {
+        Random random = new Random(7);
+
+        Kalman2 filter = new Kalman2(q0, q1, r0, r1);
+        filter.reset(0.5, 0, p0, p1);
+
+        SimpleMatrix A = new SimpleMatrix(2, 2, true, 1, 1, 0, 1);
+        SimpleMatrix C = SimpleMatrix.identity(2);
+        SimpleMatrix Q = new SimpleMatrix(2, 2, true, q0, 0, 0, q1);
+        SimpleMatrix R = new SimpleMatrix(2, 2, true, r0, 0, 0, r1);
+        SimpleMatrix x = new SimpleMatrix(2, 1, true, 0.5, 0);
+        SimpleMatrix P = new SimpleMatrix(2, 2, true, p0, 0, 0, p1);
+
+        double value = 0.5;
+        for (int i = 0; i < STEPS; ++i) {
+            double change = random.nextGaussian() * 0.05;
+            value += change;
+            double measured = value + random.nextGaussian() * 0.1;
+            double measuredChange = change + random.nextGaussian() * 0.02;
+
+            if (changingNoise) {
+                double rChange = i % 7 < 3 ? r1 * 4 : r1;
+                filter.setMeasurementNoise(r0, rChange);
+                R = new SimpleMatrix(2, 2, true, r0, 0, 0, rChange);
+            }
+
+            filter.step(measured, measuredChange);
+
+            SimpleMatrix xk = A.mult(x);
+            P.set(A.mult(P.mult(A.transpose())).plus(Q));
+            SimpleMatrix z = new SimpleMatrix(2, 1, false, measured, measuredChange);
+            SimpleMatrix yk = z.minus(C.mult(xk));
+            SimpleMatrix s = C.mult(P.mult(C.transpose())).plus(R);
+            SimpleMatrix k = P.mult(C.transpose()).mult(s.invert());
+            x.set(xk.plus(k.mult(yk)));
+            P.set(SimpleMatrix.identity(2).minus(k.mult(C)).mult(P));
+
+            assertEquals(x.get(0), filter.getValue(), 1e-9);
+            assertEquals(x.get(1), filter.getVelocity(), 1e-9);
+            for (int r = 0; r < 2; ++r) {
+                for (int c = 0; c < 2; ++c) {
+                    assertEquals(P.get(r, c), filter.getCovariance(r, c), 1e-9);
+                }
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
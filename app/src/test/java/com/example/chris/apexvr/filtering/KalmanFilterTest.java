@@ -0,0 +1,125 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the motion models against simulated tracks, and reports what the
+ * filter costs at the sizes ApexVR uses.
+ */
+public class KalmanFilterTest {
+
+    private static final double DT = 1.0 / 30.0;
+
+    @Test
+    public void constantVelocityFindsVelocity() {
+        Random random = new Random(3);
+        KalmanFilter filter = new KalmanFilter(new KalmanFilter.ConstantVelocity(2, 0.001), 2);
+        filter.setMeasurementNoise(1e-4);
+        filter.reset(new double[]{0, 0}, 1);
+
+        double[] z = new double[2];
+        for (int i = 1; i <= 300; ++i) {
+            double t = i * DT;
+            z[0] = 0.5 * t + random.nextGaussian() * 0.01;
+            z[1] = 2.0 - 0.25 * t + random.nextGaussian() * 0.01;
+            filter.predict(DT);
+            assertTrue(filter.update(z));
+        }
+
+        assertEquals(0.5 * 10, filter.get(0), 0.02);
+        assertEquals(2.0 - 0.25 * 10, filter.get(1), 0.02);
+        assertEquals(0.5, filter.get(2), 0.05);
+        assertEquals(-0.25, filter.get(3), 0.05);
+    }
+
+    @Test
+    public void constantAccelerationFindsAcceleration() {
+        Random random = new Random(5);
+        KalmanFilter filter = new KalmanFilter(new KalmanFilter.ConstantAcceleration(1, 0.1), 1);
+        filter.setMeasurementNoise(1e-6);
+        filter.reset(new double[]{0}, 1);
+
+        double[] z = new double[1];
+        for (int i = 1; i <= 300; ++i) {
+            double t = i * DT;
+            z[0] = 0.2 * t + 0.75 * t * t + random.nextGaussian() * 0.001;
+            filter.predict(DT);
+            filter.update(z);
+        }
+
+        assertEquals(0.2 + 1.5 * 10, filter.get(1), 0.1);
+        assertEquals(1.5, filter.get(2), 0.1);
+    }
+
+    @Test
+    public void linearizedUpdateMatchesLinearUpdate() {
+        KalmanFilter linear = new KalmanFilter(new KalmanFilter.ConstantVelocity(3, 5.0), 3);
+        KalmanFilter extended = new KalmanFilter(new KalmanFilter.ConstantVelocity(3, 5.0), 3);
+        linear.setMeasurementNoise(0.01);
+        extended.setMeasurementNoise(0.01);
+        linear.reset(new double[]{1, 2, 3}, 0.5);
+        extended.reset(new double[]{1, 2, 3}, 0.5);
+
+        double[] z = new double[3];
+        double[] predicted = new double[3];
+        for (int i = 0; i < 50; ++i) {
+            z[0] = 1 + i * 0.01;
+            z[1] = 2 - i * 0.02;
+            z[2] = 3 + Math.sin(i * 0.1);
+            linear.predict(DT);
+            extended.predict(DT);
+
+            // The measurement function is just the positions here, so its Jacobian is the default H
+            predicted[0] = extended.get(0);
+            predicted[1] = extended.get(1);
+            predicted[2] = extended.get(2);
+            linear.update(z);
+            extended.update(z, predicted);
+        }
+
+        for (int i = 0; i < linear.getStateSize(); ++i) {
+            assertEquals(linear.get(i), extended.get(i), 1e-12);
+        }
+    }
+
+    @Test
+    public void stepDoesNotAllocate() {
+        KalmanFilter filter = new KalmanFilter(new KalmanFilter.ConstantVelocity(3, 20.0), 3);
+        filter.setMeasurementNoise(0.0004);
+        filter.reset(new double[]{0, 0, 0}, 0.01);
+
+        int steps = 200000;
+        double[] z = new double[3];
+        double sink = run(filter, z, steps);
+
+        long before = allocatedBytes();
+        sink += run(filter, z, steps);
+        long allocated = allocatedBytes() - before;
+
+        assertFalse(Double.isNaN(sink));
+        assertTrue("Kalman filter allocated " + allocated + " bytes", allocated / (double) steps < 1.0);
+    }
+
+    private static double run(KalmanFilter filter, double[] z, int steps) {
+        double sink = 0;
+        for (int i = 0; i < steps; ++i) {
+            z[0] = Math.sin(i * 0.01);
+            z[1] = Math.cos(i * 0.01);
+            z[2] = 0.5;
+            filter.predict(DT);
+            filter.update(z);
+            sink += filter.get(0);
+        }
+        return sink;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
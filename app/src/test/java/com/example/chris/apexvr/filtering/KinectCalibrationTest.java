@@ -0,0 +1,109 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds KinectCalibration samples from a Kinect with a known pose and checks
+ * it finds that pose again.
+ */
+public class KinectCalibrationTest {
+
+    // Solves on the calling thread, so results are there straight after the samples
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void findsSkeletonToMarkerTransform() {
+        Random random = new Random(19);
+        Quaternion rotation = new Quaternion().setAxisAngle(0.6f, 0.0f, 0.8f, 0.2f);
+        float[] transform = new float[16];
+        rotation.toMatrix(transform, 0);
+        transform[12] = 0.05f;
+        transform[13] = -0.12f;
+        transform[14] = 0.3f;
+
+        KinectCalibration calibration = new KinectCalibration(DIRECT);
+        float[] skeleton = new float[3];
+        float[] marker = new float[3];
+        for (int i = 0; i < 600; ++i) {
+            // The player wanders about a couple of metres in front of the Kinect
+            skeleton[0] = (random.nextFloat() - 0.5f) * 1.5f;
+            skeleton[1] = 1.5f + (random.nextFloat() - 0.5f) * 0.5f;
+            skeleton[2] = 2.0f + (random.nextFloat() - 0.5f) * 1.5f;
+            KinectCalibration.transformPoints(transform, skeleton, 0, marker, 0, 1);
+            for (int j = 0; j < 3; ++j) {
+                marker[j] += (float) random.nextGaussian() * 0.01f;
+            }
+            calibration.addHeadPair(skeleton, 0, marker, 0);
+        }
+
+        assertTrue(calibration.update());
+        float[] solved = calibration.getSkeletonToWorld();
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("element " + i, transform[i], solved[i], 0.01f);
+        }
+    }
+
+    @Test
+    public void findsKinectTilt() {
+        Random random = new Random(23);
+        // Kinect space to world, pitched down 10 degrees and rolled 3
+        Quaternion kinectToWorld = new Quaternion().setAxisAngle(1, 0, 0, (float) Math.toRadians(-10));
+        kinectToWorld.multiply(new Quaternion().setAxisAngle(0, 0, 1, (float) Math.toRadians(3)), kinectToWorld);
+        Quaternion worldToKinect = new Quaternion().set(kinectToWorld).conjugate();
+        Quaternion markerToHead = new Quaternion().setAxisAngle(0, 1, 0, (float) Math.PI);
+        // The phone's heading is arbitrary
+        Quaternion phoneYaw = new Quaternion().setAxisAngle(0, 1, 0, 1.3f);
+
+        KinectCalibration calibration = new KinectCalibration(DIRECT);
+        Quaternion head = new Quaternion();
+        Quaternion scratch = new Quaternion();
+        float[] headView = new float[16];
+        float[] marker = new float[16];
+        for (int i = 0; i < 300; ++i) {
+            head.set((float) random.nextGaussian() * 0.3f, (float) random.nextGaussian(),
+                    (float) random.nextGaussian() * 0.3f, 1.0f).normalize();
+
+            scratch.multiply(phoneYaw, head).conjugate().toMatrix(headView, 0);
+            scratch.multiply(worldToKinect, head).multiply(scratch, markerToHead).toMatrix(marker, 0);
+            calibration.addUp(headView, 0, marker, 0);
+        }
+
+        assertTrue(calibration.update());
+        float[] solved = calibration.getKinectToWorld();
+
+        // The Kinect's up comes out as the world's up
+        float[] up = new float[16];
+        worldToKinect.toMatrix(up, 0);
+        float[] kinectUp = {up[4], up[5], up[6]};
+        KinectCalibration.transformPoints(solved, kinectUp, 0, kinectUp, 0, 1);
+        assertEquals(0.0f, kinectUp[0], 1e-3f);
+        assertEquals(1.0f, kinectUp[1], 1e-3f);
+        assertEquals(0.0f, kinectUp[2], 1e-3f);
+    }
+
+    @Test
+    public void staysPutWithoutSpread() {
+        KinectCalibration calibration = new KinectCalibration(DIRECT);
+        float[] skeleton = {0.1f, 1.5f, 2.0f};
+        float[] marker = {0.15f, 1.6f, 2.0f};
+        for (int i = 0; i < 300; ++i) {
+            calibration.addHeadPair(skeleton, 0, marker, 0);
+        }
+
+        // A player standing still only pins down the offset
+        assertTrue(calibration.update());
+        float[] solved = calibration.getSkeletonToWorld();
+        float[] expected = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0.05f, 0.1f, 0, 1};
+        assertArrayEquals(expected, solved, 1e-4f);
+    }
+}
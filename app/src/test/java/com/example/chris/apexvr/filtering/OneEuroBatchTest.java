@@ -0,0 +1,102 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks OneEuroBatch against one OneEuro per channel, and compares what the
+ * two cost over a whole skeleton.
+ */
+public class OneEuroBatchTest {
+
+    // Twenty joints, x, y and z each
+    private static final int CHANNELS = 60;
+
+    @Test
+    public void matchesOneEuroPerChannel() {
+        Random random = new Random(17);
+        OneEuro[] single = new OneEuro[CHANNELS];
+        for (int i = 0; i < CHANNELS; ++i) {
+            single[i] = new OneEuro(15.0f, 0.2f, 3.0f);
+        }
+        OneEuroBatch batch = new OneEuroBatch(CHANNELS, 15.0f, 0.2f, 3.0f);
+
+        float[] in = new float[CHANNELS];
+        float[] out = new float[CHANNELS];
+        for (int frame = 0; frame < 500; ++frame) {
+            // Uneven intervals, with the odd missing one
+            float dt = frame % 50 == 7 ? 0.0f : 0.03f + random.nextFloat() * 0.01f;
+            for (int i = 0; i < CHANNELS; ++i) {
+                in[i] = (float) Math.sin(frame * 0.02 + i) + (float) random.nextGaussian() * 0.01f;
+            }
+
+            batch.filter(in, out, dt);
+            for (int i = 0; i < CHANNELS; ++i) {
+                assertEquals(single[i].filter(in[i], dt), out[i], 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void missingValuesHold() {
+        OneEuroBatch batch = new OneEuroBatch(2, 30.0f, 1.0f, 1.0f);
+        float[] in = {1.0f, 2.0f};
+        float[] out = new float[2];
+        batch.filter(in, out, 0.033f);
+
+        in[0] = 1.5f;
+        in[1] = Float.NaN;
+        batch.filter(in, out, 0.033f);
+        float held = out[1];
+        assertEquals(2.0f, held, 0.0f);
+        assertTrue(out[0] > 1.0f && out[0] < 1.5f);
+
+        // Comes back from where it was held
+        in[1] = 2.5f;
+        batch.filter(in, out, 0.033f);
+        assertTrue(out[1] > 2.0f && out[1] < 2.5f);
+    }
+
+    @Test
+    public void batchDoesNotAllocate() {
+        OneEuroBatch batch = new OneEuroBatch(CHANNELS, 30.0f, 1.0f, 1.0f);
+        float[] in = new float[CHANNELS];
+        float[] out = new float[CHANNELS];
+
+        int frames = 200000;
+        float sink = runBatch(batch, in, out, frames);
+
+        long before = allocatedBytes();
+        sink += runBatch(batch, in, out, frames);
+        long allocated = allocatedBytes() - before;
+
+        assertFalse(Float.isNaN(sink));
+        assertTrue("batch allocated " + allocated + " bytes", allocated / (double) frames < 1.0);
+    }
+
+    private static float runBatch(OneEuroBatch batch, float[] in, float[] out, int frames) {
+        float sink = 0;
+        for (int frame = 0; frame < frames; ++frame) {
+            fill(in, frame);
+            batch.filter(in, out, 1.0f / 30.0f);
+            sink += out[frame % in.length];
+        }
+        return sink;
+    }
+
+    private static void fill(float[] in, int frame) {
+        float base = (frame % 1000) * 0.001f;
+        for (int i = 0; i < in.length; ++i) {
+            in[i] = base + i;
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
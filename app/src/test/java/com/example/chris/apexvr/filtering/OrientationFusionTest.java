@@ -0,0 +1,127 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives OrientationFusion with a simulated head, a phone orientation that
+ * drifts away from it and a marker that sees it through the Kinect.
+ */
+public class OrientationFusionTest {
+
+    private static final float DT = 1.0f / 30.0f;
+
+    private final float[] headView = new float[16];
+    private final float[] marker = new float[16];
+    private final float[] correction = new float[16];
+
+    private final Quaternion head = new Quaternion();
+    private final Quaternion drift = new Quaternion();
+    private final Quaternion scratch = new Quaternion();
+
+    @Test
+    public void matrixRoundTrip() {
+        Random random = new Random(11);
+        Quaternion q = new Quaternion();
+        Quaternion back = new Quaternion();
+        float[] m = new float[16];
+        for (int i = 0; i < 1000; ++i) {
+            q.set((float) random.nextGaussian(), (float) random.nextGaussian(),
+                    (float) random.nextGaussian(), (float) random.nextGaussian()).normalize();
+            q.toMatrix(m, 0);
+            back.setFromMatrix(m, 0);
+            assertEquals(1.0f, Math.abs(q.dot(back)), 1e-5f);
+        }
+    }
+
+    @Test
+    public void startMatchesMarkerHeading() {
+        // Looking 30 degrees left with the phone's heading 100 degrees out
+        head.setAxisAngle(0, 1, 0, (float) Math.toRadians(30));
+        drift.setAxisAngle(0, 1, 0, (float) Math.toRadians(100));
+
+        OrientationFusion fusion = new OrientationFusion();
+        observe(fusion, 0);
+
+        assertEquals(0.0f, fusedError(fusion), 1e-3f);
+    }
+
+    @Test
+    public void pullsOutHeadingAndTiltDrift() {
+        OrientationFusion fusion = new OrientationFusion();
+        head.setAxisAngle(0, 1, 0, 0.3f);
+        drift.setIdentity();
+        observe(fusion, 0);
+
+        // The phone's heading slides 20 degrees and it tips 3 degrees while the head turns about
+        Random random = new Random(13);
+        Quaternion tilt = new Quaternion().setAxisAngle(1, 0, 0, (float) Math.toRadians(3));
+        drift.setAxisAngle(0, 1, 0, (float) Math.toRadians(20));
+        drift.multiply(tilt, drift);
+
+        float afterTwoSeconds = 0;
+        for (int i = 0; i < 30 * 30; ++i) {
+            head.setAxisAngle(0, 1, 0, 0.3f + 0.5f * (float) Math.sin(i * 0.05));
+            observe(fusion, (float) random.nextGaussian() * 0.01f);
+            if (i == 60) {
+                afterTwoSeconds = fusedError(fusion);
+            }
+        }
+
+        // Heading is back within a couple of seconds, tilt within half a minute
+        assertTrue("after 2 s " + Math.toDegrees(afterTwoSeconds), afterTwoSeconds < Math.toRadians(4));
+        assertTrue("after 30 s " + Math.toDegrees(fusedError(fusion)), fusedError(fusion) < Math.toRadians(0.6));
+    }
+
+    @Test
+    public void correctDoesNotAllocate() {
+        OrientationFusion fusion = new OrientationFusion();
+        head.setAxisAngle(0, 1, 0, 0.3f);
+        drift.setAxisAngle(1, 0, 0, 0.1f);
+        observe(fusion, 0);
+
+        for (int i = 0; i < 20000; ++i) {
+            observe(fusion, 0);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < 20000; ++i) {
+            observe(fusion, 0);
+        }
+        assertEquals(0, allocatedBytes() - before, 1024);
+    }
+
+    /**
+     * One frame: the phone's view of the drifted head, and the marker's view
+     * of the real head, with some noise on the marker heading.
+     */
+    private void observe(OrientationFusion fusion, float markerNoise) {
+        // Phone head view, the inverse of the drifted head
+        scratch.multiply(drift, head).conjugate().toMatrix(headView, 0);
+
+        // The marker faces back at the Kinect
+        scratch.setAxisAngle(0, 1, 0, (float) Math.PI + markerNoise);
+        scratch.multiply(head, scratch).toMatrix(marker, 0);
+
+        fusion.correct(headView, 0, marker, 0, DT);
+    }
+
+    /**
+     * Angle between the corrected phone view and the true head view.
+     */
+    private float fusedError(OrientationFusion fusion) {
+        Quaternion fused = new Quaternion().setFromMatrix(headView, 0);
+        fusion.getCorrection(correction, 0);
+        fused.multiply(fused, new Quaternion().setFromMatrix(correction, 0));
+        // The true view is the inverse of the head, so this is identity when they agree
+        return fused.multiply(head, fused).angle();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the prediction horizon against hand worked frame timings.
+ */
+public class PosePredictorTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void horizonIsSampleAgePlusDisplayDelay() {
+        PosePredictor predictor = new PosePredictor();
+        predictor.setMaxHorizon(PosePredictor.HEAD, 1.0f);
+
+        // A steady 60 Hz settles the frame interval on 1/60 s
+        long now = 1000 * MS;
+        for (int i = 0; i < 200; ++i) {
+            now += 16666667L;
+            predictor.onFrame(now);
+        }
+        assertEquals(1.0f / 60.0f, predictor.getFrameInterval(), 1e-4f);
+
+        // 40 ms old sample, 1.5 frames to the display
+        float horizon = predictor.getHorizon(PosePredictor.HEAD, now - 40 * MS);
+        assertEquals(0.040f + 1.5f / 60.0f, horizon, 1e-4f);
+
+        predictor.setOffset(PosePredictor.HEAD, -0.01f);
+        assertEquals(0.030f + 1.5f / 60.0f, predictor.getHorizon(PosePredictor.HEAD, now - 40 * MS), 1e-4f);
+    }
+
+    @Test
+    public void pausesDoNotChangeFrameInterval() {
+        PosePredictor predictor = new PosePredictor();
+        long now = 1000 * MS;
+        for (int i = 0; i < 200; ++i) {
+            now += 16666667L;
+            predictor.onFrame(now);
+        }
+        predictor.onFrame(now + 2000 * MS);
+        assertEquals(1.0f / 60.0f, predictor.getFrameInterval(), 1e-4f);
+    }
+
+    @Test
+    public void horizonIsClamped() {
+        PosePredictor predictor = new PosePredictor();
+        long now = 1000 * MS;
+        predictor.onFrame(now);
+
+        // Long lost streams stop at the cap instead of flying off
+        assertEquals(0.1f, predictor.getHorizon(PosePredictor.LEFT_HAND, now - 5000 * MS), 1e-6f);
+
+        // A cap of 0 turns prediction off
+        predictor.setMaxHorizon(PosePredictor.RIGHT_HAND, 0.0f);
+        assertEquals(0.0f, predictor.getHorizon(PosePredictor.RIGHT_HAND, now - 20 * MS), 0.0f);
+
+        // Never backwards
+        predictor.setOffset(PosePredictor.HEAD, -1.0f);
+        assertEquals(0.0f, predictor.getHorizon(PosePredictor.HEAD, now - 20 * MS), 0.0f);
+    }
+
+    @Test
+    public void extrapolateMovesAlongVelocity() {
+        float[] position = {1.0f, 2.0f, 3.0f};
+        float[] velocity = {0.5f, -1.0f, 0.0f};
+        PosePredictor.extrapolate(position, velocity, 0.05f, position);
+        assertArrayEquals(new float[]{1.025f, 1.95f, 3.0f}, position, 1e-6f);
+    }
+}
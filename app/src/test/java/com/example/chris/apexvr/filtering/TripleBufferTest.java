@@ -0,0 +1,67 @@
+package com.example.chris.apexvr.filtering;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hands buffers between two threads as fast as they go and checks the
+ * consumer never sees one half written or older than the last.
+ */
+public class TripleBufferTest {
+
+    @Test
+    public void consumerSeesOnlyNewer() {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[4], new long[4], new long[4]);
+        assertFalse(buffer.update());
+
+        buffer.getBack()[0] = 1;
+        buffer.publish();
+        buffer.getBack()[0] = 2;
+        buffer.publish();
+
+        // The first was replaced before it was taken
+        assertTrue(buffer.update());
+        assertEquals(2, buffer.getFront()[0]);
+        assertFalse(buffer.update());
+        assertEquals(2, buffer.getFront()[0]);
+    }
+
+    @Test
+    public void noTornReadsAcrossThreads() throws InterruptedException {
+        final TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[64], new long[64], new long[64]);
+        final long count = 2000000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long i = 1; i <= count; ++i) {
+                    Arrays.fill(buffer.getBack(), i);
+                    buffer.publish();
+                }
+            }
+        });
+        producer.start();
+
+        long last = 0;
+        long updates = 0;
+        while (last < count) {
+            if (!buffer.update()) {
+                continue;
+            }
+            long[] front = buffer.getFront();
+            long value = front[0];
+            for (long v : front) {
+                assertEquals("torn buffer", value, v);
+            }
+            assertTrue("went back from " + last + " to " + value, value > last);
+            last = value;
+            ++updates;
+        }
+        producer.join();
+
+        assertTrue(updates > 0);
+    }
+}
@@ -0,0 +1,255 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs BluetoothService's watchdog and reconnects over PipeTransports, with
+ * a scripted sender on the other end of each.
+ */
+public class BluetoothServiceTest {
+
+    private static final long READ_TIMEOUT_MS = 150;
+    private static final long WAIT_MS = 5000;
+
+    /**
+     * The far end of a pipe: streams game state while talking, answers pings
+     * while answering, and counts the watchdog's probes.
+     */
+    private static class Sender {
+        final PipeTransport end;
+        volatile boolean talking = true;
+        volatile boolean answering;
+        final AtomicInteger probes = new AtomicInteger();
+
+        Sender(PipeTransport end, boolean answering) {
+            this.end = end;
+            this.answering = answering;
+        }
+
+        void start() {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        OutputStream out = end.getOutputStream();
+                        while (true) {
+                            if (talking) {
+                                out.write("GStt,1\n".getBytes(StandardCharsets.US_ASCII));
+                            }
+                            Thread.sleep(10);
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        // Reader closed the pipe
+                    }
+                }
+            }).start();
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        OutputStream out = end.getOutputStream();
+                        PacketTokenizer pings = new PacketTokenizer(end.getInputStream());
+                        while (pings.nextLine()) {
+                            pings.requireToken();
+                            long id = pings.nextLong();
+                            if (id == 0) {
+                                probes.incrementAndGet();
+                            } else if (answering) {
+                                out.write(String.format(Locale.US, "Pong,%d,%d\n", id, System.nanoTime() / 1000000L)
+                                        .getBytes(StandardCharsets.US_ASCII));
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Reader closed the pipe
+                    }
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Fails the first attempts it is given, then connects each later one to
+     * a new Sender.
+     */
+    private static class ScriptedConnector implements BluetoothService.Connector {
+        BluetoothService service;
+        final boolean answering;
+        volatile int failures;
+        final List<Long> attempts = new ArrayList<>();
+        final List<Sender> senders = new ArrayList<>();
+
+        ScriptedConnector(int failures, boolean answering) {
+            this.failures = failures;
+            this.answering = answering;
+        }
+
+        @Override
+        public boolean connect() {
+            synchronized (this) {
+                attempts.add(System.nanoTime());
+                notifyAll();
+            }
+            if (failures > 0) {
+                --failures;
+                return false;
+            }
+
+            PipeTransport[] pipe = PipeTransport.pair();
+            Sender sender = new Sender(pipe[1], answering);
+            sender.start();
+            synchronized (this) {
+                senders.add(sender);
+            }
+            service.connected(pipe[0]);
+            return true;
+        }
+
+        synchronized Sender sender(int i) {
+            return senders.get(i);
+        }
+
+        synchronized int attemptCount() {
+            return attempts.size();
+        }
+
+        synchronized long gapMs(int i) {
+            return (attempts.get(i) - attempts.get(i - 1)) / 1000000L;
+        }
+    }
+
+    /**
+     * Every health change, in order.
+     */
+    private static class HealthLog implements LinkHealth.Listener {
+        final List<LinkHealth> changes = new ArrayList<>();
+
+        @Override
+        public synchronized void onLinkHealthChanged(LinkHealth previous, LinkHealth current) {
+            changes.add(current);
+            notifyAll();
+        }
+
+        synchronized void awaitChange(LinkHealth health, int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + WAIT_MS;
+            while (count(health) < count) {
+                long left = deadline - System.currentTimeMillis();
+                assertTrue("timed out waiting for " + health + " in " + changes, left > 0);
+                wait(left);
+            }
+        }
+
+        synchronized int count(LinkHealth health) {
+            int count = 0;
+            for (LinkHealth change : changes) {
+                if (change == health) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static BluetoothService service(ScriptedConnector connector, HealthLog log) {
+        // The first attempt waits on the connector until the service is set up
+        synchronized (connector) {
+            BluetoothService service = new BluetoothService(connector);
+            connector.service = service;
+            service.setLinkHealthListener(log);
+            service.setRequestBinaryProtocol(false);
+            service.setLatencyLogPeriod(0);
+            service.setReadTimeout(READ_TIMEOUT_MS);
+            return service;
+        }
+    }
+
+    private static void awaitProbe(Sender sender) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (sender.probes.get() == 0) {
+            assertTrue("no probe", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void senderThatNeverAnswersPingsIsDroppedLater() throws Exception {
+        ScriptedConnector connector = new ScriptedConnector(0, false);
+        HealthLog log = new HealthLog();
+        BluetoothService service = service(connector, log);
+
+        log.awaitChange(LinkHealth.Healthy, 1);
+        Sender sender = connector.sender(0);
+
+        // Pausing its stream is not a dead link straight away, it gets probed and kept
+        long silentSince = System.nanoTime();
+        sender.talking = false;
+        log.awaitChange(LinkHealth.Stalled, 1);
+        awaitProbe(sender);
+        Thread.sleep(READ_TIMEOUT_MS);
+        assertEquals(LinkHealth.Stalled, service.getLinkHealth());
+        assertEquals(1, connector.attemptCount());
+
+        // But not forever, a few read timeouts on it is dropped all the same
+        log.awaitChange(LinkHealth.Reconnecting, 1);
+        long silentMs = (System.nanoTime() - silentSince) / 1000000L;
+        assertTrue("dropped after " + silentMs + "ms", silentMs >= 3 * READ_TIMEOUT_MS - 20);
+        log.awaitChange(LinkHealth.Healthy, 2);
+        assertEquals(2, connector.attemptCount());
+        assertEquals(BluetoothService.STATE_CONNECTED, service.getState());
+
+        service.stop();
+    }
+
+    @Test
+    public void silentSyncedSenderIsDroppedAndReconnectedWithBackoff() throws Exception {
+        ScriptedConnector connector = new ScriptedConnector(0, true);
+        HealthLog log = new HealthLog();
+        BluetoothService service = service(connector, log);
+
+        log.awaitChange(LinkHealth.Healthy, 1);
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!service.getClockSync().isSynced()) {
+            assertTrue("never synced", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        // The next two attempts fail, the third gets through
+        connector.failures = 2;
+        Sender sender = connector.sender(0);
+        sender.answering = false;
+        sender.talking = false;
+
+        log.awaitChange(LinkHealth.Stalled, 1);
+        awaitProbe(sender);
+        log.awaitChange(LinkHealth.Reconnecting, 1);
+        log.awaitChange(LinkHealth.Healthy, 2);
+
+        assertEquals(4, connector.attemptCount());
+        // Straight away after the drop, then backing off from 50ms doubling
+        assertTrue("first backoff " + connector.gapMs(2), connector.gapMs(2) >= 45);
+        assertTrue("second backoff " + connector.gapMs(3), connector.gapMs(3) >= 95);
+        assertTrue(connector.gapMs(3) > connector.gapMs(2));
+
+        // The first Reconnecting came before the listener was set
+        List<LinkHealth> expected = new ArrayList<>();
+        expected.add(LinkHealth.Healthy);
+        expected.add(LinkHealth.Stalled);
+        expected.add(LinkHealth.Reconnecting);
+        expected.add(LinkHealth.Healthy);
+        synchronized (log) {
+            assertEquals(expected, log.changes);
+        }
+
+        service.stop();
+    }
+}
@@ -0,0 +1,392 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.BluetoothDataPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.GameStatePacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotKinPosPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.RobotPosPacket;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the packet parser against known text and binary frames, and replays
+ * a synthetic tracking session through it on the host JVM. With packets
+ * released back to their pools the steady state should not allocate.
+ */
+public class PacketParserTest {
+
+    private static final int RECORDED_FRAMES = 300;
+    private static final int WARMUP_PASSES = 50;
+    private static final int MEASURED_PASSES = 100;
+
+    @Test
+    public void parsedValuesMatchText() throws Exception {
+        String line = "MLoc,16,HED,0.125,-1.5,2.75,1,0,0,0,1,0,0,0,1,ROB,-0.5,0.0001,1e-3,0,0,1,0,1,0,-1,0,0\n"
+                + "JLoc,33,JNT,3,2,0.1,1.6,2.2,JNT,7,1,-0.3,1.1,2.0\n";
+
+        final BluetoothDataPacket[] packets = new BluetoothDataPacket[3];
+        PacketParser parser = new PacketParser(
+                new PacketTokenizer(new RepeatingStream(line.getBytes(StandardCharsets.US_ASCII), 1)),
+                new PacketParser.PacketHandler() {
+                    int count = 0;
+
+                    @Override
+                    public void onPacket(BluetoothDataPacket packet) {
+                        packets[count++] = packet;
+                    }
+                });
+
+        assertTrue(parser.parseNext());
+        assertTrue(parser.parseNext());
+
+        HeadPacket head = (HeadPacket) packets[0];
+        assertEquals(16, head.deltaT);
+        assertEquals(0.125f, head.X, 0);
+        assertEquals(-1.5f, head.Y, 0);
+        assertEquals(2.75f, head.Z, 0);
+        assertEquals(1.0f, head.rotMat[15], 0);
+
+        RobotPosPacket robot = (RobotPosPacket) packets[1];
+        assertEquals(0.0001f, robot.Y, 0);
+        assertEquals(0.001f, robot.Z, 0);
+        assertEquals(-1.0f, robot.rotMat[8], 0);
+
+        JointPacket joints = (JointPacket) packets[2];
+        assertEquals(33, joints.deltaT);
+        assertEquals(1.6f, joints.getY(Joint.JointType.Head), 0);
+        assertEquals(-0.3f, joints.getX(Joint.JointType.HandLeft), 0);
+        assertEquals(Joint.JointTrackingState.Inferred, joints.getState(Joint.JointType.HandLeft));
+        assertFalse(joints.isPresent(Joint.JointType.HandRight));
+        assertNull(joints.getState(Joint.JointType.HandRight));
+    }
+
+    @Test
+    public void binaryFramesMatchText() throws Exception {
+        BinaryFrame.Encoder encoder = new BinaryFrame.Encoder(1024, true);
+        encoder.begin(BinaryFrame.TYPE_MARKERS).putShort(16)
+                .putByte(BinaryFrame.MARKER_HEAD | BinaryFrame.MARKER_HEAD_ROTATION | BinaryFrame.MARKER_ROBOT)
+                .putFloat(0.125f).putFloat(-1.5f).putFloat(2.75f);
+        putFloats(encoder, 1, 0, 0, 0, 1, 0, 0, 0, 1);
+        encoder.putFloat(-0.5f).putFloat(0.0001f).putFloat(1e-3f);
+        putFloats(encoder, 0, 0, 1, 0, 1, 0, -1, 0, 0);
+        encoder.end();
+
+        // A text line, then a corrupted frame and a good one: the reader has to
+        // keep the line, drop the bad frame and find the next
+        for (byte b : "JLoc,33,JNT,3,2,0.1,1.6,2.2\n".getBytes(StandardCharsets.US_ASCII)) {
+            encoder.putByte(b);
+        }
+        int corrupt = encoder.length();
+        encoder.begin(BinaryFrame.TYPE_GAME_STATE).putInt(3).end();
+        encoder.array()[corrupt + BinaryFrame.HEADER_SIZE] ^= 0x10;
+        encoder.begin(BinaryFrame.TYPE_GAME_STATE).putInt(2).end();
+
+        final BluetoothDataPacket[] packets = new BluetoothDataPacket[5];
+        final int[] count = new int[1];
+        PacketParser parser = new PacketParser(
+                new PacketTokenizer(new RepeatingStream(Arrays.copyOf(encoder.array(), encoder.length()), 1)),
+                new PacketParser.PacketHandler() {
+                    @Override
+                    public void onPacket(BluetoothDataPacket packet) {
+                        packets[count[0]++] = packet;
+                    }
+                });
+
+        while (parser.parseNext()) {}
+
+        assertEquals(4, count[0]);
+        HeadPacket head = (HeadPacket) packets[0];
+        assertEquals(16, head.deltaT);
+        assertEquals(2.75f, head.Z, 0);
+        assertEquals(1.0f, head.rotMat[10], 0);
+        RobotPosPacket robot = (RobotPosPacket) packets[1];
+        assertEquals(0.0001f, robot.Y, 0);
+        assertEquals(-1.0f, robot.rotMat[8], 0);
+        JointPacket joints = (JointPacket) packets[2];
+        assertEquals(1.6f, joints.getY(Joint.JointType.Head), 0);
+        assertEquals(2, ((GameStatePacket) packets[3]).getData());
+    }
+
+    @Test
+    public void corruptLengthDoesNotSwallowGoodFrames() throws Exception {
+        BinaryFrame.Encoder encoder = new BinaryFrame.Encoder(1024, true);
+        int sent = 0;
+        putKinPos(encoder, sent++);
+
+        // Claims 64 more bytes than it has, the good frames after it hold them
+        int corrupt = encoder.length();
+        putKinPos(encoder, -1);
+        encoder.array()[corrupt + 3] ^= 0x40;
+        for (int i = 0; i < 10; ++i) {
+            putKinPos(encoder, sent++);
+        }
+
+        // Claims more than is left before the stream ends
+        corrupt = encoder.length();
+        putKinPos(encoder, -1);
+        encoder.array()[corrupt + 3] ^= 0x40;
+        for (int i = 0; i < 2; ++i) {
+            putKinPos(encoder, sent++);
+        }
+
+        final float[] received = new float[sent + 1];
+        final int[] count = new int[1];
+        PacketParser parser = new PacketParser(
+                new PacketTokenizer(new RepeatingStream(Arrays.copyOf(encoder.array(), encoder.length()), 1)),
+                new PacketParser.PacketHandler() {
+                    @Override
+                    public void onPacket(BluetoothDataPacket packet) {
+                        received[count[0]++] = ((RobotKinPosPacket) packet).getX();
+                    }
+                });
+
+        while (parser.parseNext()) {}
+
+        assertEquals(sent, count[0]);
+        for (int i = 0; i < sent; ++i) {
+            assertEquals(i, received[i], 0);
+        }
+    }
+
+    @Test
+    public void binaryParserDoesNotAllocate() throws Exception {
+        byte[] text = recordSession();
+        byte[] session = recordBinarySession();
+        RepeatingStream stream = new RepeatingStream(session, WARMUP_PASSES + MEASURED_PASSES);
+        final int[] packets = new int[1];
+        PacketParser parser = new PacketParser(new PacketTokenizer(stream), new PacketParser.PacketHandler() {
+            @Override
+            public void onPacket(BluetoothDataPacket packet) {
+                ++packets[0];
+                packet.release();
+            }
+        });
+
+        for (int i = 0; i < WARMUP_PASSES * RECORDED_FRAMES; ++i) {
+            assertTrue(parser.parseNext());
+        }
+
+        int frames = MEASURED_PASSES * RECORDED_FRAMES;
+        long before = allocatedBytes();
+        for (int i = 0; i < frames; ++i) {
+            parser.parseNext();
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertFalse(parser.parseNext());
+        // Every marker frame carries the head and the robot
+        assertEquals((WARMUP_PASSES + MEASURED_PASSES) * RECORDED_FRAMES * 4 / 3, packets[0]);
+        assertTrue("Binary parser allocated " + allocated + " bytes", allocated / (double) frames < 1.0);
+        assertTrue(session.length * 2 < text.length);
+    }
+
+    @Test
+    public void tokenizerDoesNotAllocate() throws Exception {
+        byte[] session = recordSession();
+        RepeatingStream stream = new RepeatingStream(session, WARMUP_PASSES + MEASURED_PASSES);
+        PacketTokenizer tokenizer = new PacketTokenizer(stream);
+
+        float sink = 0;
+        for (int i = 0; i < WARMUP_PASSES * RECORDED_FRAMES; ++i) {
+            sink += walkLine(tokenizer);
+        }
+
+        int frames = MEASURED_PASSES * RECORDED_FRAMES;
+        long before = allocatedBytes();
+        for (int i = 0; i < frames; ++i) {
+            sink += walkLine(tokenizer);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertTrue(sink != 0);
+        assertTrue("Tokenizer allocated " + allocated + " bytes", allocated / (double) frames < 1.0);
+    }
+
+    @Test
+    public void parserDoesNotAllocate() throws Exception {
+        byte[] session = recordSession();
+        RepeatingStream stream = new RepeatingStream(session, WARMUP_PASSES + MEASURED_PASSES);
+        final int[] packets = new int[1];
+        PacketParser parser = new PacketParser(new PacketTokenizer(stream), new PacketParser.PacketHandler() {
+            @Override
+            public void onPacket(BluetoothDataPacket packet) {
+                ++packets[0];
+                packet.release();
+            }
+        });
+
+        for (int i = 0; i < WARMUP_PASSES * RECORDED_FRAMES; ++i) {
+            assertTrue(parser.parseNext());
+        }
+
+        int frames = MEASURED_PASSES * RECORDED_FRAMES;
+        long before = allocatedBytes();
+        for (int i = 0; i < frames; ++i) {
+            parser.parseNext();
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertFalse(parser.parseNext());
+        assertTrue("Parser allocated " + allocated + " bytes", allocated / (double) frames < 1.0);
+    }
+
+    private static float walkLine(PacketTokenizer tokenizer) throws IOException {
+        float sum = 0;
+        tokenizer.nextLine();
+        tokenizer.requireToken();
+        while (tokenizer.nextToken()) {
+            if (tokenizer.tokenEquals(JointPacket.separator)
+                    || tokenizer.tokenEquals(HeadPacket.headString)
+                    || tokenizer.tokenEquals(RobotPosPacket.robString)) {
+                continue;
+            }
+            sum += tokenizer.tokenAsFloat();
+        }
+        return sum;
+    }
+
+    /**
+     * Build a session with the same mix and formatting the tracking PC sends:
+     * a skeleton and a marker frame for every kinematic update.
+     */
+    static byte[] recordSession() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+
+        for (int frame = 0; frame < RECORDED_FRAMES; ++frame) {
+            switch (frame % 3) {
+                case 0:
+                    builder.append(JointPacket.packetString).append(',').append(33);
+                    for (int joint = 0; joint < Joint.JointType.values().length; ++joint) {
+                        builder.append(',').append(JointPacket.separator)
+                                .append(',').append(joint)
+                                .append(',').append(random.nextInt(3));
+                        appendFloats(builder, random, 3);
+                    }
+                    break;
+                case 1:
+                    builder.append(HeadPacket.packetString).append(',').append(16)
+                            .append(',').append(HeadPacket.headString);
+                    appendFloats(builder, random, 12);
+                    builder.append(',').append(RobotPosPacket.robString);
+                    appendFloats(builder, random, 12);
+                    break;
+                default:
+                    builder.append("RPos,").append(8);
+                    appendFloats(builder, random, 3);
+                    break;
+            }
+            builder.append("\r\n");
+        }
+
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The same session as recordSession() in binary frames with CRCs.
+     */
+    static byte[] recordBinarySession() {
+        Random random = new Random(42);
+        BinaryFrame.Encoder encoder = new BinaryFrame.Encoder(RECORDED_FRAMES * 512, true);
+
+        for (int frame = 0; frame < RECORDED_FRAMES; ++frame) {
+            switch (frame % 3) {
+                case 0:
+                    int joints = Joint.JointType.values().length;
+                    encoder.begin(BinaryFrame.TYPE_JOINTS).putShort(33).putByte(joints);
+                    for (int joint = 0; joint < joints; ++joint) {
+                        encoder.putByte(joint).putByte(random.nextInt(3));
+                        putRandomFloats(encoder, random, 3);
+                    }
+                    break;
+                case 1:
+                    encoder.begin(BinaryFrame.TYPE_MARKERS).putShort(16).putByte(BinaryFrame.MARKER_HEAD
+                            | BinaryFrame.MARKER_HEAD_ROTATION | BinaryFrame.MARKER_ROBOT);
+                    putRandomFloats(encoder, random, 24);
+                    break;
+                default:
+                    encoder.begin(BinaryFrame.TYPE_KIN_POS).putShort(8);
+                    putRandomFloats(encoder, random, 3);
+                    break;
+            }
+            encoder.end();
+        }
+
+        return Arrays.copyOf(encoder.array(), encoder.length());
+    }
+
+    private static void putKinPos(BinaryFrame.Encoder encoder, float x) {
+        encoder.begin(BinaryFrame.TYPE_KIN_POS).putShort(8).putFloat(x).putFloat(0.5f).putFloat(1.5f).end();
+    }
+
+    private static void putRandomFloats(BinaryFrame.Encoder encoder, Random random, int count) {
+        for (int i = 0; i < count; ++i) {
+            encoder.putFloat(random.nextFloat() * 4.0f - 2.0f);
+        }
+    }
+
+    private static void putFloats(BinaryFrame.Encoder encoder, float... values) {
+        for (float value : values) {
+            encoder.putFloat(value);
+        }
+    }
+
+    private static void appendFloats(StringBuilder builder, Random random, int count) {
+        for (int i = 0; i < count; ++i) {
+            builder.append(',').append(String.format(Locale.US, "%.6f", random.nextFloat() * 4.0f - 2.0f));
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Hands out the same recording a fixed number of times, in uneven chunks
+     * like a socket would.
+     */
+    static class RepeatingStream extends InputStream {
+        private final byte[] data;
+        private int remainingPasses;
+        private int position;
+
+        RepeatingStream(byte[] data, int passes) {
+            this.data = data;
+            this.remainingPasses = passes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remainingPasses == 0) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, 990), data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            if (position == data.length) {
+                position = 0;
+                --remainingPasses;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import org.junit.Test;
+
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fills the sample rings from the test thread, which stands in for the
+ * reader, and drains them as the tracking thread would.
+ */
+public class SampleRingTest {
+
+    // Eight slots, seven of them drainable
+    private static final int CAPACITY = 8;
+
+    private static void appendMarkers(MarkerHistory history, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            history.append(i, i, i, 0, 0, null);
+        }
+    }
+
+    @Test
+    public void drainSkipsWhatTheProducerLapped() {
+        MarkerHistory history = new MarkerHistory("head", CAPACITY);
+        assertEquals(CAPACITY, history.getCapacity());
+
+        appendMarkers(history, 0, 20);
+        int count = history.drain();
+
+        assertEquals(CAPACITY - 1, count);
+        assertEquals(20 - (CAPACITY - 1), history.getOverruns());
+        // Oldest first, starting after the skipped ones
+        assertEquals(13, history.getCaptureNanos(history.slot(0)));
+        assertEquals(19, history.getCaptureNanos(history.slot(count - 1)));
+        assertEquals(13.0f, history.getPositions()[MarkerHistory.positionIndex(history.slot(0))], 0.0f);
+
+        appendMarkers(history, 20, 22);
+        assertEquals(2, history.drain());
+        assertEquals(20, history.getCaptureNanos(history.slot(0)));
+        assertEquals(13, history.getOverruns());
+
+        assertEquals(0, history.drain());
+    }
+
+    @Test
+    public void drainIsBrokenOnceTheProducerLapsIt() {
+        MarkerHistory history = new MarkerHistory("head", CAPACITY);
+
+        appendMarkers(history, 0, 3);
+        assertEquals(3, history.drain());
+        assertTrue(history.isDrainIntact());
+
+        // Up to the slot before the first drained one
+        appendMarkers(history, 3, CAPACITY - 1);
+        assertTrue(history.isDrainIntact());
+
+        // The next write goes into the first drained slot
+        appendMarkers(history, CAPACITY - 1, CAPACITY);
+        assertFalse(history.isDrainIntact());
+
+        history.drain();
+        assertTrue(history.isDrainIntact());
+    }
+
+    @Test
+    public void missingJointsAreNotPresent() {
+        JointHistory history = new JointHistory("skeleton", CAPACITY);
+
+        JointPacket partial = new JointPacket();
+        partial.addJoint(Joint.JointType.Head, Joint.JointTrackingState.Tracked, 1, 2, 3);
+        partial.addJoint(Joint.JointType.HandLeft, Joint.JointTrackingState.Inferred, 4, 5, 6);
+        history.append(partial);
+
+        JointPacket full = new JointPacket();
+        for (Joint.JointType type : Joint.JointType.values()) {
+            full.addJoint(type, Joint.JointTrackingState.Tracked, type.ordinal(), 0, 0);
+        }
+        history.append(full);
+
+        // Overwrites the full sample's slot after a lap
+        for (int i = 0; i < CAPACITY; ++i) {
+            history.append(i % 2 == 0 ? full : partial);
+        }
+        assertEquals(CAPACITY - 1, history.drain());
+
+        int slot = history.slot(CAPACITY - 2);
+        assertTrue(history.isPresent(slot, Joint.JointType.Head));
+        assertEquals(Joint.JointTrackingState.Tracked, history.getState(slot, Joint.JointType.Head));
+        assertEquals(2.0f, history.getY(slot, Joint.JointType.Head), 0.0f);
+        assertEquals(Joint.JointTrackingState.Inferred, history.getState(slot, Joint.JointType.HandLeft));
+
+        assertFalse(history.isPresent(slot, Joint.JointType.HandRight));
+        assertNull(history.getState(slot, Joint.JointType.HandRight));
+        assertTrue(Float.isNaN(history.getX(slot, Joint.JointType.HandRight)));
+        assertTrue(Float.isNaN(history.getY(slot, Joint.JointType.HandRight)));
+        assertTrue(Float.isNaN(history.getZ(slot, Joint.JointType.HandRight)));
+
+        int fullSlot = history.slot(CAPACITY - 3);
+        for (Joint.JointType type : Joint.JointType.values()) {
+            assertTrue(history.isPresent(fullSlot, type));
+            assertEquals(type.ordinal(), history.getX(fullSlot, type), 0.0f);
+        }
+    }
+
+    @Test
+    public void newestWithRotationFindsTheLastRotatedMarker() {
+        MarkerHistory history = new MarkerHistory("head", CAPACITY);
+        float[] first = new float[16];
+        float[] second = new float[16];
+        first[0] = 1.0f;
+        second[0] = 2.0f;
+
+        history.append(0, 0, 0, 0, 0, first);
+        history.append(1, 1, 0, 0, 0, null);
+        history.append(2, 2, 0, 0, 0, second);
+        history.append(3, 3, 0, 0, 0, null);
+
+        int count = history.drain();
+        int newest = history.newestWithRotation(count);
+        assertEquals(2, newest);
+        assertFalse(history.hasRotation(history.slot(3)));
+        assertEquals(2.0f, history.getRotations()[MarkerHistory.rotationIndex(history.slot(newest))], 0.0f);
+
+        history.append(4, 4, 0, 0, 0, null);
+        assertEquals(-1, history.newestWithRotation(history.drain()));
+        assertEquals(-1, history.newestWithRotation(history.drain()));
+    }
+}
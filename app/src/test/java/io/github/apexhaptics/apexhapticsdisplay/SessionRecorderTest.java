@@ -0,0 +1,132 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records a session read over a pipe and plays it back through a fresh
+ * PacketIngest, which should see the same samples at the same intervals.
+ */
+public class SessionRecorderTest {
+
+    private static final int PASSES = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayMatchesLiveSession() throws Exception {
+        File log = folder.newFile("session.apxr");
+        final byte[] session = PacketParserTest.recordSession();
+        final PipeTransport[] pipe = PipeTransport.pair();
+
+        // Live: a sender trickling the session out a line at a time
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = pipe[1].getOutputStream();
+                    for (int pass = 0; pass < PASSES; ++pass) {
+                        int start = 0;
+                        for (int i = 0; i < session.length; ++i) {
+                            if (session[i] == '\n') {
+                                out.write(session, start, i + 1 - start);
+                                start = i + 1;
+                            }
+                        }
+                        Thread.sleep(1);
+                    }
+                    out.close();
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        sender.start();
+
+        PacketIngest live = new PacketIngest();
+        live.setPingSender(false);
+        SessionRecorder recorder = new SessionRecorder(log);
+        live.setRecorder(recorder);
+        Samples recorded = readAll(live, pipe[0]);
+        sender.join();
+        recorder.close();
+        assertEquals(0, recorder.getDropped());
+
+        PacketIngest replay = new PacketIngest();
+        replay.setPingSender(false);
+        Samples replayed = readAll(replay, new ReplayTransport(log, ReplayTransport.AS_FAST_AS_POSSIBLE));
+
+        assertEquals(PASSES * 100, recorded.count);
+        assertEquals(recorded.count, replayed.count);
+        assertArrayEquals(recorded.positions, replayed.positions, 0);
+
+        // Same spacing between samples, only the start of the timeline moves
+        for (int i = 1; i < recorded.count; ++i) {
+            assertEquals(recorded.captureNanos[i] - recorded.captureNanos[i - 1],
+                    replayed.captureNanos[i] - replayed.captureNanos[i - 1]);
+        }
+    }
+
+    @Test
+    public void realTimeReplayKeepsPace() throws Exception {
+        File log = folder.newFile("paced.apxr");
+        SessionRecorder recorder = new SessionRecorder(log);
+        byte[] line = "GStt,1\n".getBytes("US-ASCII");
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; ++i) {
+            recorder.record(line, 0, line.length, start + i * 20000000L);
+        }
+        recorder.close();
+
+        PacketIngest replay = new PacketIngest();
+        replay.setPingSender(false);
+        PacketIngest.Session session = replay.open(new ReplayTransport(log, ReplayTransport.REAL_TIME));
+        long replayStart = System.nanoTime();
+        int lines = 0;
+        while (session.readNext()) {
+            ++lines;
+        }
+        long elapsedMs = (System.nanoTime() - replayStart) / 1000000L;
+
+        assertEquals(10, lines);
+        assertTrue("Replay took " + elapsedMs + "ms", elapsedMs >= 170 && elapsedMs < 1000);
+    }
+
+    private static class Samples {
+        int count;
+        float[] positions = new float[0];
+        long[] captureNanos = new long[0];
+    }
+
+    private static Samples readAll(PacketIngest ingest, Transport transport) throws IOException {
+        PacketIngest.Session session = ingest.open(transport);
+        JointHistory history = ingest.getJointHistory();
+        Samples samples = new Samples();
+
+        boolean more = true;
+        while (more) {
+            more = session.readNext();
+            int count = history.drain();
+            samples.positions = Arrays.copyOf(samples.positions, (samples.count + count) * JointHistory.JOINTS * 3);
+            samples.captureNanos = Arrays.copyOf(samples.captureNanos, samples.count + count);
+            for (int i = 0; i < count; ++i) {
+                int slot = history.slot(i);
+                System.arraycopy(history.getPositions(), slot * JointHistory.JOINTS * 3,
+                        samples.positions, (samples.count + i) * JointHistory.JOINTS * 3, JointHistory.JOINTS * 3);
+                samples.captureNanos[samples.count + i] = history.getCaptureNanos(slot);
+            }
+            samples.count += count;
+        }
+        transport.close();
+        return samples;
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.apexhaptics.apexhapticsdisplay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pushes a recorded session through PacketIngest over the in-memory and TCP
+ * transports on the host JVM, the same path the phone reads Bluetooth with.
+ */
+public class TransportTest {
+
+    private static final int PASSES = 200;
+
+    // recordSession() has a skeleton on every third of its 300 lines
+    private static final int JOINTS_PER_PASS = 100;
+
+    @Test
+    public void pipeDeliversEverySample() throws Exception {
+        PipeTransport[] pipe = PipeTransport.pair();
+        Thread sender = send(pipe[1], PacketParserTest.recordSession(), PASSES);
+
+        long joints = readAll(pipe[0]);
+        sender.join();
+
+        assertEquals(PASSES * JOINTS_PER_PASS, joints);
+    }
+
+    @Test
+    public void tcpLoopbackDeliversEverySampleAndPings() throws Exception {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final byte[] session = PacketParserTest.recordSession();
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = server.accept()) {
+                    OutputStream out = socket.getOutputStream();
+                    for (int i = 0; i < PASSES; ++i) {
+                        out.write(session);
+                    }
+                    socket.shutdownOutput();
+
+                    // Whatever the reader wrote back, the pings
+                    InputStream in = socket.getInputStream();
+                    byte[] buffer = new byte[256];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        received.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        sender.start();
+
+        TcpTransport transport = TcpTransport.connect("127.0.0.1", server.getLocalPort(), 1000);
+        long joints = readAll(transport);
+        sender.join();
+        server.close();
+
+        assertEquals(PASSES * JOINTS_PER_PASS, joints);
+        assertTrue(new String(received.toByteArray(), StandardCharsets.US_ASCII).startsWith("Ping,"));
+    }
+
+    @Test
+    public void clockSyncFindsSenderOffset() throws Exception {
+        final long offsetMillis = 123456789L;
+        PipeTransport[] pipe = PipeTransport.pair();
+        final PipeTransport senderEnd = pipe[1];
+
+        // A sender streaming game state lines, the reader only pings between reads
+        Thread ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = senderEnd.getOutputStream();
+                    while (true) {
+                        out.write("GStt,1\n".getBytes(StandardCharsets.US_ASCII));
+                        Thread.sleep(10);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // Reader closed the pipe
+                }
+            }
+        });
+
+        // and answering every ping with its own clock, offset from ours
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = senderEnd.getOutputStream();
+                    PacketTokenizer pings = new PacketTokenizer(senderEnd.getInputStream());
+                    while (pings.nextLine()) {
+                        pings.requireToken();
+                        long id = pings.nextLong();
+                        long now = System.nanoTime() / 1000000L + offsetMillis;
+                        out.write(String.format(Locale.US, "Pong,%d,%d\n", id, now)
+                                .getBytes(StandardCharsets.US_ASCII));
+                    }
+                } catch (IOException e) {
+                    // Reader closed the pipe
+                }
+            }
+        });
+        ticker.start();
+        sender.start();
+
+        PacketIngest ingest = new PacketIngest();
+        PacketIngest.Session session = ingest.open(pipe[0]);
+        long deadline = System.nanoTime() + 5000000000L;
+        while (!ingest.getClockSync().isSynced()) {
+            assertTrue(session.readNext());
+            assertTrue(System.nanoTime() < deadline);
+        }
+        session.close();
+        ticker.join();
+        sender.join();
+
+        ClockSync clockSync = ingest.getClockSync();
+        assertTrue(clockSync.isSynced());
+        // Millisecond timestamps, so within a couple of ms of the real offset
+        assertEquals(offsetMillis * 1000000L, clockSync.getOffsetNanos(), 2000000L);
+    }
+
+    /**
+     * Read a transport to its end, draining the skeleton history as it fills.
+     */
+    private static long readAll(Transport transport) throws IOException {
+        PacketIngest ingest = new PacketIngest();
+        PacketIngest.Session session = ingest.open(transport);
+        JointHistory history = ingest.getJointHistory();
+
+        long joints = 0;
+        while (session.readNext()) {
+            joints += history.drain();
+        }
+        joints += history.drain();
+        transport.close();
+
+        assertEquals(0, history.getOverruns());
+        return joints;
+    }
+
+    private static Thread send(final Transport transport, final byte[] data, final int passes) {
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = transport.getOutputStream();
+                    for (int i = 0; i < passes; ++i) {
+                        out.write(data);
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        sender.start();
+        return sender;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.chris.apexvr.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import com.example.chris.apexvr.filtering.HandTracker;
+import com.example.chris.apexvr.filtering.Kalman2;
+import com.example.chris.apexvr.filtering.KalmanFilter;
+import com.example.chris.apexvr.filtering.OneEuro;
+import com.example.chris.apexvr.filtering.OneEuroBatch;
+import com.example.chris.apexvr.filtering.OrientationFusion;
+import com.example.chris.apexvr.filtering.Quaternion;
+
+import io.github.apexhaptics.apexhapticsdisplay.JointHistory;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+
+/**
+ * The filters ApexSensors runs per sample, one sample per op, sized the way
+ * ApexSensors uses them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterBenchmark {
+
+    private static final float DT = 1.0f / 30.0f;
+    private static final int CHANNELS = JointHistory.JOINTS * 3;
+    // Precomputed input frames, so making them up is not what gets measured
+    private static final int FRAMES = 256;
+
+    private final float[] inputs = new float[FRAMES * CHANNELS];
+
+    private final float[] skeleton = new float[CHANNELS];
+    private final float[] filtered = new float[CHANNELS];
+    private OneEuro[] oneEuros;
+    private OneEuroBatch oneEuroBatch;
+
+    private Kalman2[] kalman2;
+    private KalmanFilter kalman;
+    private final double[] measurement = new double[3];
+
+    private HandTracker hand;
+
+    private OrientationFusion fusion;
+    private final Quaternion head = new Quaternion();
+    private final float[] headView = new float[16];
+    private final float[] marker = new float[16];
+
+    private int step;
+
+    @Setup
+    public void setUp() {
+        for (int frame = 0; frame < FRAMES; ++frame) {
+            for (int i = 0; i < CHANNELS; ++i) {
+                inputs[frame * CHANNELS + i] = (float) Math.sin(frame * DT + i);
+            }
+        }
+
+        oneEuros = new OneEuro[CHANNELS];
+        for (int i = 0; i < CHANNELS; ++i) {
+            oneEuros[i] = new OneEuro(30.0f, 1.0f, 1.0f);
+        }
+        oneEuroBatch = new OneEuroBatch(CHANNELS, 30.0f, 1.0f, 1.0f);
+
+        kalman2 = new Kalman2[3];
+        for (int i = 0; i < 3; ++i) {
+            kalman2[i] = new Kalman2(0, 1.5, 0.1, 0.3);
+        }
+        kalman = new KalmanFilter(new KalmanFilter.ConstantVelocity(3, 20.0), 3);
+        kalman.setMeasurementNoise(0.0004);
+        kalman.reset(new double[]{0, 1.5, 2}, 0.01);
+
+        hand = new HandTracker();
+        fusion = new OrientationFusion();
+    }
+
+    /**
+     * Move the fake inputs on a little.
+     */
+    private void next() {
+        int frame = ++step & (FRAMES - 1);
+        System.arraycopy(inputs, frame * CHANNELS, skeleton, 0, CHANNELS);
+    }
+
+    @Benchmark
+    public float[] oneEuroPerChannel() {
+        next();
+        for (int i = 0; i < CHANNELS; ++i) {
+            filtered[i] = oneEuros[i].filter(skeleton[i], DT);
+        }
+        return filtered;
+    }
+
+    @Benchmark
+    public float[] oneEuroBatch() {
+        next();
+        oneEuroBatch.filter(skeleton, filtered, DT);
+        return filtered;
+    }
+
+    @Benchmark
+    public double kalman2Head() {
+        next();
+        double sum = 0;
+        for (int i = 0; i < 3; ++i) {
+            kalman2[i].step(skeleton[i], skeleton[i + 3] * 0.01);
+            sum += kalman2[i].getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double kalmanConstantVelocity3() {
+        next();
+        measurement[0] = skeleton[0];
+        measurement[1] = skeleton[1];
+        measurement[2] = skeleton[2];
+        kalman.predict(DT);
+        kalman.update(measurement);
+        return kalman.get(0);
+    }
+
+    @Benchmark
+    public float[] handTracker() {
+        next();
+        hand.update(Joint.JointTrackingState.Tracked, skeleton[0] * 0.3f, 1.2f + skeleton[1] * 0.2f,
+                1.8f + skeleton[2] * 0.2f, DT);
+        return hand.getPosition();
+    }
+
+    @Benchmark
+    public Quaternion orientationFusion() {
+        next();
+        head.setAxisAngle(0, 1, 0, skeleton[0]);
+        head.toMatrix(marker, 0);
+        head.conjugate().toMatrix(headView, 0);
+        fusion.correct(headView, 0, marker, 0, DT);
+        return fusion.getCorrection();
+    }
+}
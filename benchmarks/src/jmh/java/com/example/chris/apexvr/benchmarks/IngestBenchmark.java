@@ -0,0 +1,103 @@
+package com.example.chris.apexvr.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import io.github.apexhaptics.apexhapticsdisplay.PacketIngest;
+import io.github.apexhaptics.apexhapticsdisplay.PipeTransport;
+import io.github.apexhaptics.apexhapticsdisplay.Transport;
+
+/**
+ * Reading one packet off the wire: framing, parsing, capture time stamping
+ * and publishing into the histories, as the reader thread does it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IngestBenchmark {
+
+    // A SessionRecorder log to read, empty for the synthetic session
+    @Param("")
+    public String session;
+
+    // Wire format of the synthetic session, a recorded one is read as it was sent
+    @Param({TrackingStreams.BINARY, TrackingStreams.TEXT})
+    public String format;
+
+    // Straight from memory, or through a pipe from a sender thread like a socket
+    @Param({"loop", "pipe"})
+    public String transport;
+
+    private PacketIngest ingest;
+    private PacketIngest.Session reader;
+    private Transport[] pipe;
+    private int drained;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] data = TrackingStreams.load(session, format);
+        ingest = new PacketIngest();
+        ingest.setPingSender(false);
+
+        if ("pipe".equals(transport)) {
+            pipe = PipeTransport.pair();
+            send(pipe[1], data);
+            reader = ingest.open(pipe[0]);
+        } else {
+            reader = ingest.open(new TrackingStreams.LoopTransport(data));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (pipe != null) {
+            pipe[0].close();
+            pipe = null;
+        }
+    }
+
+    @Benchmark
+    public boolean readPacket() throws IOException {
+        boolean read = reader.readNext();
+
+        // Keep the rings drained like the tracking thread would
+        if (++drained == 32) {
+            drained = 0;
+            ingest.getJointHistory().drain();
+            ingest.getHeadHistory().drain();
+        }
+        return read;
+    }
+
+    /**
+     * Write data over and over until the reader closes the pipe.
+     */
+    private static void send(final Transport end, final byte[] data) {
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = end.getOutputStream();
+                    while (true) {
+                        out.write(data);
+                    }
+                } catch (IOException e) {
+                    // Reader closed the pipe
+                }
+            }
+        }, "IngestBenchmark sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+}
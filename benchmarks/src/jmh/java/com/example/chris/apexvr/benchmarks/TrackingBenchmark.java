@@ -0,0 +1,91 @@
+package com.example.chris.apexvr.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.example.chris.apexvr.filtering.ApexSensors;
+
+import io.github.apexhaptics.apexhapticsdisplay.JointHistory;
+import io.github.apexhaptics.apexhapticsdisplay.MarkerHistory;
+import io.github.apexhaptics.apexhapticsdisplay.PacketIngest;
+
+/**
+ * ApexSensors over a tracking stream: each op reads the packets up to the
+ * next skeleton or head marker sample and steps the filters and the render
+ * side frame over it. frameOnly() is the render thread's share alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackingBenchmark {
+
+    // A SessionRecorder log to read, empty for the synthetic session
+    @Param("")
+    public String session;
+
+    private PacketIngest ingest;
+    private PacketIngest.Session reader;
+    private JointHistory joints;
+    private MarkerHistory heads;
+    private long samples;
+
+    private ApexSensors sensors;
+    private final float[] headView = new float[16];
+
+    @Setup
+    public void setUp() throws IOException {
+        ingest = new PacketIngest();
+        ingest.setPingSender(false);
+        ingest.setTrackingListener(new Runnable() {
+            @Override
+            public void run() {
+                ++samples;
+            }
+        });
+        reader = ingest.open(new TrackingStreams.LoopTransport(TrackingStreams.load(session)));
+        joints = ingest.getJointHistory();
+        heads = ingest.getHeadHistory();
+
+        sensors = new ApexSensors();
+        headView[0] = headView[5] = headView[10] = headView[15] = 1.0f;
+
+        // Run until the filters have started and the calibration has had a few solves
+        for (int i = 0; i < 30 * 20; ++i) {
+            nextFrame();
+            sensors.step(headView, heads, joints);
+        }
+    }
+
+    /**
+     * Read up to the next tracking sample, a skeleton or a head marker.
+     */
+    private void nextFrame() throws IOException {
+        long start = samples;
+        while (samples == start) {
+            reader.readNext();
+        }
+    }
+
+    @Benchmark
+    public float[] step() throws IOException {
+        // Reading is included, IngestBenchmark has its share
+        nextFrame();
+        sensors.step(headView, heads, joints);
+        return sensors.getLeftHand();
+    }
+
+    @Benchmark
+    public float[] frameOnly() {
+        sensors.frame(headView);
+        return sensors.getLeftHand();
+    }
+}
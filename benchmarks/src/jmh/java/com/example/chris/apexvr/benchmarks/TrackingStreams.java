@@ -0,0 +1,222 @@
+package com.example.chris.apexvr.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import io.github.apexhaptics.apexhapticsdisplay.BinaryFrame;
+import io.github.apexhaptics.apexhapticsdisplay.ReplayTransport;
+import io.github.apexhaptics.apexhapticsdisplay.Transport;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.HeadPacket;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.Joint;
+import io.github.apexhaptics.apexhapticsdisplay.datatypes.JointPacket;
+
+/**
+ * Tracking streams for the benchmarks to read: a synthetic session of a
+ * player moving about in front of the Kinect, or the bytes of a session
+ * recorded on the phone with SessionRecorder.
+ */
+final class TrackingStreams {
+
+    // Seconds of synthetic tracking, long enough that the loop point does not matter
+    private static final int SYNTHETIC_FRAMES = 30 * 60;
+    private static final int TRACKED = Joint.JointTrackingState.Tracked.ordinal();
+
+    // Wire formats of the synthetic session
+    static final String BINARY = "binary";
+    static final String TEXT = "text";
+
+    private TrackingStreams() {
+    }
+
+    /**
+     * The recorded session at path, or the binary synthetic one if path is empty.
+     */
+    static byte[] load(String path) throws IOException {
+        return load(path, BINARY);
+    }
+
+    /**
+     * The recorded session at path as it was sent, or the synthetic one in
+     * format if path is empty.
+     */
+    static byte[] load(String path, String format) throws IOException {
+        return path == null || path.isEmpty() ? synthetic(TEXT.equals(format)) : recorded(new File(path));
+    }
+
+    /**
+     * Frames at the Kinect rate: a full skeleton, then the head marker with
+     * its rotation, both following the same smooth head and hand motion.
+     * Binary frames with CRCs, or the text lines the tracking PC used to send.
+     */
+    static byte[] synthetic(boolean text) {
+        BinaryFrame.Encoder encoder = new BinaryFrame.Encoder(SYNTHETIC_FRAMES * 512, true);
+        StringBuilder lines = new StringBuilder();
+        float[] head = new float[3];
+        float[] joints = new float[3 * JointPacket.JOINTS];
+        float[] marker = new float[12];
+
+        for (int frame = 0; frame < SYNTHETIC_FRAMES; ++frame) {
+            double t = frame / 30.0;
+            head[0] = (float) (0.3 * Math.sin(0.5 * t));
+            head[1] = (float) (1.6 + 0.05 * Math.sin(1.3 * t));
+            head[2] = (float) (2.0 + 0.2 * Math.cos(0.4 * t));
+
+            for (int joint = 0; joint < JointPacket.JOINTS; ++joint) {
+                int i = 3 * joint;
+                if (joint == Joint.JointType.HandLeft.ordinal() || joint == Joint.JointType.HandRight.ordinal()) {
+                    float side = joint == Joint.JointType.HandLeft.ordinal() ? -1.0f : 1.0f;
+                    joints[i] = head[0] + side * (0.25f + 0.1f * (float) Math.sin(2.0 * t));
+                    joints[i + 1] = head[1] - 0.3f + 0.15f * (float) Math.sin(1.7 * t + side);
+                    joints[i + 2] = head[2] - 0.3f - 0.1f * (float) Math.cos(2.3 * t);
+                } else {
+                    // The rest of the body hangs below the head
+                    joints[i] = head[0];
+                    joints[i + 1] = head[1] - joint * 0.08f;
+                    joints[i + 2] = head[2];
+                }
+            }
+
+            // The marker faces back at the Kinect while the head turns
+            double yaw = Math.PI + 0.4 * Math.sin(0.7 * t);
+            float c = (float) Math.cos(yaw);
+            float s = (float) Math.sin(yaw);
+            marker[0] = head[0];
+            marker[1] = head[1] + 0.1f;
+            marker[2] = head[2] - 0.08f;
+            marker[3] = c;
+            marker[4] = 0;
+            marker[5] = s;
+            marker[6] = 0;
+            marker[7] = 1;
+            marker[8] = 0;
+            marker[9] = -s;
+            marker[10] = 0;
+            marker[11] = c;
+
+            if (text) {
+                lines.append(JointPacket.packetString).append(",33");
+                for (int joint = 0; joint < JointPacket.JOINTS; ++joint) {
+                    lines.append(',').append(JointPacket.separator).append(',').append(joint)
+                            .append(',').append(TRACKED);
+                    appendFloats(lines, joints, 3 * joint, 3);
+                }
+                lines.append("\r\n");
+
+                lines.append(HeadPacket.packetString).append(",33,").append(HeadPacket.headString);
+                appendFloats(lines, marker, 0, marker.length);
+                lines.append("\r\n");
+            } else {
+                encoder.begin(BinaryFrame.TYPE_JOINTS).putShort(33).putByte(JointPacket.JOINTS);
+                for (int joint = 0; joint < JointPacket.JOINTS; ++joint) {
+                    encoder.putByte(joint).putByte(TRACKED);
+                    putFloats(encoder, joints, 3 * joint, 3);
+                }
+                encoder.end();
+
+                encoder.begin(BinaryFrame.TYPE_MARKERS).putShort(33)
+                        .putByte(BinaryFrame.MARKER_HEAD | BinaryFrame.MARKER_HEAD_ROTATION);
+                putFloats(encoder, marker, 0, marker.length);
+                encoder.end();
+            }
+        }
+
+        return text ? lines.toString().getBytes(StandardCharsets.US_ASCII)
+                : Arrays.copyOf(encoder.array(), encoder.length());
+    }
+
+    private static void putFloats(BinaryFrame.Encoder encoder, float[] values, int offset, int count) {
+        for (int i = offset; i < offset + count; ++i) {
+            encoder.putFloat(values[i]);
+        }
+    }
+
+    private static void appendFloats(StringBuilder lines, float[] values, int offset, int count) {
+        for (int i = offset; i < offset + count; ++i) {
+            lines.append(',').append(String.format(Locale.US, "%.6f", values[i]));
+        }
+    }
+
+    /**
+     * Every byte of a SessionRecorder log, as it was read off the socket.
+     */
+    static byte[] recorded(File file) throws IOException {
+        ReplayTransport replay = new ReplayTransport(file, ReplayTransport.AS_FAST_AS_POSSIBLE);
+        try {
+            InputStream in = replay.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            replay.close();
+        }
+    }
+
+    /**
+     * Plays the same bytes over and over, in socket sized chunks, and never
+     * ends. Nothing is allocated per read.
+     */
+    static class LoopTransport implements Transport {
+        private final byte[] data;
+        private int position;
+
+        private final InputStream input = new InputStream() {
+            @Override
+            public int read() {
+                int b = data[position] & 0xFF;
+                position = (position + 1) % data.length;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                int count = Math.min(Math.min(len, 990), data.length - position);
+                System.arraycopy(data, position, b, off, count);
+                position = (position + count) % data.length;
+                return count;
+            }
+        };
+
+        private final OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        LoopTransport(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return discard;
+        }
+
+        @Override
+        public String getName() {
+            return "loop";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package android.opengl;
+
+/**
+ * Host JVM stand-in for android.opengl.Matrix with the same column major
+ * conventions, just the methods the tracking code uses. Like the platform
+ * version nothing here allocates.
+ */
+public class Matrix {
+
+    private static final float[] TEMP = new float[32];
+
+    public static void multiplyMM(float[] result, int resultOffset,
+                                  float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        // result may alias either side
+        synchronized (TEMP) {
+            for (int c = 0; c < 4; ++c) {
+                float b0 = rhs[rhsOffset + c * 4];
+                float b1 = rhs[rhsOffset + c * 4 + 1];
+                float b2 = rhs[rhsOffset + c * 4 + 2];
+                float b3 = rhs[rhsOffset + c * 4 + 3];
+                for (int r = 0; r < 4; ++r) {
+                    TEMP[c * 4 + r] = lhs[lhsOffset + r] * b0 + lhs[lhsOffset + 4 + r] * b1
+                            + lhs[lhsOffset + 8 + r] * b2 + lhs[lhsOffset + 12 + r] * b3;
+                }
+            }
+            System.arraycopy(TEMP, 0, result, resultOffset, 16);
+        }
+    }
+
+    public static void multiplyMV(float[] resultVec, int resultVecOffset,
+                                  float[] lhsMat, int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+        float x = rhsVec[rhsVecOffset];
+        float y = rhsVec[rhsVecOffset + 1];
+        float z = rhsVec[rhsVecOffset + 2];
+        float w = rhsVec[rhsVecOffset + 3];
+        for (int r = 0; r < 4; ++r) {
+            resultVec[resultVecOffset + r] = lhsMat[lhsMatOffset + r] * x + lhsMat[lhsMatOffset + 4 + r] * y
+                    + lhsMat[lhsMatOffset + 8 + r] * z + lhsMat[lhsMatOffset + 12 + r] * w;
+        }
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; ++i) {
+            sm[smOffset + i] = i % 5 == 0 ? 1.0f : 0.0f;
+        }
+    }
+
+    public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; ++i) {
+            m[mOffset + 12 + i] += m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z;
+        }
+    }
+
+    /**
+     * Rotation of a degrees about (x, y, z).
+     */
+    public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+        rm[rmOffset + 3] = 0;
+        rm[rmOffset + 7] = 0;
+        rm[rmOffset + 11] = 0;
+        rm[rmOffset + 12] = 0;
+        rm[rmOffset + 13] = 0;
+        rm[rmOffset + 14] = 0;
+        rm[rmOffset + 15] = 1;
+
+        double radians = Math.toRadians(a);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1.0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+        float nc = 1.0f - c;
+        float xy = x * y, yz = y * z, zx = z * x;
+        float xs = x * s, ys = y * s, zs = z * s;
+        rm[rmOffset] = x * x * nc + c;
+        rm[rmOffset + 4] = xy * nc - zs;
+        rm[rmOffset + 8] = zx * nc + ys;
+        rm[rmOffset + 1] = xy * nc + zs;
+        rm[rmOffset + 5] = y * y * nc + c;
+        rm[rmOffset + 9] = yz * nc - xs;
+        rm[rmOffset + 2] = zx * nc - ys;
+        rm[rmOffset + 6] = yz * nc + xs;
+        rm[rmOffset + 10] = z * z * nc + c;
+    }
+
+    public static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+        synchronized (TEMP) {
+            setRotateM(TEMP, 16, a, x, y, z);
+            for (int c = 0; c < 4; ++c) {
+                for (int r = 0; r < 4; ++r) {
+                    TEMP[c * 4 + r] = m[mOffset + r] * TEMP[16 + c * 4] + m[mOffset + 4 + r] * TEMP[16 + c * 4 + 1]
+                            + m[mOffset + 8 + r] * TEMP[16 + c * 4 + 2] + m[mOffset + 12 + r] * TEMP[16 + c * 4 + 3];
+                }
+            }
+            System.arraycopy(TEMP, 0, m, mOffset, 16);
+        }
+    }
+}